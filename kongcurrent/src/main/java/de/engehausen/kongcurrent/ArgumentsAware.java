@@ -0,0 +1,21 @@
+package de.engehausen.kongcurrent;
+
+/**
+ * Optionally implemented by an {@link ExceptionHandler} to tell whether it
+ * looks at the arguments of the invoked methods. If it does not, the wrappers
+ * generated for {@link Monitored} interfaces pass <code>null</code> instead of
+ * the arguments, i.e. no argument array is allocated and no primitive argument
+ * is boxed for an invocation. Handlers not implementing this interface always
+ * receive the arguments (see {@link Monitor#needsArguments(ExceptionHandler)}).
+ * <p>The dynamic proxies receive their arguments as an array anyway; they pass
+ * it on regardless of this interface.
+ */
+public interface ArgumentsAware {
+
+	/**
+	 * Tells whether the handler uses the arguments passed to its methods.
+	 * @return <code>true</code> if the arguments are needed, <code>false</code> otherwise.
+	 */
+	boolean needsArguments();
+
+}
@@ -0,0 +1,21 @@
+package de.engehausen.kongcurrent;
+
+/**
+ * Captures a small piece of context of the current invocation of a
+ * monitored object, e.g. a request identifier or job name held in a
+ * <code>ThreadLocal</code>, a logging MDC or a <code>ScopedValue</code>.
+ * {@link ExceptionHandler} implementations may record the context with
+ * each invocation instead of, or in addition to, the calling stack; this
+ * shows which logical requests collided on the monitored object.
+ * <p>Implementations are invoked for <i>every</i> call to the monitored
+ * object and should not do more than read a reference.
+ */
+public interface ContextCapture {
+
+	/**
+	 * Returns the context of the current thread.
+	 * @return the context, may be <code>null</code>.
+	 */
+	Object capture();
+
+}
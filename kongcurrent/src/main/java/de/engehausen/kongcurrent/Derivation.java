@@ -0,0 +1,152 @@
+package de.engehausen.kongcurrent;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import de.engehausen.kongcurrent.helper.DefaultComparators;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+
+/**
+ * Derives descriptions of interfaces, see {@link Description#derive(Class)}.
+ */
+final class Derivation {
+
+	/** the descriptions of the JDK types, by type */
+	private static final Map<Class<?>, Description<?>> DEFAULTS;
+	/** the comparators of the JDK types, the most specific types first */
+	private static final Map<Class<?>, Comparator<?>> COMPARATORS;
+
+	static {
+		final Map<Class<?>, Description<?>> defaults = new HashMap<Class<?>, Description<?>>();
+		defaults.put(Collection.class, DefaultDescriptions.collectionDescription());
+		defaults.put(Set.class, DefaultDescriptions.setDescription());
+		defaults.put(List.class, DefaultDescriptions.listDescription());
+		defaults.put(Map.class, DefaultDescriptions.mapDescription());
+		defaults.put(Queue.class, DefaultDescriptions.queueDescription());
+		defaults.put(Deque.class, DefaultDescriptions.dequeDescription());
+		defaults.put(SortedSet.class, DefaultDescriptions.sortedSetDescription());
+		defaults.put(NavigableSet.class, DefaultDescriptions.navigableSetDescription());
+		defaults.put(SortedMap.class, DefaultDescriptions.sortedMapDescription());
+		defaults.put(NavigableMap.class, DefaultDescriptions.navigableMapDescription());
+		defaults.put(ConcurrentMap.class, DefaultDescriptions.concurrentMapDescription());
+		defaults.put(Spliterator.class, DefaultDescriptions.spliteratorDescription());
+		defaults.put(Stream.class, DefaultDescriptions.streamDescription());
+		DEFAULTS = defaults;
+		final Map<Class<?>, Comparator<?>> comparators = new LinkedHashMap<Class<?>, Comparator<?>>();
+		comparators.put(List.class, DefaultComparators.listComparator());
+		comparators.put(Set.class, DefaultComparators.setComparator());
+		comparators.put(Map.class, DefaultComparators.mapComparator());
+		comparators.put(Queue.class, DefaultComparators.queueComparator());
+		COMPARATORS = comparators;
+	}
+
+	private static final ClassValue<Description<?>> DERIVED = new ClassValue<Description<?>>() {
+		@Override
+		protected Description<?> computeValue(final Class<?> type) {
+			return derive(type);
+		}
+	};
+
+	/** the descriptions being derived by the current thread, to resolve cycles */
+	private static final ThreadLocal<Map<Class<?>, Description<?>>> IN_PROGRESS = new ThreadLocal<Map<Class<?>, Description<?>>>() {
+		@Override
+		protected Map<Class<?>, Description<?>> initialValue() {
+			return new HashMap<Class<?>, Description<?>>();
+		}
+	};
+
+	private Derivation() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns the (cached) derived description of the given interface.
+	 * @param type the interface, must not be <code>null</code>
+	 * @return the description, never <code>null</code>
+	 */
+	static Description<?> get(final Class<?> type) {
+		if (!type.isInterface()) {
+			throw new IllegalArgumentException(type+" is not an interface");
+		}
+		final Description<?> known = DEFAULTS.get(type);
+		if (known != null) {
+			return known;
+		}
+		final Description<?> result = IN_PROGRESS.get().get(type);
+		return result == null ? DERIVED.get(type) : result;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Description<?> derive(final Class<?> type) {
+		final Description result = new Description(type, comparator(type));
+		final Map<Class<?>, Description<?>> inProgress = IN_PROGRESS.get();
+		inProgress.put(type, result);
+		try {
+			for (Method method : type.getMethods()) {
+				final Description<?> dependant = dependant(type, method);
+				if (dependant != null) {
+					result.addDependant(result.findMethod(method.getName(), method.getParameterTypes()), dependant);
+				}
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			inProgress.remove(type);
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the description of the result of the given method: the JDK
+	 * collection types, iterators, spliterators and streams are monitored, as
+	 * are the interfaces of the package of the derived interface, which are
+	 * likely part of the same API.
+	 */
+	private static Description<?> dependant(final Class<?> type, final Method method) {
+		final Class<?> returnType = method.getReturnType();
+		if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || !returnType.isInterface() ||
+		    method.isAnnotationPresent(Unmonitored.class) || returnType.isAnnotationPresent(Unmonitored.class)) {
+			return null;
+		}
+		final Description<?> known = DEFAULTS.get(returnType);
+		if (known != null) {
+			return known;
+		} else if (Iterator.class.equals(returnType) || ListIterator.class.equals(returnType)) {
+			final Description<?> result = new Description<Object>(returnType);
+			result.setIterating(true);
+			return result;
+		} else if (returnType.getPackage() == type.getPackage() && !returnType.isAnnotation()) { //NOPMD same package
+			return get(returnType);
+		} else {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Comparator comparator(final Class<?> type) {
+		for (Map.Entry<Class<?>, Comparator<?>> entry : COMPARATORS.entrySet()) {
+			if (entry.getKey().isAssignableFrom(type)) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+}
@@ -3,7 +3,9 @@ package de.engehausen.kongcurrent;
 import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import de.engehausen.kongcurrent.helper.DefaultComparators;
 
@@ -28,6 +30,12 @@ public class Description<T> {
 	protected final Comparator<T> comparator;
 	@SuppressWarnings(UNCHECKED)
 	protected Map<Method, Description> dependants;
+	protected Set<Method> cachedDependants;
+	@SuppressWarnings(UNCHECKED)
+	protected Map<Method, Description> streamSpliterators;
+	protected boolean creationOnly;
+	protected Set<Method> writes;
+	protected boolean iterating;
 
 	/**
 	 * Creates a description for the given interface. The description
@@ -39,6 +47,9 @@ public class Description<T> {
 		proxyInterface = anInterface;
 		comparator = aComparator==null?DefaultComparators.<T>objectComparator():aComparator;
 		dependants = EMPTY;
+		cachedDependants = Collections.emptySet();
+		streamSpliterators = EMPTY;
+		writes = Collections.emptySet();
 	}
 	
 	/**
@@ -50,6 +61,32 @@ public class Description<T> {
 		this(anInterface, null);
 	}
 
+	/**
+	 * Derives a description for the given interface. The methods of the interface
+	 * (including inherited ones) returning one of the following interfaces are
+	 * added as dependants:
+	 * <ul>
+	 * <li>the JDK collections and maps, spliterators and streams, described by the
+	 * {@link de.engehausen.kongcurrent.helper.DefaultDescriptions}
+	 * <li>{@link java.util.Iterator} and {@link java.util.ListIterator}
+	 * <li>interfaces of the same package as the given interface, which are derived in turn
+	 * </ul>
+	 * Methods annotated with {@link Unmonitored}, or returning an interface annotated
+	 * with it, are left out. The comparator is the default comparator of the list, set,
+	 * map or queue the interface extends, if any. The descriptions of the JDK types are
+	 * returned as is.
+	 * <p>The derived descriptions are cached per interface, so repeated derivation is
+	 * free; they are shared and must not be modified.
+	 * @param anInterface the interface to describe, must not be <code>null</code>
+	 * @param <T> the type the description stands for
+	 * @return the description, never <code>null</code>
+	 * @throws IllegalArgumentException if the class is not an interface
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<T> derive(final Class<?> anInterface) {
+		return (Description<T>) Derivation.get(anInterface);
+	}
+
 	/**
 	 * Returns the class object for the interface this description
 	 * stands for.
@@ -94,7 +131,7 @@ public class Description<T> {
 	 * @throws NoSuchMethodException if a matching method is not found
 	 */
 	public <E> void addDependant(final Description<E> description, final String methodName, final Class<?>... parameterTypes) throws SecurityException, NoSuchMethodException {
-		addDependant(proxyInterface.getDeclaredMethod(methodName, parameterTypes), description);
+		addDependant(findMethod(methodName, parameterTypes), description);
 	}
 	
 	@SuppressWarnings(UNCHECKED)
@@ -105,11 +142,188 @@ public class Description<T> {
 		dependants.put(method, description);
 	}
 
+	/**
+	 * Marks a dependant method as returning the same object on each invocation,
+	 * as e.g. <code>Map.keySet()</code> does. The monitored version of such an
+	 * object is cached per monitored instance, so repeated invocations return the
+	 * same monitored object as long as it is referenced. <i>Once the description
+	 * object is used through {@link Monitor}, directly or indirectly, this method
+	 * must not be used any more.</i>
+	 * @param methodName the name of the method, must not be <code>null</code>.
+	 * @param parameterTypes the types of arguments to the method, may be <code>null</code>.
+	 * @throws SecurityException if a security manager denies access
+	 * @throws NoSuchMethodException if a matching method is not found
+	 */
+	public void setCached(final String methodName, final Class<?>... parameterTypes) throws SecurityException, NoSuchMethodException {
+		final Method method = findMethod(methodName, parameterTypes);
+		if (!dependants.containsKey(method)) {
+			throw new IllegalArgumentException(method+" is not a dependant");
+		}
+		if (cachedDependants.isEmpty()) {
+			cachedDependants = new HashSet<Method>();
+		}
+		cachedDependants.add(method);
+	}
+
+	/**
+	 * Marks a dependant method returning a stream as built over the monitored
+	 * spliterator of the described object, which must be {@link Iterable} and have
+	 * <code>spliterator()</code> as dependant. The monitored object then returns a
+	 * stream of its monitored spliterator (sequential or parallel like the stream of
+	 * the original object), so the parts of the spliterator split off for a parallel
+	 * stream record the (e.g. fork-join worker) threads traversing them. <i>Once the
+	 * description object is used through {@link Monitor}, directly or indirectly, this
+	 * method must not be used any more.</i>
+	 * @param methodName the name of the method, must not be <code>null</code>.
+	 * @param parameterTypes the types of arguments to the method, may be <code>null</code>.
+	 * @throws SecurityException if a security manager denies access
+	 * @throws NoSuchMethodException if a matching method is not found
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public void setSpliteratorStream(final String methodName, final Class<?>... parameterTypes) throws SecurityException, NoSuchMethodException {
+		final Method method = findMethod(methodName, parameterTypes);
+		final Description spliterators = dependants.get(findMethod("spliterator"));
+		if (!dependants.containsKey(method) || spliterators == null) {
+			throw new IllegalArgumentException(method+" is not a dependant or spliterator() is not monitored");
+		}
+		if (streamSpliterators == EMPTY) { //NOPMD this is an intended comparison style here
+			streamSpliterators = new HashMap<Method, Description>();
+		}
+		streamSpliterators.put(method, spliterators);
+	}
+
+	/**
+	 * Returns the description of the spliterator the stream returned by
+	 * the given method is built over, see {@link #setSpliteratorStream(String, Class...)}.
+	 * @param method a method of the type this description stands for, must not be <code>null</code>
+	 * @param <E> the type the description stands for
+	 * @return the description of the spliterator, or <code>null</code> if the stream of the original object is used.
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public <E> Description<E> getStreamSpliterator(final Method method) {
+		return streamSpliterators.get(method);
+	}
+
+	/**
+	 * Sets whether only the creation of objects monitored with this description
+	 * is recorded, which is useful for short-lived dependants such as iterators.
+	 * The invocation of the parent creating the object (e.g. <code>iterator()</code>)
+	 * is passed to the exception handler as usual, but the invocations of the object
+	 * itself (e.g. <code>hasNext()</code> and <code>next()</code>) are not; only an
+	 * exception thrown by them is handled. Scanning a large collection then does not
+	 * record each element access. The stack of the creation is kept by the monitored
+	 * object instead, and attached to an exception it throws as a suppressed exception
+	 * before the exception is handled. <i>Once the description object
+	 * is used through {@link Monitor}, directly or indirectly, this method must not be
+	 * used any more.</i>
+	 * @param flag <code>true</code> to record only the creation, <code>false</code> (the default)
+	 * to record each invocation
+	 */
+	public void setCreationOnly(final boolean flag) {
+		creationOnly = flag;
+	}
+
+	/**
+	 * Checks whether only the creation of objects monitored with this description
+	 * is recorded, see {@link #setCreationOnly(boolean)}.
+	 * @return <code>true</code> if invocations are not passed to the exception handler
+	 * unless they fail.
+	 */
+	public boolean isCreationOnly() {
+		return creationOnly;
+	}
+
+	/**
+	 * Marks a method as modifying the described object. Each invocation of such
+	 * a method bumps a version stamp kept per monitored object (and shared with its
+	 * dependants), and is reported to the exception handler by an iterating dependant
+	 * (see {@link #setIterating(boolean)}) used by another thread on its next invocation.
+	 * <i>Once the description object is used through {@link Monitor}, directly or
+	 * indirectly, this method must not be used any more.</i>
+	 * @param methodName the name of the method, must not be <code>null</code>.
+	 * @param parameterTypes the types of arguments to the method, may be <code>null</code>.
+	 * @throws SecurityException if a security manager denies access
+	 * @throws NoSuchMethodException if a matching method is not found
+	 */
+	public void setWrite(final String methodName, final Class<?>... parameterTypes) throws SecurityException, NoSuchMethodException {
+		final Method method = findMethod(methodName, parameterTypes);
+		if (writes.isEmpty()) {
+			writes = new HashSet<Method>();
+		}
+		writes.add(method);
+	}
+
+	/**
+	 * Checks whether the given method modifies the described object.
+	 * @param method a method of the type this description stands for, must not be <code>null</code>
+	 * @return <code>true</code> if the method was marked as write, see {@link #setWrite(String, Class...)}.
+	 */
+	public boolean isWrite(final Method method) {
+		return writes.contains(method);
+	}
+
+	/**
+	 * Sets whether objects monitored with this description iterate over the
+	 * object they were created by, as iterators and spliterators do. Such an
+	 * object is open from its creation until a method of it returns <code>false</code>
+	 * (e.g. <code>hasNext()</code>), <code>forEachRemaining(...)</code> completes or
+	 * a method throws an exception. On each invocation it checks for writes by other
+	 * threads since its previous invocation; the first one is reported to the exception
+	 * handler as a {@link java.util.ConcurrentModificationException}, which is not thrown.
+	 * An object which is not used any more, e.g. an iterator left by <code>break</code>,
+	 * reports nothing.
+	 * <i>Once the description object is used through {@link Monitor}, directly or
+	 * indirectly, this method must not be used any more.</i>
+	 * @param flag <code>true</code> if the objects iterate, <code>false</code> (the default) otherwise
+	 */
+	public void setIterating(final boolean flag) {
+		iterating = flag;
+	}
+
+	/**
+	 * Checks whether objects monitored with this description iterate, see
+	 * {@link #setIterating(boolean)}.
+	 * @return <code>true</code> if the objects iterate over the object they were created by.
+	 */
+	public boolean isIterating() {
+		return iterating;
+	}
+
+	/**
+	 * Finds the method declared by the interface, or for interfaces also
+	 * inherited from a super interface (e.g. <code>Collection.stream()</code>
+	 * for a <code>List</code>).
+	 * @param methodName the name of the method, must not be <code>null</code>.
+	 * @param parameterTypes the types of arguments to the method, may be <code>null</code>.
+	 * @return the method, never <code>null</code>
+	 * @throws SecurityException if a security manager denies access
+	 * @throws NoSuchMethodException if a matching method is not found
+	 */
+	protected Method findMethod(final String methodName, final Class<?>... parameterTypes) throws SecurityException, NoSuchMethodException {
+		try {
+			return proxyInterface.getDeclaredMethod(methodName, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			if (proxyInterface.isInterface()) {
+				return proxyInterface.getMethod(methodName, parameterTypes);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks whether the monitored results of the given dependant method are cached.
+	 * @param method a method of the type this description stands for, must not be <code>null</code>
+	 * @return <code>true</code> if the monitored results are cached per monitored instance.
+	 */
+	public boolean isCached(final Method method) {
+		return cachedDependants.contains(method);
+	}
+
 	/**
 	 * Compares the given object to this description.
 	 * @return <code>true</code> if the given object is also a
-	 * description for the same interface, with the same comparator
-	 * and dependants; <code>false</code> otherwise.
+	 * description for the same interface, with the same comparator,
+	 * dependants and settings; <code>false</code> otherwise.
 	 */
 	@Override
 	public boolean equals(final Object obj) {
@@ -122,20 +336,36 @@ public class Description<T> {
 				final Description<?> other = (Description<?>) obj;
 				return proxyInterface.equals(other.proxyInterface) &&
 				       comparator.equals(other.comparator) &&
-				       dependants.equals(other.dependants);
+				       dependants.equals(other.dependants) &&
+				       sameSettings(other);
 			} else {
 				return false;
 			}
 		}
 	}
 
+	/**
+	 * Compares the settings besides the interface, comparator and dependants,
+	 * for the <code>equals</code> of subclasses.
+	 * @param other the description to compare, must not be <code>null</code>
+	 * @return <code>true</code> if the given description has the same settings.
+	 */
+	protected boolean sameSettings(final Description<?> other) {
+		return creationOnly == other.creationOnly &&
+		       iterating == other.iterating &&
+		       writes.equals(other.writes) &&
+		       cachedDependants.equals(other.cachedDependants) &&
+		       streamSpliterators.equals(other.streamSpliterators);
+	}
+
 	/**
 	 * Returns the hash code of the description.
 	 * @return the hash code of the description.
 	 */
 	@Override
 	public int hashCode() {
-		return proxyInterface.hashCode();
+		// dependants may refer back to this description, so they are left out
+		return 31 * proxyInterface.hashCode() + (creationOnly ? 1 : 0) + (iterating ? 2 : 0) + writes.hashCode();
 	}
 
 }
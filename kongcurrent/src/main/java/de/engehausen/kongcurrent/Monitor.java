@@ -1,5 +1,8 @@
 package de.engehausen.kongcurrent;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -10,8 +13,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import de.engehausen.kongcurrent.cglib.DescriptionCglib;
 import de.engehausen.kongcurrent.cglib.MonitorCglib;
+import de.engehausen.kongcurrent.cglib.MonitorHidden;
+import de.engehausen.kongcurrent.helper.CompositeExceptionHandler;
 import de.engehausen.kongcurrent.helper.DefaultComparators;
 import de.engehausen.kongcurrent.helper.DefaultDescriptions;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
@@ -79,13 +83,21 @@ import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
  * appropriate {@link Comparator}. For the Java collection objects default
  * descriptions and comparators exist (see {@link DefaultDescriptions} and
  * {@link DefaultComparators}).
+ * <p>For interfaces annotated with {@link Monitored} a wrapper class is generated
+ * at compile time; if it is on the classpath, it is used instead of a proxy.
  * <p><a name="cglib">To monitor non-interface based instances have a look at
- * the experimental {@link MonitorCglib}.</a>
+ * the experimental {@link MonitorCglib}, or at {@link MonitorHidden}, which
+ * does not need a bytecode library.</a>
  */
 public class Monitor {
 	
-	private static final boolean cglibAvailable = 
+	static final boolean cglibAvailable = 
 		Monitor.class.getResource("/net/sf/cglib/proxy/Callback.class") != null;
+
+	/** the suffix of the names of the wrappers generated for {@link Monitored} interfaces */
+	public static final String WRAPPER_SUFFIX = "$$Monitored";
+
+	private static final ClassValue<MethodHandle> WRAPPERS = new Wrappers();
 	
 	private Monitor() {
 		// not to be instantiated
@@ -98,7 +110,10 @@ public class Monitor {
 	 * @param handler an exception handler that keeps track of invocations on the
 	 * proxied object; a single exception handler instance should be used per monitored
 	 * instance, or the handler must be capable of tracking different objects at the
-	 * same time.
+	 * same time (e.g. the {@link de.engehausen.kongcurrent.helper.RegistryExceptionHandler}).
+	 * If the target is already monitored through the same handler and implements
+	 * the interface of the description, it is returned as is; if it is monitored
+	 * through another handler, the original object is monitored with both handlers.
 	 * @return a monitored version of the object to monitor, never <code>null</code>.
 	 * @param <T> the type of object to monitor
 	 */
@@ -106,16 +121,122 @@ public class Monitor {
 		return (T) monitorGeneric(target, description, handler);
 	}
 
+	/**
+	 * Tells whether the given handler needs the arguments of the invoked methods.
+	 * @param handler the handler, must not be <code>null</code>
+	 * @return <code>false</code> if the handler is {@link ArgumentsAware} and does
+	 * not need the arguments, <code>true</code> otherwise.
+	 */
+	public static boolean needsArguments(final ExceptionHandler handler) {
+		return !(handler instanceof ArgumentsAware) || ((ArgumentsAware) handler).needsArguments();
+	}
+
+	/**
+	 * Returns the original object of a monitored object.
+	 * @param object an object, may be <code>null</code>
+	 * @return the original object if the given object is monitored, the given object otherwise.
+	 * @param <T> the type of the object
+	 */
 	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(final T object) {
+		Object result = object;
+		while (true) {
+			final MonitorBase<?> monitor = monitorOf(result);
+			if (monitor != null) {
+				result = monitor.target;
+			} else if (cglibAvailable && MonitorCglib.isMonitored(result)) {
+				result = MonitorCglib.unwrap(result);
+			} else if (MonitorHidden.isMonitored(result)) {
+				result = MonitorHidden.unwrap(result);
+			} else {
+				return (T) result;
+			}
+		}
+	}
+
 	protected static <T> T monitorGeneric(final T target, final Description description, final ExceptionHandler handler) {
-		return (T) Proxy.newProxyInstance(target.getClass().getClassLoader(), new Class<?>[] { description.getInterface() }, new MonitorHandler(target, description, handler));
+		return monitorGeneric(target, description, handler, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T monitorGeneric(final T target, final Description description, final ExceptionHandler handler, final MonitorBase<?> parent) {
+		final MonitorBase<?> existing = monitorOf(target);
+		if (existing != null) {
+			// already monitored: reuse the proxy or monitor the original object with both handlers
+			if (existing.handler == handler && description.getInterface().isInstance(target)) {
+				return target;
+			}
+			return (T) monitorGeneric(existing.target, description, CompositeExceptionHandler.combine(existing.handler, handler), parent);
+		}
+		final MethodHandle wrapper = WRAPPERS.get(description.getInterface());
+		if (wrapper != null) {
+			return (T) wrap(wrapper, target, description, handler, parent);
+		}
+		return (T) Proxy.newProxyInstance(target.getClass().getClassLoader(), new Class<?>[] { description.getInterface() }, new MonitorHandler(target, description, handler, parent));
+	}
+
+	private static Object wrap(final MethodHandle wrapper, final Object target, final Description<?> description, final ExceptionHandler handler, final MonitorBase<?> parent) {
+		try {
+			return wrapper.invoke(target, description, handler, parent);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	private static MonitorBase<?> monitorOf(final Object object) {
+		if (object instanceof MonitorBase<?>) {
+			// a generated wrapper
+			return (MonitorBase<?>) object;
+		} else if (object != null && Proxy.isProxyClass(object.getClass())) {
+			final InvocationHandler invocationHandler = Proxy.getInvocationHandler(object);
+			if (invocationHandler instanceof MonitorHandler<?>) {
+				return (MonitorHandler<?>) invocationHandler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the constructor of the wrapper generated for an interface annotated
+	 * with {@link Monitored}; <code>null</code> if there is none.
+	 */
+	private static class Wrappers extends ClassValue<MethodHandle> {
+
+		private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class, Object.class, Description.class, ExceptionHandler.class, MonitorBase.class);
+
+		@Override
+		protected MethodHandle computeValue(final Class<?> type) {
+			final ClassLoader loader = type.getClassLoader();
+			if (loader == null) {
+				// JDK interfaces are never annotated
+				return null;
+			}
+			try {
+				final Class<?> clz = Class.forName(type.getName()+WRAPPER_SUFFIX, true, loader);
+				if (!MonitorBase.class.isAssignableFrom(clz) || !type.isAssignableFrom(clz)) {
+					return null;
+				}
+				return MethodHandles.lookup().findConstructor(clz, MethodType.methodType(void.class, type, Description.class, ExceptionHandler.class, MonitorBase.class)).asType(CONSTRUCTOR);
+			} catch (ClassNotFoundException e) {
+				return null;
+			} catch (NoSuchMethodException e) {
+				return null;
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+
 	}
 
 	/**
 	 * The invocation handler.
 	 * @param <T> the type the handler handles
 	 */
-	private static class MonitorHandler<T> implements InvocationHandler {
+	private static class MonitorHandler<T> extends MonitorBase<T> implements InvocationHandler {
 
 		protected static final Map<Method, Method> DIRECT_METHODS;
 		
@@ -125,8 +246,7 @@ public class Monitor {
 			temp.put(method, method);
 			method = getMethod(Object.class, "hashCode", (Class<?>[]) null);
 			temp.put(method, method);
-			method = getMethod(Object.class, "equals", new Class<?>[] { Object.class });
-			temp.put(method, getMethod(MonitorHandler.class, "equals", new Class<?>[] { Object.class, Object.class }));
+			temp.put(EQUALS, getMethod(MonitorBase.class, "equals", new Class<?>[] { Object.class, Object.class }));
 			DIRECT_METHODS = Collections.unmodifiableMap(temp);
 		}
 		
@@ -141,14 +261,8 @@ public class Monitor {
 			
 		}
 
-		protected final Object target;
-		protected final Description<Object> description;
-		protected final ExceptionHandler handler;
-		
-		public MonitorHandler(final Object aTarget, final Description<Object> aDescription, final ExceptionHandler aHandler) {
-			target = aTarget;
-			description = aDescription;
-			handler = aHandler;
+		public MonitorHandler(final T aTarget, final Description<?> aDescription, final ExceptionHandler aHandler, final MonitorBase<?> aParent) {
+			super(aTarget, aDescription, aHandler, aParent);
 		}
 
 		@Override
@@ -157,32 +271,22 @@ public class Monitor {
 			final Method directMethod = DIRECT_METHODS.get(method);
 			if (directMethod == null) {
 				try {
-					handler.preInvoke(target, method, args);
+					before(method, args);
 					result = method.invoke(target, args);					
 				} catch (InvocationTargetException e) {
-					handler.handle(e.getCause(), target, method, args);
+					failed(e.getCause(), method, args);
 					throw e.getCause();
 				} catch (Throwable t) {
-					handler.handle(t, target, method, args);
+					failed(t, method, args);
 					throw t;
 				} finally {
-					handler.postInvoke(target, method, args);
-				}
-				final Description<?> desc = description.getDescription(method);
-				if (desc instanceof DescriptionCglib<?>) {
-					if (cglibAvailable) {
-						result = MonitorCglib.monitor(result, (DescriptionCglib) desc, handler);						
-					} else {
-						throw new IllegalStateException("cglib required - please make sure cglib and dependencies are on the classpath");
-					}
-				} else if (desc != null) {
-					result = monitorGeneric(result, desc, handler);					
+					after(method, args);
 				}
+				result = returned(method, result);
 			} else {
 				// one of mine
 				final Object[] arguments;
-				final Class<?> clz = getClass();
-				if (clz.equals(directMethod.getDeclaringClass())) { // a "standard" method that needs an extra argument
+				if (MonitorBase.class.equals(directMethod.getDeclaringClass())) { // a "standard" method that needs an extra argument
 					if (args != null && args.length>0) {
 						// specific monitor handler method, add invocation target
 						arguments = new Object[args.length+1];
@@ -194,50 +298,15 @@ public class Monitor {
 				} else {
 					arguments = args;
 				}
-				result = directMethod.invoke(this, arguments);
+				try {
+					result = directMethod.invoke(this, arguments);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
 			}
 			return result;
 		}
 
-		public String toString() {
-			final String contents = target.toString();
-			final StringBuilder sb = new StringBuilder(contents.length()+12);
-			sb.append("{monitored:").append(contents).append('}');
-			return sb.toString();
-		}
-		
-		public int hashCode() {
-			return target.hashCode();
-		}
-
-		public boolean equals(final Object other) {
-			return equals(other, target);
-		}
-		
-		/**
-		 * Extended equals method which provides the correct "this" in form of
-		 * the invocation target.
-		 * @param other the object to compare against, may be <code>null</code>
-		 * @param invocationTarget the proxy around the handler, never <code>null</code>
-		 * @return <code>true</code> if the invocationTarget equals the <code>other</code> object, <code>false</code> otherwise.
-		 */
-		public boolean equals(final Object other, final Object invocationTarget) { 
-			if (other == null) {
-				return false;
-			} else if (other == this || other == invocationTarget) { //NOPMD shortcut comparisons...
-				return true;
-			} else {
-				final Class<?> clz = description.getInterface();
-				// other must implement the same interface as us
-				if (clz.isAssignableFrom(other.getClass())) {
-					// to compare, custom logic may be required (e.g. collection, list and set)
-					return description.getComparator().equals(invocationTarget, other);					
-				} else {
-					return false;
-				}
-			}
-		}
-		
 	}
 		
 }
@@ -0,0 +1,457 @@
+package de.engehausen.kongcurrent;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.stream.BaseStream;
+import java.util.stream.StreamSupport;
+
+import de.engehausen.kongcurrent.cglib.DescriptionCglib;
+import de.engehausen.kongcurrent.cglib.MonitorCglib;
+import de.engehausen.kongcurrent.cglib.MonitorHidden;
+import de.engehausen.kongcurrent.helper.ConcurrentWeakIdentityMap;
+
+/**
+ * The state of a monitored object and the steps of a monitored invocation,
+ * shared by the invocation handler of the proxies created by the {@link Monitor}
+ * and by the wrappers generated for {@link Monitored} interfaces. An invocation
+ * is made of {@link #before(Method, Object[])}, the call of the method on the
+ * target, {@link #failed(Throwable, Method, Object[])} if it threw an exception,
+ * {@link #after(Method, Object[])} and finally {@link #returned(Method, Object)}.
+ * <p>This class is public for the generated wrappers only; it is not meant
+ * to be extended otherwise.
+ * @param <T> the type of the monitored object
+ */
+public abstract class MonitorBase<T> {
+
+	protected static final Method EQUALS = method(Object.class, "equals", Object.class);
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<MonitorBase> DONE = AtomicIntegerFieldUpdater.newUpdater(MonitorBase.class, "done");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<MonitorBase> CLOSED = AtomicIntegerFieldUpdater.newUpdater(MonitorBase.class, "closed");
+
+	protected final T target;
+	protected final Description<Object> description;
+	protected final ExceptionHandler handler;
+	/** <code>false</code> if only exceptions are passed to the handler */
+	protected final boolean recordCalls;
+	/** the site where an object not recording its calls was created, <code>null</code> otherwise */
+	private final Throwable creation;
+	/** <code>false</code> if the handler does not use the arguments, see {@link ArgumentsAware} */
+	protected final boolean arguments;
+	/** the version stamp of the monitored object, shared with its dependants */
+	private final Modifications modifications;
+	/** <code>true</code> for an iterating object */
+	private final boolean iterating;
+	/** the version last seen by an iterating object */
+	private long seenVersion;
+	/** the record of the thread which created an iterating object, <code>null</code> otherwise */
+	private final Modifications.Writer opener;
+	/** set once the iterating object reported a write or was closed */
+	private volatile int done;
+	/** set once the iterating object was closed */
+	private volatile int closed;
+	/** monitored versions of cached dependants, created on demand */
+	private volatile ConcurrentWeakIdentityMap<Object, WeakReference<Object>> cache;
+
+	/**
+	 * Creates the monitor of the given object.
+	 * @param aTarget the object to monitor, must not be <code>null</code>
+	 * @param aDescription the description of the object, must not be <code>null</code>
+	 * @param aHandler the handler to notify, must not be <code>null</code>
+	 * @param aParent the monitor of the object the target depends on, may be <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	protected MonitorBase(final T aTarget, final Description<?> aDescription, final ExceptionHandler aHandler, final MonitorBase<?> aParent) {
+		target = aTarget;
+		description = (Description<Object>) aDescription;
+		handler = aHandler;
+		recordCalls = !aDescription.isCreationOnly();
+		creation = recordCalls ? null : new Throwable("monitored object created here");
+		arguments = Monitor.needsArguments(aHandler);
+		modifications = aParent == null ? new Modifications() : aParent.modifications;
+		iterating = aDescription.isIterating();
+		if (iterating) {
+			seenVersion = modifications.version;
+			opener = modifications.opened();
+		} else {
+			opener = null;
+		}
+	}
+
+	/**
+	 * Returns the public method of the given class, for the constants of the
+	 * generated wrappers.
+	 * @param clazz the class declaring or inheriting the method, must not be <code>null</code>
+	 * @param name the name of the method, must not be <code>null</code>
+	 * @param argTypes the parameter types of the method
+	 * @return the method, never <code>null</code>
+	 * @throws IllegalStateException if there is no such method
+	 */
+	protected static Method method(final Class<?> clazz, final String name, final Class<?>... argTypes) {
+		try {
+			return clazz.getMethod(name, argTypes);
+		} catch (SecurityException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Invoked before the method is invoked on the target.
+	 * @param method the method to be invoked, never <code>null</code>
+	 * @param args the arguments to the method, may be <code>null</code>
+	 */
+	protected final void before(final Method method, final Object[] args) {
+		if (recordCalls) {
+			handler.preInvoke(target, method, args);
+		}
+		if (iterating) {
+			checkModification(method, args);
+		} else if (description.isWrite(method)) {
+			modifications.write();
+		}
+	}
+
+	/**
+	 * Invoked if the method (or {@link #before(Method, Object[])}) threw an exception.
+	 * If the invocations of the object are not recorded, the site where the object was
+	 * created is added to the exception as a suppressed exception before it is handled.
+	 * @param throwable the exception, never <code>null</code>
+	 * @param method the method invoked, never <code>null</code>
+	 * @param args the arguments to the method, may be <code>null</code>
+	 */
+	protected final void failed(final Throwable throwable, final Method method, final Object[] args) {
+		closeIteration();
+		if (creation != null && !hasCreationSite(throwable)) {
+			throwable.addSuppressed(creation);
+		}
+		handler.handle(throwable, target, method, args);
+	}
+
+	private boolean hasCreationSite(final Throwable throwable) {
+		for (Throwable suppressed : throwable.getSuppressed()) {
+			if (suppressed == creation) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Invoked after the method was invoked on the target, whether or not it failed.
+	 * @param method the method invoked, never <code>null</code>
+	 * @param args the arguments to the method, may be <code>null</code>
+	 */
+	protected final void after(final Method method, final Object[] args) {
+		if (recordCalls) {
+			handler.postInvoke(target, method, args);
+		}
+	}
+
+	/**
+	 * Invoked when a method without result returned normally.
+	 * @param method the method invoked, never <code>null</code>
+	 */
+	protected final void returned(final Method method) {
+		if (iterating && "forEachRemaining".equals(method.getName())) {
+			closeIteration();
+		}
+	}
+
+	/**
+	 * Invoked when a method with a <code>boolean</code> result returned normally.
+	 * @param method the method invoked, never <code>null</code>
+	 * @param result the result of the method
+	 * @return the result
+	 */
+	protected final boolean returned(final Method method, final boolean result) {
+		if (iterating && !result) {
+			// exhausted, e.g. hasNext() or tryAdvance(...) returned false
+			closeIteration();
+		}
+		return result;
+	}
+
+	/**
+	 * Invoked when a method with a result returned normally; returns the
+	 * monitored version of the result if it is a dependant object.
+	 * @param method the method invoked, never <code>null</code>
+	 * @param result the result of the method, may be <code>null</code>
+	 * @return the (monitored) result
+	 */
+	protected final Object returned(final Method method, final Object result) {
+		if (iterating && (Boolean.FALSE.equals(result) || "forEachRemaining".equals(method.getName()))) {
+			closeIteration();
+		}
+		final Description<?> desc = description.getDescription(method);
+		if (desc instanceof DescriptionCglib<?>) {
+			if (((DescriptionCglib<?>) desc).isHiddenClass()) {
+				return MonitorHidden.monitor(result, (DescriptionCglib) desc, handler);
+			} else if (Monitor.cglibAvailable) {
+				return MonitorCglib.monitor(result, (DescriptionCglib) desc, handler);
+			} else {
+				throw new IllegalStateException("cglib required - please make sure cglib and dependencies are on the classpath");
+			}
+		} else if (desc != null) {
+			final Description<?> spliterators = description.getStreamSpliterator(method);
+			if (spliterators != null && result != null) {
+				// traverse the monitored spliterator instead of the one of the original stream
+				final Spliterator<?> spliterator = (Spliterator<?>) Monitor.monitorGeneric(((Iterable<?>) target).spliterator(), spliterators, handler, this);
+				return Monitor.monitorGeneric(StreamSupport.stream(spliterator, ((BaseStream<?, ?>) result).isParallel()), desc, handler, this);
+			} else if (result != null && description.isCached(method)) {
+				return cachedMonitor(result, desc);
+			} else {
+				return Monitor.monitorGeneric(result, desc, handler, this);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the monitored version of the given dependant, reusing the one
+	 * created before for the same object if it is still referenced.
+	 * @param dependant the object to monitor, must not be <code>null</code>
+	 * @param desc the description of the object, must not be <code>null</code>
+	 * @return the monitored object, never <code>null</code>
+	 */
+	protected Object cachedMonitor(final Object dependant, final Description<?> desc) {
+		ConcurrentWeakIdentityMap<Object, WeakReference<Object>> map = cache;
+		if (map == null) {
+			synchronized (this) {
+				map = cache;
+				if (map == null) {
+					map = new ConcurrentWeakIdentityMap<Object, WeakReference<Object>>(1);
+					cache = map;
+				}
+			}
+		}
+		// the monitored object references the dependant, so it is held weakly
+		WeakReference<Object> ref = map.get(dependant);
+		Object result = ref == null ? null : ref.get();
+		if (result == null) {
+			// threads racing on a miss each create one, the first one stored is used
+			final Object created = Monitor.monitorGeneric(dependant, desc, handler, this);
+			final WeakReference<Object> createdRef = new WeakReference<Object>(created);
+			while (result == null) {
+				ref = map.putIfAbsent(dependant, createdRef);
+				if (ref == null) {
+					result = created;
+				} else {
+					result = ref.get();
+					if (result == null && map.replace(dependant, ref, createdRef)) {
+						// the previous one was collected
+						result = created;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reports a write from another thread since the last invocation of
+	 * this iterating object, even if the current thread wrote afterwards;
+	 * only the first write is reported. An iterating object which is not
+	 * used any more (e.g. left by <code>break</code>) reports nothing.
+	 * @param method the method to be invoked
+	 * @param args the arguments to the method
+	 */
+	private void checkModification(final Method method, final Object[] args) {
+		final long version = modifications.version;
+		if (version != seenVersion) {
+			final long seen = seenVersion;
+			seenVersion = version;
+			if (done == 0) {
+				final Thread current = Thread.currentThread();
+				final Thread writer = modifications.writerSince(seen, current);
+				if (writer != null && DONE.compareAndSet(this, 0, 1)) {
+					handler.handle(modifications.incident(writer, current), target, method, args);
+				}
+			}
+		}
+	}
+
+	private void closeIteration() {
+		if (iterating) {
+			done = 1;
+			if (closed == 0 && CLOSED.compareAndSet(this, 0, 1)) {
+				opener.closed();
+			}
+		}
+	}
+
+	public String toString() {
+		final String contents = target.toString();
+		final StringBuilder sb = new StringBuilder(contents.length()+12);
+		sb.append("{monitored:").append(contents).append('}');
+		return sb.toString();
+	}
+
+	public int hashCode() {
+		return target.hashCode();
+	}
+
+	public boolean equals(final Object other) {
+		return equals(other, target);
+	}
+
+	/**
+	 * Extended equals method which provides the correct "this" in form of
+	 * the invocation target.
+	 * @param other the object to compare against, may be <code>null</code>
+	 * @param invocationTarget the monitored object, never <code>null</code>
+	 * @return <code>true</code> if the invocationTarget equals the <code>other</code> object, <code>false</code> otherwise.
+	 */
+	public boolean equals(final Object other, final Object invocationTarget) {
+		if (other == null) {
+			return false;
+		} else if (other == this || other == invocationTarget) { //NOPMD shortcut comparisons...
+			return true;
+		} else {
+			final Class<?> clz = description.getInterface();
+			// other must implement the same interface as us
+			if (clz.isAssignableFrom(other.getClass())) {
+				// to compare, custom logic may be required (e.g. collection, list and set);
+				// the comparison is recorded as one invocation, the default comparators
+				// then work on the original objects without further monitored calls
+				final Object[] args = arguments ? new Object[] { other } : null;
+				try {
+					handler.preInvoke(target, EQUALS, args);
+					return description.getComparator().equals(invocationTarget, other);
+				} catch (RuntimeException e) {
+					handler.handle(e, target, EQUALS, args);
+					throw e;
+				} catch (Error e) {
+					handler.handle(e, target, EQUALS, args);
+					throw e;
+				} finally {
+					handler.postInvoke(target, EQUALS, args);
+				}
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * The version stamp of a monitored object and its dependants, bumped
+	 * by each write, and a record per thread of the version of its last write
+	 * and of the number of iterating objects it opened. The iterating objects
+	 * (iterators, spliterators) compare the version on each of their invocations;
+	 * if it changed, the records tell whether another thread wrote since their
+	 * previous invocation, so the write can be reported whether or not a
+	 * {@link ConcurrentModificationException} is thrown later on. The record of a
+	 * thread is created once; after that a write costs an atomic increment and
+	 * two volatile writes, and does not allocate.
+	 */
+	private static final class Modifications {
+
+		static final AtomicLongFieldUpdater<Modifications> VERSION = AtomicLongFieldUpdater.newUpdater(Modifications.class, "version");
+
+		volatile long version;
+		/** the records of the threads, created on demand */
+		private volatile ConcurrentWeakIdentityMap<Thread, Writer> threads;
+
+		void write() {
+			final Writer writer = writer(Thread.currentThread());
+			// marked before the version is bumped, so an iterating object
+			// seeing the new version also sees the write of this thread
+			writer.lastWrite = Long.MAX_VALUE;
+			writer.lastWrite = VERSION.incrementAndGet(this);
+		}
+
+		/**
+		 * Records an iterating object opened by the current thread.
+		 * @return the record of the current thread, never <code>null</code>
+		 */
+		Writer opened() {
+			final Writer writer = writer(Thread.currentThread());
+			Writer.ITERATORS.incrementAndGet(writer);
+			return writer;
+		}
+
+		/**
+		 * Returns a thread other than the given one which wrote after the given version.
+		 * @param aVersion the version seen before
+		 * @param current the thread to ignore, never <code>null</code>
+		 * @return a writing thread, or <code>null</code> if there is none
+		 */
+		Thread writerSince(final long aVersion, final Thread current) {
+			final ConcurrentWeakIdentityMap<Thread, Writer> map = threads;
+			if (map != null) {
+				for (Map.Entry<Thread, Writer> entry : map.entries()) {
+					final Thread thread = entry.getKey();
+					if (thread != current && entry.getValue().lastWrite > aVersion) {
+						return thread;
+					}
+				}
+			}
+			return null;
+		}
+
+		ConcurrentModificationException incident(final Thread aWriter, final Thread anIterator) {
+			final List<Thread> iterating = new ArrayList<Thread>(2);
+			final ConcurrentWeakIdentityMap<Thread, Writer> map = threads;
+			for (Map.Entry<Thread, Writer> entry : map.entries()) {
+				if (entry.getValue().iterators > 0) {
+					iterating.add(entry.getKey());
+				}
+			}
+			return new ConcurrentModificationException("modified by "+aWriter+" while iterated by "+anIterator+", threads with open iterators: "+iterating);
+		}
+
+		private Writer writer(final Thread thread) {
+			ConcurrentWeakIdentityMap<Thread, Writer> map = threads;
+			if (map == null) {
+				synchronized (this) {
+					map = threads;
+					if (map == null) {
+						map = new ConcurrentWeakIdentityMap<Thread, Writer>(2);
+						threads = map;
+					}
+				}
+			}
+			Writer result = map.get(thread);
+			if (result == null) {
+				result = new Writer();
+				final Writer existing = map.putIfAbsent(thread, result);
+				if (existing != null) {
+					result = existing;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * The record of a thread using a monitored object. It does not
+		 * reference the thread, which is the weakly held key of the record.
+		 * An iterating object counts as open until it is exhausted, failed
+		 * or was closed; one abandoned early stays counted.
+		 */
+		static final class Writer {
+
+			static final AtomicIntegerFieldUpdater<Writer> ITERATORS = AtomicIntegerFieldUpdater.newUpdater(Writer.class, "iterators");
+
+			/** the version after the last write of the thread, 0 if it did not write */
+			volatile long lastWrite;
+			/** the number of open iterating objects created by the thread */
+			volatile int iterators;
+
+			void closed() {
+				ITERATORS.decrementAndGet(this);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,29 @@
+package de.engehausen.kongcurrent;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface for which a monitored wrapper is generated at compile
+ * time by the {@link de.engehausen.kongcurrent.processor.MonitoredProcessor}.
+ * The wrapper of the interface <code>com.acme.Registry</code> is the class
+ * <code>com.acme.Registry$$Monitored</code>; it invokes the methods of the
+ * monitored object directly instead of through reflection. When it is on the
+ * classpath, {@link Monitor#monitor(Object, Description, ExceptionHandler)} uses
+ * it instead of a dynamic proxy for descriptions of the interface:
+ * <pre>&#64;Monitored
+ *public interface Registry {
+ *    Set&lt;String&gt; names();
+ *}</pre>
+ * The processor is found on the classpath of the compiler, i.e. nothing needs
+ * to be configured if the library is a dependency of the compiled code.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Monitored {
+	// marker only
+}
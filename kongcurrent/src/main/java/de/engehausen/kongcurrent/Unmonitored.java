@@ -0,0 +1,25 @@
+package de.engehausen.kongcurrent;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opts out of {@link Description#derive(Class)}: the result of an annotated
+ * method, or of any method returning an annotated interface, is not monitored
+ * as a dependant. Use it for methods returning objects which are not backed by
+ * the monitored object, e.g. a copy or a factory result:
+ * <pre>public interface Registry {
+ *    Set&lt;String&gt; names(); // a view, monitored
+ *    &#64;Unmonitored
+ *    List&lt;String&gt; snapshot(); // a copy, not monitored
+ *}</pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Unmonitored {
+	// marker only
+}
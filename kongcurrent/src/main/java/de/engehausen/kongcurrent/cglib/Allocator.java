@@ -0,0 +1,59 @@
+package de.engehausen.kongcurrent.cglib;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Allocates instances of the generated subclasses without running any constructor.
+ * This is the only use of internal API of the library: <code>sun.misc.Unsafe</code>
+ * (module <code>jdk.unsupported</code>), which is looked up reflectively. Serialization
+ * constructors of the <code>ReflectionFactory</code> cannot be used instead: their
+ * generated accessors refer to the allocated class by name, which is impossible for
+ * hidden classes.
+ */
+final class Allocator {
+
+	private static final MethodHandle ALLOCATE = allocateInstance();
+
+	private Allocator() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Allocates an instance of the given class; no constructor is run, all
+	 * fields have their default values.
+	 * @param clazz the class to instantiate, must not be <code>null</code>
+	 * @return the new instance, never <code>null</code>
+	 */
+	static Object allocate(final Class<?> clazz) {
+		try {
+			return ALLOCATE.invokeExact(clazz);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	private static MethodHandle allocateInstance() {
+		try {
+			final Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			final Field field = unsafe.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return MethodHandles.lookup().findVirtual(unsafe, "allocateInstance", MethodType.methodType(Object.class, Class.class)).bindTo(field.get(null));
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -16,6 +16,9 @@ import de.engehausen.kongcurrent.Monitor;
 public class DescriptionCglib<T> extends Description<T> {
 
 	protected final ConstructorInformation<T> ctorInfo;
+	protected boolean constructorFree;
+	protected boolean delegating;
+	protected boolean hiddenClass;
 
 	/**
 	 * Creates a description for the given class. The class is expected
@@ -53,6 +56,80 @@ public class DescriptionCglib<T> extends Description<T> {
 		addDependant(getInterface().getDeclaredMethod(methodName, parameterTypes), description);
 	}
 
+	/**
+	 * Sets whether monitored objects are created without running a constructor.
+	 * The monitored object is then only allocated (like during deserialization),
+	 * and its methods are invoked on the original object instead of on its own
+	 * (uninitialized) state; the constructor information is not needed. This avoids
+	 * constructors which are expensive or have side effects, and keeps the monitored
+	 * and the original object in sync. The fields of the monitored object itself are
+	 * not initialized: <code>final</code> methods, which cannot be intercepted, and code
+	 * accessing the fields directly (e.g. <code>equals</code> of the original object
+	 * comparing to the monitored object) see the default values. <i>Once the description object is used
+	 * through {@link Monitor}, directly or indirectly, this method must not be used any more.</i>
+	 * @param flag <code>true</code> to create monitored objects without constructor,
+	 * <code>false</code> (the default) to run the constructor described by the constructor information
+	 */
+	public void setConstructorFree(final boolean flag) {
+		constructorFree = flag;
+	}
+
+	/**
+	 * Checks whether monitored objects are created without running a constructor,
+	 * see {@link #setConstructorFree(boolean)}.
+	 * @return <code>true</code> if no constructor is run and methods are invoked on the original object.
+	 */
+	public boolean isConstructorFree() {
+		return constructorFree;
+	}
+
+	/**
+	 * Sets whether the methods of monitored objects are invoked on the original
+	 * object (through cglib's <code>FastClass</code>) instead of on the state the
+	 * monitored object inherits. The monitored object then does not drift apart from
+	 * the original object; its own state is only used by <code>final</code> methods.
+	 * Objects created without constructor are always delegating. <i>Once the description
+	 * object is used through {@link Monitor}, directly or indirectly, this method must
+	 * not be used any more.</i>
+	 * @param flag <code>true</code> to invoke the methods on the original object,
+	 * <code>false</code> (the default) to invoke them on the monitored object
+	 */
+	public void setDelegating(final boolean flag) {
+		delegating = flag;
+	}
+
+	/**
+	 * Checks whether the methods of monitored objects are invoked on the original
+	 * object, see {@link #setDelegating(boolean)} and {@link #setConstructorFree(boolean)}.
+	 * @return <code>true</code> if methods are invoked on the original object.
+	 */
+	public boolean isDelegating() {
+		return delegating || constructorFree;
+	}
+
+	/**
+	 * Sets whether monitored objects are created by {@link MonitorHidden}, i.e. as
+	 * instances of a hidden class generated by the JDK instead of by cglib, which
+	 * then need not be on the classpath. Such objects are always created without
+	 * constructor, see {@link #setConstructorFree(boolean)}. <i>Once the description
+	 * object is used through {@link Monitor}, directly or indirectly, this method must
+	 * not be used any more.</i>
+	 * @param flag <code>true</code> to create monitored objects as hidden classes,
+	 * <code>false</code> (the default) to use cglib
+	 */
+	public void setHiddenClass(final boolean flag) {
+		hiddenClass = flag;
+	}
+
+	/**
+	 * Checks whether monitored objects are created by {@link MonitorHidden},
+	 * see {@link #setHiddenClass(boolean)}.
+	 * @return <code>true</code> if the monitored objects are instances of hidden classes.
+	 */
+	public boolean isHiddenClass() {
+		return hiddenClass;
+	}
+
 	/**
 	 * Returns information on the constructor of an object to proxy.
 	 * @return information on the constructor of an object to proxy.
@@ -64,8 +141,8 @@ public class DescriptionCglib<T> extends Description<T> {
 	/**
 	 * Compares the given object to this description.
 	 * @return <code>true</code> if the given object is also a
-	 * description for the same interface, with the same comparator
-	 * and dependants; <code>false</code> otherwise.
+	 * description for the same interface, with the same comparator,
+	 * dependants and way of creating the monitored object; <code>false</code> otherwise.
 	 */
 	@Override
 	public boolean equals(final Object obj) {
@@ -76,6 +153,9 @@ public class DescriptionCglib<T> extends Description<T> {
 		} else {
 			if (obj instanceof DescriptionCglib<?>) {
 				final DescriptionCglib<?> other = (DescriptionCglib<?>) obj;
+				if (constructorFree != other.constructorFree || delegating != other.delegating || hiddenClass != other.hiddenClass || !sameSettings(other)) {
+					return false;
+				}
 				if (ctorInfo == null) {
 					return other.ctorInfo == null && proxyInterface.equals(other.proxyInterface) &&
 							comparator.equals(other.comparator) &&
@@ -92,13 +172,4 @@ public class DescriptionCglib<T> extends Description<T> {
 		}
 	}
 
-	/**
-	 * Returns the hash code of the description.
-	 * @return the hash code of the description.
-	 */
-	@Override
-	public int hashCode() {
-		return proxyInterface.hashCode();
-	}
-
 }
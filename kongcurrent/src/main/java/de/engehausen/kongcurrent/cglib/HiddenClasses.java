@@ -0,0 +1,623 @@
+package de.engehausen.kongcurrent.cglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the subclasses used by {@link MonitorHidden}, one per monitored class.
+ * The subclass is defined as a hidden class in the package of the monitored class
+ * (see <code>MethodHandles.Lookup.defineHiddenClass</code>), so no bytecode library
+ * is needed. Each method that can be overridden is implemented like this:
+ * <pre>public R method(A a, B b) {
+ *    final MonitorHidden.Handler h = this.monitor;
+ *    final Object[] args = h.arguments(2);
+ *    if (args != null) { args[0] = a; args[1] = b; }
+ *    try {
+ *        h.enter(INDEX, args);
+ *        result = this.target.method(a, b);
+ *    } catch (Throwable t) {
+ *        throw h.fail(INDEX, args, t);
+ *    }
+ *    try {
+ *        return (R) h.leave(INDEX, args, result);
+ *    } catch (Throwable t) {
+ *        throw h.failLeaving(INDEX, args, t);
+ *    }
+ *}</pre>
+ * i.e. the original object is invoked directly, without reflection and without
+ * boxing the arguments unless the exception handler needs them. Like for the
+ * proxies of {@link de.engehausen.kongcurrent.Monitor}, <code>equals</code>,
+ * <code>hashCode</code> and <code>toString</code> are not monitored but answered
+ * by the monitor (see {@link de.engehausen.kongcurrent.MonitorBase#equals(Object, Object)}),
+ * so a monitored object equals itself even if the class compares with
+ * <code>getClass()</code>. The class file
+ * version is that of Java 5, which is verified without stack map frames.
+ * <br>The subclass has no constructor; its instances are allocated by the
+ * {@link Allocator}, which does not run any constructor of the monitored class.
+ * <br>The classes are held per monitored class in a <code>ClassValue</code>,
+ * so they do not keep the class loaders of the monitored classes alive.
+ */
+final class HiddenClasses extends ClassValue<HiddenClasses.Subclass> {
+
+	private static final HiddenClasses SUBCLASSES = new HiddenClasses();
+
+	private static final String HANDLER = MonitorHidden.Handler.class.getName().replace('.', '/');
+	private static final String HANDLER_DESC = 'L'+HANDLER+';';
+	private static final String OBJECTS = "[Ljava/lang/Object;";
+	/** the methods answered by the monitor: name and descriptor to the descriptor of the method of the monitor */
+	private static final Map<String, String> OBJECT_METHODS = objectMethods();
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_PROTECTED = 0x0004;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	/** the opcodes used by the generated methods */
+	private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+		ILOAD = 0x15, LLOAD = 0x16, FLOAD = 0x17, DLOAD = 0x18, ALOAD = 0x19,
+		ISTORE = 0x36, LSTORE = 0x37, FSTORE = 0x38, DSTORE = 0x39, ASTORE = 0x3a,
+		AASTORE = 0x53, IRETURN = 0xac, LRETURN = 0xad, FRETURN = 0xae, DRETURN = 0xaf,
+		ARETURN = 0xb0, RETURN = 0xb1, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6,
+		INVOKESTATIC = 0xb8, ATHROW = 0xbf, CHECKCAST = 0xc0, IFNULL = 0xc6;
+
+	private HiddenClasses() {
+		// singleton
+	}
+
+	private static Map<String, String> objectMethods() {
+		final Map<String, String> result = new HashMap<String, String>();
+		result.put("equals(Ljava/lang/Object;)Z", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+		result.put("hashCode()I", "()I");
+		result.put("toString()Ljava/lang/String;", "()Ljava/lang/String;");
+		return result;
+	}
+
+	/**
+	 * Creates an instance of the subclass generated for the given class.
+	 * @param clazz the class to subclass, must not be <code>null</code>
+	 * @param target the object the methods are invoked on, must not be <code>null</code>
+	 * @param monitor the monitor of the instance, must not be <code>null</code>
+	 * @return the new instance, never <code>null</code>
+	 * @throws IllegalArgumentException if the class cannot be subclassed
+	 */
+	static Object newInstance(final Class<?> clazz, final Object target, final MonitorHidden.Handler monitor) {
+		final Subclass subclass = SUBCLASSES.get(clazz);
+		try {
+			final Object result = Allocator.allocate(subclass.type);
+			subclass.setMonitor.invokeExact(result, monitor);
+			subclass.setTarget.invokeExact(result, target);
+			return result;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+	 * Returns the monitor of the given object.
+	 * @param object an object, may be <code>null</code>
+	 * @return the monitor if the object is an instance of a generated subclass, <code>null</code> otherwise.
+	 */
+	static MonitorHidden.Handler monitorOf(final Object object) {
+		if (object != null) {
+			final Class<?> clz = object.getClass();
+			if (clz.getName().contains(MonitorHidden.CLASS_SUFFIX) && clz.isHidden()) {
+				final Subclass subclass = SUBCLASSES.get(clz.getSuperclass());
+				if (subclass.type == clz) {
+					try {
+						return (MonitorHidden.Handler) subclass.getMonitor.invokeExact(object);
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Error e) {
+						throw e;
+					} catch (Throwable t) {
+						throw new IllegalStateException(t);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the intercepted methods of the subclass of the given class,
+	 * in the order of the indices used by the generated code.
+	 * @param clazz the monitored class, must not be <code>null</code>
+	 * @return the intercepted methods, never <code>null</code>.
+	 */
+	static Method[] methods(final Class<?> clazz) {
+		return SUBCLASSES.get(clazz).methods;
+	}
+
+	@Override
+	protected Subclass computeValue(final Class<?> type) {
+		if (type.isInterface() || type.isArray() || type.isPrimitive() || Modifier.isFinal(type.getModifiers())) {
+			throw new IllegalArgumentException("cannot subclass "+type);
+		}
+		if (!type.getModule().canRead(HiddenClasses.class.getModule()) || !visible(type.getClassLoader())) {
+			throw new IllegalArgumentException("the monitor is not accessible from "+type);
+		}
+		final Method[] methods = overridable(type);
+		final String name = type.getName().replace('.', '/')+MonitorHidden.CLASS_SUFFIX;
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup()).defineHiddenClass(generate(name, type, methods), true);
+			final Class<?> clz = lookup.lookupClass();
+			return new Subclass(clz, methods,
+				lookup.findGetter(clz, "monitor", MonitorHidden.Handler.class).asType(MethodType.methodType(MonitorHidden.Handler.class, Object.class)),
+				lookup.findSetter(clz, "monitor", MonitorHidden.Handler.class).asType(MethodType.methodType(void.class, Object.class, MonitorHidden.Handler.class)),
+				lookup.findSetter(clz, "target", type).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("cannot subclass "+type, e);
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean visible(final ClassLoader loader) {
+		try {
+			return loader != null && Class.forName(MonitorHidden.Handler.class.getName(), false, loader) == MonitorHidden.Handler.class;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Collects the methods the subclass overrides: all methods of the class and
+	 * its superclasses which are neither static, private nor final and which are
+	 * accessible from the package of the class, and the default methods of its
+	 * interfaces. <code>finalize()</code> is left out (see {@link Prototypes}), and
+	 * so are bridge methods: they invoke the overridden method they bridge to.
+	 */
+	private static Method[] overridable(final Class<?> type) {
+		final Set<String> seen = new HashSet<String>();
+		final List<Method> result = new ArrayList<Method>();
+		for (Class<?> clz = type; clz != null; clz = clz.getSuperclass()) {
+			final boolean samePackage = samePackage(type, clz);
+			for (Method method : clz.getDeclaredMethods()) {
+				final int modifiers = method.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isPrivate(modifiers) || method.isSynthetic() || method.isBridge()) {
+					continue;
+				}
+				if (!Modifier.isPublic(modifiers) && !samePackage) {
+					// cannot be overridden or invoked on the target from the package of the subclass
+					continue;
+				}
+				if (seen.add(method.getName()+parameters(method.getParameterTypes())) &&
+						!Modifier.isFinal(modifiers) && !Modifier.isAbstract(modifiers) &&
+						!("finalize".equals(method.getName()) && method.getParameterTypes().length == 0) &&
+						accessible(type, method.getReturnType())) {
+					result.add(method);
+				}
+			}
+		}
+		for (Method method : type.getMethods()) {
+			if (method.isDefault() && seen.add(method.getName()+parameters(method.getParameterTypes())) && accessible(type, method.getReturnType())) {
+				result.add(method);
+			}
+		}
+		return result.toArray(new Method[result.size()]);
+	}
+
+	private static boolean samePackage(final Class<?> a, final Class<?> b) {
+		return a.getClassLoader() == b.getClassLoader() && a.getPackageName().equals(b.getPackageName());
+	}
+
+	/** the return value is cast to its type, which must be accessible */
+	private static boolean accessible(final Class<?> type, final Class<?> returnType) {
+		Class<?> clz = returnType;
+		while (clz.isArray()) {
+			clz = clz.getComponentType();
+		}
+		return clz.isPrimitive() || (Modifier.isPublic(clz.getModifiers()) && clz.getModule().isExported(clz.getPackageName())) || samePackage(type, clz);
+	}
+
+	/**
+	 * Generates the class file of the subclass.
+	 * @param name the internal name of the subclass
+	 * @param type the class to subclass
+	 * @param methods the methods to override
+	 * @return the class file
+	 */
+	private static byte[] generate(final String name, final Class<?> type, final Method[] methods) throws IOException {
+		final ClassFile cf = new ClassFile();
+		final String targetDesc = descriptor(type);
+		final int thisClass = cf.classRef(name);
+		final int superClass = cf.classRef(internalName(type));
+		final int monitorField = cf.fieldRef(name, "monitor", HANDLER_DESC);
+		final int targetField = cf.fieldRef(name, "target", targetDesc);
+		final int code = cf.utf8("Code");
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		final DataOutputStream members = new DataOutputStream(bytes);
+		members.writeShort(2);
+		field(cf, members, "monitor", HANDLER_DESC);
+		field(cf, members, "target", targetDesc);
+		members.writeShort(methods.length);
+		for (int i = 0; i < methods.length; i++) {
+			method(cf, members, i, methods[i], type, monitorField, targetField, code);
+		}
+		members.writeShort(0); // no attributes
+
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.size() + cf.size() + 32);
+		final DataOutputStream out = new DataOutputStream(result);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49); // Java 5
+		cf.writeTo(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0); // no interfaces
+		bytes.writeTo(out);
+		out.flush();
+		return result.toByteArray();
+	}
+
+	private static void field(final ClassFile cf, final DataOutputStream out, final String name, final String desc) throws IOException {
+		out.writeShort(ACC_PRIVATE);
+		out.writeShort(cf.utf8(name));
+		out.writeShort(cf.utf8(desc));
+		out.writeShort(0);
+	}
+
+	private static void method(final ClassFile cf, final DataOutputStream out, final int index, final Method method, final Class<?> type, final int monitorField, final int targetField, final int codeAttribute) throws IOException {
+		final Class<?>[] params = method.getParameterTypes();
+		final Class<?> returnType = method.getReturnType();
+		final String desc = parameters(params)+descriptor(returnType);
+		final String monitorMethod = OBJECT_METHODS.get(method.getName()+desc);
+		if (monitorMethod != null) {
+			objectMethod(cf, out, method, desc, monitorMethod, monitorField, codeAttribute);
+			return;
+		}
+		final int[] slots = new int[params.length];
+		int next = 1;
+		for (int i = 0; i < params.length; i++) {
+			slots[i] = next;
+			next += size(params[i]);
+		}
+		final int monitor = next;
+		final int args = next + 1;
+		final int local = next + 2;
+		if (local + 2 > 255) {
+			throw new IllegalArgumentException("too many parameters: "+method);
+		}
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 8*params.length);
+		final DataOutputStream code = new DataOutputStream(bytes);
+		// h = this.monitor
+		code.writeByte(ALOAD); code.writeByte(0);
+		code.writeByte(GETFIELD); code.writeShort(monitorField);
+		code.writeByte(ASTORE); code.writeByte(monitor);
+		// args = h.arguments(n), filled if not null
+		if (params.length == 0) {
+			code.writeByte(ACONST_NULL);
+		} else {
+			code.writeByte(ALOAD); code.writeByte(monitor);
+			push(code, params.length);
+			code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, "arguments", "(I)"+OBJECTS));
+		}
+		code.writeByte(ASTORE); code.writeByte(args);
+		if (params.length > 0) {
+			code.writeByte(ALOAD); code.writeByte(args);
+			final int branch = bytes.size();
+			code.writeByte(IFNULL); code.writeShort(0);
+			for (int i = 0; i < params.length; i++) {
+				code.writeByte(ALOAD); code.writeByte(args);
+				push(code, i);
+				load(code, params[i], slots[i]);
+				box(cf, code, params[i]);
+				code.writeByte(AASTORE);
+			}
+			code.flush();
+			final byte[] patched = bytes.toByteArray();
+			final int offset = patched.length - branch;
+			patched[branch + 1] = (byte) (offset >> 8);
+			patched[branch + 2] = (byte) offset;
+			bytes.reset();
+			bytes.write(patched);
+		}
+		// try { h.enter(i, args); result = this.target.method(...); }
+		final int start = bytes.size();
+		code.writeByte(ALOAD); code.writeByte(monitor);
+		push(code, index);
+		code.writeByte(ALOAD); code.writeByte(args);
+		code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, "enter", "(I"+OBJECTS+")V"));
+		code.writeByte(ALOAD); code.writeByte(0);
+		code.writeByte(GETFIELD); code.writeShort(targetField);
+		for (int i = 0; i < params.length; i++) {
+			load(code, params[i], slots[i]);
+		}
+		code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(internalName(type), method.getName(), desc));
+		final int end = bytes.size();
+		// try { return h.leave(i, args, result); }
+		if (returnType != void.class) {
+			code.writeByte(opcode(returnType, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE)); code.writeByte(local);
+		}
+		final int leaving = bytes.size();
+		code.writeByte(ALOAD); code.writeByte(monitor);
+		push(code, index);
+		code.writeByte(ALOAD); code.writeByte(args);
+		final int left;
+		if (returnType == boolean.class) {
+			code.writeByte(ILOAD); code.writeByte(local);
+			code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, "leave", "(I"+OBJECTS+"Z)Z"));
+			left = bytes.size();
+			code.writeByte(IRETURN);
+		} else if (returnType.isPrimitive()) {
+			code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, "leave", "(I"+OBJECTS+")V"));
+			left = bytes.size();
+			if (returnType == void.class) {
+				code.writeByte(RETURN);
+			} else {
+				load(code, returnType, local);
+				code.writeByte(opcode(returnType, IRETURN, LRETURN, FRETURN, DRETURN, ARETURN));
+			}
+		} else {
+			code.writeByte(ALOAD); code.writeByte(local);
+			code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, "leave", "(I"+OBJECTS+"Ljava/lang/Object;)Ljava/lang/Object;"));
+			if (returnType != Object.class) {
+				code.writeByte(CHECKCAST); code.writeShort(cf.classRef(internalName(returnType)));
+			}
+			left = bytes.size();
+			code.writeByte(ARETURN);
+		}
+		// catch (Throwable t) { throw h.fail(i, args, t); }
+		final int handler = bytes.size();
+		rethrow(cf, code, "fail", index, monitor, args, local);
+		// catch (Throwable t) { throw h.failLeaving(i, args, t); }
+		final int leaveHandler = bytes.size();
+		rethrow(cf, code, "failLeaving", index, monitor, args, local);
+		code.flush();
+
+		out.writeShort(method.getModifiers() & (ACC_PUBLIC | ACC_PROTECTED));
+		out.writeShort(cf.utf8(method.getName()));
+		out.writeShort(cf.utf8(desc));
+		out.writeShort(1);
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + bytes.size() + 16);
+		out.writeShort(Math.max(6, next + 2)); // max stack
+		out.writeShort(local + 2); // max locals
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		out.writeShort(2);
+		out.writeShort(start);
+		out.writeShort(end);
+		out.writeShort(handler);
+		out.writeShort(0); // any exception
+		out.writeShort(leaving);
+		out.writeShort(left);
+		out.writeShort(leaveHandler);
+		out.writeShort(0); // any exception
+		out.writeShort(0); // no attributes
+	}
+
+	/** stores the caught exception and throws the one returned by the given method of the monitor */
+	private static void rethrow(final ClassFile cf, final DataOutputStream code, final String name, final int index, final int monitor, final int args, final int local) throws IOException {
+		code.writeByte(ASTORE); code.writeByte(local);
+		code.writeByte(ALOAD); code.writeByte(monitor);
+		push(code, index);
+		code.writeByte(ALOAD); code.writeByte(args);
+		code.writeByte(ALOAD); code.writeByte(local);
+		code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, name, "(I"+OBJECTS+"Ljava/lang/Throwable;)Ljava/lang/Throwable;"));
+		code.writeByte(ATHROW);
+	}
+
+	/**
+	 * Generates one of the methods answered by the monitor, e.g.
+	 * <code>return this.monitor.equals(other, this);</code>
+	 */
+	private static void objectMethod(final ClassFile cf, final DataOutputStream out, final Method method, final String desc, final String monitorMethod, final int monitorField, final int codeAttribute) throws IOException {
+		final boolean withArgument = method.getParameterTypes().length > 0;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+		final DataOutputStream code = new DataOutputStream(bytes);
+		code.writeByte(ALOAD); code.writeByte(0);
+		code.writeByte(GETFIELD); code.writeShort(monitorField);
+		if (withArgument) {
+			code.writeByte(ALOAD); code.writeByte(1);
+			code.writeByte(ALOAD); code.writeByte(0);
+		}
+		code.writeByte(INVOKEVIRTUAL); code.writeShort(cf.methodRef(HANDLER, method.getName(), monitorMethod));
+		code.writeByte(opcode(method.getReturnType(), IRETURN, LRETURN, FRETURN, DRETURN, ARETURN));
+		code.flush();
+
+		out.writeShort(method.getModifiers() & (ACC_PUBLIC | ACC_PROTECTED));
+		out.writeShort(cf.utf8(method.getName()));
+		out.writeShort(cf.utf8(desc));
+		out.writeShort(1);
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + bytes.size());
+		out.writeShort(3); // max stack
+		out.writeShort(withArgument ? 2 : 1); // max locals
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		out.writeShort(0); // no exception table
+		out.writeShort(0); // no attributes
+	}
+
+	private static void push(final DataOutputStream code, final int value) throws IOException {
+		if (value <= 5) {
+			code.writeByte(ICONST_0 + value);
+		} else if (value <= Byte.MAX_VALUE) {
+			code.writeByte(BIPUSH); code.writeByte(value);
+		} else if (value <= Short.MAX_VALUE) {
+			code.writeByte(SIPUSH); code.writeShort(value);
+		} else {
+			throw new IllegalArgumentException("too many methods");
+		}
+	}
+
+	private static void load(final DataOutputStream code, final Class<?> type, final int slot) throws IOException {
+		code.writeByte(opcode(type, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD));
+		code.writeByte(slot);
+	}
+
+	private static void box(final ClassFile cf, final DataOutputStream code, final Class<?> type) throws IOException {
+		if (type.isPrimitive()) {
+			final Class<?> wrapper = MethodType.methodType(type).wrap().returnType();
+			code.writeByte(INVOKESTATIC);
+			code.writeShort(cf.methodRef(internalName(wrapper), "valueOf", '('+descriptor(type)+')'+descriptor(wrapper)));
+		}
+	}
+
+	/** selects the opcode variant for int-like, long, float, double and reference values */
+	private static int opcode(final Class<?> type, final int i, final int l, final int f, final int d, final int a) {
+		if (type == long.class) {
+			return l;
+		} else if (type == float.class) {
+			return f;
+		} else if (type == double.class) {
+			return d;
+		} else if (type.isPrimitive()) {
+			return i;
+		}
+		return a;
+	}
+
+	private static int size(final Class<?> type) {
+		return type == long.class || type == double.class ? 2 : 1;
+	}
+
+	private static String internalName(final Class<?> type) {
+		return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+	}
+
+	private static String parameters(final Class<?>[] types) {
+		final StringBuilder sb = new StringBuilder(16*types.length+2);
+		sb.append('(');
+		for (Class<?> type : types) {
+			sb.append(descriptor(type));
+		}
+		return sb.append(')').toString();
+	}
+
+	private static String descriptor(final Class<?> type) {
+		return MethodType.methodType(type).toMethodDescriptorString().substring(2);
+	}
+
+	/**
+	 * A generated subclass and the handles to its fields.
+	 */
+	static final class Subclass {
+
+		final Class<?> type;
+		final Method[] methods;
+		final MethodHandle getMonitor;
+		final MethodHandle setMonitor;
+		final MethodHandle setTarget;
+
+		Subclass(final Class<?> aType, final Method[] someMethods, final MethodHandle aGetter, final MethodHandle aMonitorSetter, final MethodHandle aTargetSetter) {
+			type = aType;
+			methods = someMethods;
+			getMonitor = aGetter;
+			setMonitor = aMonitorSetter;
+			setTarget = aTargetSetter;
+		}
+
+	}
+
+	/**
+	 * The constant pool of the generated class file.
+	 */
+	private static final class ClassFile {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1;
+
+		int utf8(final String value) throws IOException {
+			final Integer existing = entries.get("U"+value);
+			if (existing != null) {
+				return existing.intValue();
+			}
+			out.writeByte(1);
+			out.writeUTF(value);
+			return add("U"+value);
+		}
+
+		int classRef(final String internalName) throws IOException {
+			final Integer existing = entries.get("C"+internalName);
+			if (existing != null) {
+				return existing.intValue();
+			}
+			final int name = utf8(internalName);
+			out.writeByte(7);
+			out.writeShort(name);
+			return add("C"+internalName);
+		}
+
+		int fieldRef(final String owner, final String name, final String desc) throws IOException {
+			return memberRef(9, owner, name, desc);
+		}
+
+		int methodRef(final String owner, final String name, final String desc) throws IOException {
+			return memberRef(10, owner, name, desc);
+		}
+
+		private int memberRef(final int tag, final String owner, final String name, final String desc) throws IOException {
+			final String key = tag+owner+'.'+name+desc;
+			final Integer existing = entries.get(key);
+			if (existing != null) {
+				return existing.intValue();
+			}
+			final int ownerIndex = classRef(owner);
+			final int nameAndType = nameAndType(name, desc);
+			out.writeByte(tag);
+			out.writeShort(ownerIndex);
+			out.writeShort(nameAndType);
+			return add(key);
+		}
+
+		private int nameAndType(final String name, final String desc) throws IOException {
+			final String key = "N"+name+':'+desc;
+			final Integer existing = entries.get(key);
+			if (existing != null) {
+				return existing.intValue();
+			}
+			final int nameIndex = utf8(name);
+			final int descIndex = utf8(desc);
+			out.writeByte(12);
+			out.writeShort(nameIndex);
+			out.writeShort(descIndex);
+			return add(key);
+		}
+
+		private int add(final String key) {
+			if (count > 0xffff) {
+				throw new IllegalArgumentException("class too large");
+			}
+			entries.put(key, Integer.valueOf(count));
+			return count++;
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		void writeTo(final DataOutputStream target) throws IOException {
+			out.flush();
+			target.writeShort(count);
+			bytes.writeTo(target);
+		}
+
+	}
+
+}
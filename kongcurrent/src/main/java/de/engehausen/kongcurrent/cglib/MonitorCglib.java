@@ -2,12 +2,15 @@ package de.engehausen.kongcurrent.cglib;
 
 import java.lang.reflect.Method;
 
-import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
 import de.engehausen.kongcurrent.Description;
 import de.engehausen.kongcurrent.ExceptionHandler;
 import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.MonitorBase;
+import de.engehausen.kongcurrent.helper.CompositeExceptionHandler;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
 
 /**
@@ -21,7 +24,13 @@ import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
  * For proxying to work a new object of the class must either be constructable using
  * the default constructor or using a constructor with arguments. Classes with constructors
  * that use arguments need to be described using the {@link ConstructorInformation} in
- * {@link DescriptionCglib}.
+ * {@link DescriptionCglib}. The generated subclass is created once per class and constructor;
+ * further monitored objects of the class are created through cglib's {@link Factory}.
+ * Alternatively the monitored object can be created without running any constructor,
+ * see {@link DescriptionCglib#setConstructorFree(boolean)}; its methods are then invoked
+ * on the original object. Constructed monitored objects can do the same, see
+ * {@link DescriptionCglib#setDelegating(boolean)}. Descriptions marked with
+ * {@link DescriptionCglib#setHiddenClass(boolean)} are passed on to {@link MonitorHidden}.
  * <p>Here is a simple example code snippet that will be adapted to use the monitor:
  * <pre>MyClass myImpl = new MyClass("default");
  *processing(myList);</pre>
@@ -102,6 +111,9 @@ public class MonitorCglib {
 	 * proxied object; a single exception handler instance should be used per monitored
 	 * instance, or the handler must be capable of tracking different objects at the
 	 * same time.
+	 * If the target is already monitored through the same handler and is an instance
+	 * of the described class, it is returned as is; if it is monitored through another
+	 * handler, the original object is monitored with both handlers.
 	 * @return a monitored version of the object to monitor, never <code>null</code>.
 	 * @param <T> the type of object to monitor
 	 */
@@ -109,60 +121,98 @@ public class MonitorCglib {
 		return (T) monitorGeneric(target, description, handler);
 	}
 
+	/**
+	 * Checks whether the given object was created by this monitor.
+	 * @param object an object, may be <code>null</code>
+	 * @return <code>true</code> if the object is monitored by this monitor.
+	 */
+	public static boolean isMonitored(final Object object) {
+		return handlerOf(object) != null;
+	}
+
+	/**
+	 * Returns the original object of an object monitored by this monitor.
+	 * See also {@link Monitor#unwrap(Object)}.
+	 * @param object an object, may be <code>null</code>
+	 * @return the original object if the given object is monitored, the given object otherwise.
+	 * @param <T> the type of the object
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(final T object) {
+		final MonitorHandler<?> monitorHandler = handlerOf(object);
+		return monitorHandler == null ? object : (T) monitorHandler.target();
+	}
+
 	@SuppressWarnings("unchecked")
 	protected static <T> T monitorGeneric(final T target, final DescriptionCglib description, final ExceptionHandler handler) {
+		final MonitorHandler<?> existing = handlerOf(target);
+		if (existing != null) {
+			// already monitored: reuse the proxy or monitor the original object with both handlers
+			if (existing.handler() == handler && description.getInterface().isInstance(target)) {
+				return target;
+			}
+			return (T) monitorGeneric(existing.target(), description, CompositeExceptionHandler.combine(existing.handler(), handler));
+		}
 		if (description.getInterface().isInterface()) {
 			return (T) Monitor.monitor(target, description, handler);
+		} else if (description.isHiddenClass()) {
+			return (T) MonitorHidden.monitor(target, description, handler);
 		} else {
 			final MonitorHandler monitorHandler = new MonitorHandler(target, description, handler);
-			final ConstructorInformation ctorInfo = description.getConstructorInformation();
-			if (ctorInfo == null) {
-				// expecting default constructor
-				return (T) Enhancer.create(target.getClass(), monitorHandler);
-			} else {
-				final Enhancer e = new Enhancer();
-				e.setSuperclass(target.getClass());
-				e.setCallback(monitorHandler);
-				return (T) e.create(ctorInfo.getArgTypes(), ctorInfo.getArgValues());
+			if (description.isConstructorFree()) {
+				return (T) Prototypes.allocate(target.getClass(), monitorHandler);
+			}
+			// without constructor information the default constructor is expected
+			return (T) Prototypes.newInstance(target.getClass(), description.getConstructorInformation(), monitorHandler);
+		}
+	}
+
+	private static MonitorHandler<?> handlerOf(final Object object) {
+		if (object instanceof Factory) {
+			final Callback[] callbacks = ((Factory) object).getCallbacks();
+			if (callbacks.length > 0 && callbacks[0] instanceof MonitorHandler<?>) {
+				return (MonitorHandler<?>) callbacks[0];
 			}
 		}
+		return null;
 	}
 
 	/**
 	 * The invocation handler (cglib method interceptor).
 	 * @param <T> the type for the instance to be monitored
 	 */
-	private static class MonitorHandler<T> implements MethodInterceptor {
+	private static class MonitorHandler<T> extends MonitorBase<T> implements MethodInterceptor {
 
-		protected final Object target;
-		protected final DescriptionCglib<Object> description;
-		protected final ExceptionHandler handler;
+		/** <code>true</code> if the methods are invoked on the target */
+		protected final boolean delegating;
 		
-		public MonitorHandler(final Object aTarget, final DescriptionCglib<Object> aDescription, final ExceptionHandler aHandler) {
-			target = aTarget;
-			description = aDescription;
-			handler = aHandler;
+		public MonitorHandler(final T aTarget, final DescriptionCglib<?> aDescription, final ExceptionHandler aHandler) {
+			super(aTarget, aDescription, aHandler, null);
+			delegating = aDescription.isDelegating();
 		}
 
 		@Override
 		public Object intercept(final Object obj, final Method method, final Object[] args, final MethodProxy proxy) throws Throwable {
-			Object result;
+			final Object result;
 			try {
-				handler.preInvoke(target, method, args);
-				result = proxy.invokeSuper(obj, args);
+				before(method, args);
+				// the fast class of the monitored class invokes the method by index
+				result = delegating ? proxy.invoke(target, args) : proxy.invokeSuper(obj, args);
 			} catch (Throwable t) {
-				handler.handle(t, target, method, args);
+				failed(t, method, args);
 				throw t;
 			} finally {
-				handler.postInvoke(target, method, args);
+				after(method, args);
 			}
-			final Description<?> desc = description.getDescription(method);
-			if (desc instanceof DescriptionCglib<?>) {
-				result = monitorGeneric(result, (DescriptionCglib<?>) desc, handler);
-			} else if (desc != null) {
-				result = Monitor.monitor(result, description, handler);
-			}
-			return result;
+			return returned(method, result);
+		}
+
+		Object target() {
+			return target;
+		}
+
+		ExceptionHandler handler() {
+			return handler;
 		}
 
 	}
@@ -0,0 +1,231 @@
+package de.engehausen.kongcurrent.cglib;
+
+import java.lang.reflect.Method;
+
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.MonitorBase;
+import de.engehausen.kongcurrent.helper.CompositeExceptionHandler;
+
+/**
+ * Experimental helper to monitor parallel method invocations for exceptions on
+ * actual <i>classes</i>, like {@link MonitorCglib}, but without a bytecode library.
+ * The monitored object is an instance of a subclass generated at runtime and
+ * defined as a <i>hidden class</i> by the JDK (Java 15 or later is required, see
+ * {@link #isSupported()}; on older versions the rest of the library works as before); its
+ * methods invoke the methods of the original object directly, without reflection.
+ * No constructor is run to create the monitored object, i.e. no constructor
+ * information is needed, and it never gets out of sync with the original object
+ * (compare {@link DescriptionCglib#setConstructorFree(boolean)}).
+ * <p>This monitor is used for the descriptions which are marked with
+ * {@link DescriptionCglib#setHiddenClass(boolean)}, whether they are passed to
+ * {@link MonitorCglib} or describe dependant objects; it can also be used directly:
+ * <pre>DescriptionCglib&lt;MyClass&gt; description = new DescriptionCglib&lt;MyClass&gt;(MyClass.class);
+ *description.setHiddenClass(true);
+ *MyClass monitored = MonitorHidden.monitor(myImpl, description, new DefaultExceptionHandler());</pre>
+ * The class of the monitored object must not be <code>final</code>, and it must be
+ * able to see this library, i.e. classes of the JDK cannot be monitored this way.
+ * Methods which are <code>final</code>, <code>static</code> or not accessible from
+ * the package of the class are not monitored; code calling them or accessing
+ * fields of the monitored object directly sees the default values.
+ */
+public class MonitorHidden {
+
+	/** the marker in the names of the generated subclasses */
+	public static final String CLASS_SUFFIX = "$$HiddenMonitor";
+
+	/** hidden classes exist since Java 15 */
+	private static final boolean SUPPORTED = supported();
+
+	private MonitorHidden() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Creates a monitored version of the given target.
+	 * @param target the instance to monitor, must not be <code>null</code>.
+	 * @param description a description of the class or interface, must not be <code>null</code>.
+	 * If the description is for an interface, then the proxying will be delegated to {@link Monitor}.
+	 * @param handler an exception handler that keeps track of invocations on the
+	 * proxied object; a single exception handler instance should be used per monitored
+	 * instance, or the handler must be capable of tracking different objects at the
+	 * same time.
+	 * If the target is already monitored through the same handler and is an instance
+	 * of the described class, it is returned as is; if it is monitored through another
+	 * handler, the original object is monitored with both handlers.
+	 * @return a monitored version of the object to monitor, never <code>null</code>.
+	 * @param <T> the type of object to monitor
+	 * @throws IllegalArgumentException if the class of the target cannot be subclassed
+	 */
+	public static <T> T monitor(final T target, final DescriptionCglib<T> description, final ExceptionHandler handler) {
+		return (T) monitorGeneric(target, description, handler);
+	}
+
+	/**
+	 * Checks whether this monitor can be used, i.e. whether the JDK supports hidden classes.
+	 * @return <code>true</code> on Java 15 or later.
+	 */
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/**
+	 * Checks whether the given object was created by this monitor.
+	 * @param object an object, may be <code>null</code>
+	 * @return <code>true</code> if the object is monitored by this monitor.
+	 */
+	public static boolean isMonitored(final Object object) {
+		return SUPPORTED && HiddenClasses.monitorOf(object) != null;
+	}
+
+	/**
+	 * Returns the original object of an object monitored by this monitor.
+	 * See also {@link Monitor#unwrap(Object)}.
+	 * @param object an object, may be <code>null</code>
+	 * @return the original object if the given object is monitored, the given object otherwise.
+	 * @param <T> the type of the object
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(final T object) {
+		final Handler monitorHandler = SUPPORTED ? HiddenClasses.monitorOf(object) : null;
+		return monitorHandler == null ? object : (T) monitorHandler.target();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static <T> T monitorGeneric(final T target, final DescriptionCglib description, final ExceptionHandler handler) {
+		if (!SUPPORTED) {
+			throw new IllegalStateException("hidden classes require Java 15 or later");
+		}
+		final Handler existing = HiddenClasses.monitorOf(target);
+		if (existing != null) {
+			// already monitored: reuse the monitored object or monitor the original object with both handlers
+			if (existing.handler() == handler && description.getInterface().isInstance(target)) {
+				return target;
+			}
+			return (T) monitorGeneric(existing.target(), description, CompositeExceptionHandler.combine(existing.handler(), handler));
+		}
+		if (description.getInterface().isInterface()) {
+			return (T) Monitor.monitor(target, description, handler);
+		}
+		final Class<?> clz = target.getClass();
+		return (T) HiddenClasses.newInstance(clz, target, new Handler(target, description, handler, HiddenClasses.methods(clz)));
+	}
+
+	private static boolean supported() {
+		try {
+			Class.class.getMethod("isHidden");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The monitor of an object, called by the generated subclass. Methods are
+	 * identified by their index in the methods overridden by the subclass.
+	 * <p>This class is public for the generated subclasses only.
+	 */
+	public static final class Handler extends MonitorBase<Object> {
+
+		private final Method[] methods;
+
+		Handler(final Object aTarget, final DescriptionCglib<?> aDescription, final ExceptionHandler aHandler, final Method[] someMethods) {
+			super(aTarget, aDescription, aHandler, null);
+			methods = someMethods;
+		}
+
+		/**
+		 * Returns the array for the arguments of an invocation.
+		 * @param count the number of arguments
+		 * @return the array to fill, or <code>null</code> if the exception handler does not need the arguments.
+		 */
+		public Object[] arguments(final int count) {
+			return arguments ? new Object[count] : null;
+		}
+
+		/**
+		 * Invoked before the method is invoked on the target.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 */
+		public void enter(final int index, final Object[] args) {
+			before(methods[index], args);
+		}
+
+		/**
+		 * Invoked if the method (or {@link #enter(int, Object[])}) threw an exception.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 * @param throwable the exception, never <code>null</code>
+		 * @return the exception to rethrow
+		 */
+		public Throwable fail(final int index, final Object[] args, final Throwable throwable) {
+			final Method method = methods[index];
+			failed(throwable, method, args);
+			after(method, args);
+			return throwable;
+		}
+
+		/**
+		 * Invoked if one of the <code>leave</code> methods threw an exception,
+		 * e.g. while monitoring the result; the method was invoked on the target
+		 * and {@link #after(Method, Object[])} already took place.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 * @param throwable the exception, never <code>null</code>
+		 * @return the exception to rethrow
+		 */
+		public Throwable failLeaving(final int index, final Object[] args, final Throwable throwable) {
+			failed(throwable, methods[index], args);
+			return throwable;
+		}
+
+		/**
+		 * Invoked when a method without result, or with a primitive result
+		 * other than <code>boolean</code>, returned normally.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 */
+		public void leave(final int index, final Object[] args) {
+			final Method method = methods[index];
+			after(method, args);
+			returned(method);
+		}
+
+		/**
+		 * Invoked when a method with a <code>boolean</code> result returned normally.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 * @param result the result of the method
+		 * @return the result
+		 */
+		public boolean leave(final int index, final Object[] args, final boolean result) {
+			final Method method = methods[index];
+			after(method, args);
+			return returned(method, result);
+		}
+
+		/**
+		 * Invoked when a method with a result returned normally.
+		 * @param index the index of the method
+		 * @param args the arguments, may be <code>null</code>
+		 * @param result the result of the method, may be <code>null</code>
+		 * @return the (monitored) result
+		 */
+		public Object leave(final int index, final Object[] args, final Object result) {
+			final Method method = methods[index];
+			after(method, args);
+			return returned(method, result);
+		}
+
+		Object target() {
+			return target;
+		}
+
+		ExceptionHandler handler() {
+			return handler;
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+package de.engehausen.kongcurrent.cglib;
+
+import java.lang.reflect.Method;
+
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.CallbackFilter;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.NoOp;
+
+/**
+ * Keeps one instance of the class generated by cglib per monitored class.
+ * Monitored instances are created through the {@link Factory} methods of that
+ * prototype, i.e. without looking up (or generating) the class again; apart
+ * from the constructor this costs about as much as a plain allocation. The
+ * generated class declares all constructors of the monitored class, so one
+ * prototype serves all constructors.
+ * <br>The prototype itself is allocated by the {@link Allocator} without running
+ * any constructor and is never handed out; it keeps no arguments or state of the
+ * object it was first created for, it merely gives access to the generated class.
+ * <br><code>finalize()</code> is not intercepted: overriding it would register each
+ * monitored object with the finalizer, and calls from the finalizer thread would
+ * be recorded as accesses to the object.
+ * <br>The prototypes are held per class in a <code>ClassValue</code>, so they
+ * do not keep the class loaders of the monitored classes alive.
+ */
+final class Prototypes extends ClassValue<Factory> {
+
+	private static final Prototypes PROTOTYPES = new Prototypes();
+
+	/** selects the callback of a method: the monitor, or none for <code>finalize()</code> */
+	private static final CallbackFilter FILTER = new CallbackFilter() {
+		@Override
+		public int accept(final Method method) {
+			return "finalize".equals(method.getName()) && method.getParameterTypes().length == 0 ? 1 : 0;
+		}
+	};
+
+	private Prototypes() {
+		// singleton
+	}
+
+	/**
+	 * Creates an instance of the class generated for the given class.
+	 * @param clazz the class to subclass, must not be <code>null</code>
+	 * @param ctorInfo the constructor to use, <code>null</code> for the default constructor
+	 * @param callback the callback of the instance, i.e. the monitor, must not be <code>null</code>
+	 * @return the new instance, never <code>null</code>
+	 */
+	static Object newInstance(final Class<?> clazz, final ConstructorInformation<?> ctorInfo, final Callback callback) {
+		final Factory prototype = PROTOTYPES.get(clazz);
+		final Callback[] callbacks = new Callback[] { callback, NoOp.INSTANCE };
+		if (ctorInfo == null) {
+			return prototype.newInstance(callbacks);
+		} else {
+			return prototype.newInstance(ctorInfo.getArgTypes(), ctorInfo.getArgValues(), callbacks);
+		}
+	}
+
+	/**
+	 * Creates an instance of the class generated for the given class
+	 * without running any constructor (except the one of <code>Object</code>).
+	 * @param clazz the class to subclass, must not be <code>null</code>
+	 * @param callback the callback of the instance, i.e. the monitor, must not be <code>null</code>
+	 * @return the new instance, never <code>null</code>
+	 */
+	static Object allocate(final Class<?> clazz, final Callback callback) {
+		final Factory result = (Factory) Allocator.allocate(PROTOTYPES.get(clazz).getClass());
+		result.setCallbacks(new Callback[] { callback, NoOp.INSTANCE });
+		return result;
+	}
+
+	private static Enhancer enhancer(final Class<?> clazz) {
+		final Enhancer e = new Enhancer();
+		e.setSuperclass(clazz);
+		e.setCallbackFilter(FILTER);
+		return e;
+	}
+
+	@Override
+	protected Factory computeValue(final Class<?> type) {
+		final Enhancer e = enhancer(type);
+		e.setCallbackTypes(new Class<?>[] { MethodInterceptor.class, NoOp.class });
+		return (Factory) Allocator.allocate(e.createClass());
+	}
+
+}
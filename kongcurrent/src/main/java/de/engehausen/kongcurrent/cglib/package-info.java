@@ -1,6 +1,8 @@
 /**
  * Provides an experimental monitor for <i>classes</i> (not interfaces) using
  * <a href="http://cglib.sourceforge.net/">cglib</a>. {@link de.engehausen.kongcurrent.cglib.MonitorCglib} can only
- * be used with the cglib library and its dependencies on the classpath.
+ * be used with the cglib library and its dependencies on the classpath;
+ * {@link de.engehausen.kongcurrent.cglib.MonitorHidden} generates the subclasses
+ * itself and needs no further library.
  */
-package de.engehausen.kongcurrent.cglib;
\ No newline at end of file
+package de.engehausen.kongcurrent.cglib;
\ No newline at end of file
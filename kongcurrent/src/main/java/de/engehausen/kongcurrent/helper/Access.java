@@ -0,0 +1,49 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classifies methods of monitored objects into reading and writing methods.
+ * Methods are considered writing if their name starts with one of the
+ * usual prefixes of modifying methods of the collection interfaces,
+ * e.g. <code>add</code>, <code>put</code> or <code>remove</code>.
+ */
+final class Access {
+
+	private static final String[] WRITE_PREFIXES = {
+		"add", "put", "remove", "clear", "set", "retain", "replace",
+		"poll", "push", "pop", "offer", "compute", "merge", "sort"
+	};
+
+	private static final Map<Method, Boolean> WRITES = new ConcurrentHashMap<Method, Boolean>();
+
+	private Access() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Checks whether the given method modifies the object it is invoked on.
+	 * @param method the method, must not be <code>null</code>
+	 * @return <code>true</code> for writing methods.
+	 */
+	static boolean isWrite(final Method method) {
+		Boolean result = WRITES.get(method);
+		if (result == null) {
+			result = Boolean.valueOf(startsWithWritePrefix(method.getName()));
+			WRITES.put(method, result);
+		}
+		return result.booleanValue();
+	}
+
+	private static boolean startsWithWritePrefix(final String name) {
+		for (String prefix : WRITE_PREFIXES) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,346 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+
+/**
+ * A handler which records which code locations access a monitored object
+ * from which threads, without waiting for an exception to happen. For each
+ * invocation only the immediate caller of the proxy is resolved; the handler
+ * keeps a matrix of (call site, thread group, read/write) to the number of
+ * invocations. Call sites are interned, so once all call sites and threads
+ * are known the matrix does not grow any more. Resolving the caller still
+ * walks the stack with a {@link StackWalker}, which allocates a few short-lived
+ * objects per invocation (the stream and the frames walked); virtual threads
+ * are also described anew per invocation, as their carrier changes.
+ * <p>The report lists the call sites and threads of monitored objects that
+ * were touched by more than one thread. It can be obtained on demand
+ * ({@link #report()}, {@link #reportAll()}) or written to a logger when the
+ * JVM shuts down ({@link #reportOnShutdown(Logger)}). In case of an exception
+ * the report of the object is logged as well.
+ * <p>Threads are grouped by type and name, with digits at the end of the name
+ * replaced by an asterisk (e.g. <code>platform pool-1-thread-*</code>).
+ * Methods are classified as writing by their name (e.g. <code>add</code>,
+ * <code>put</code>, <code>remove</code>). This handler is written to be
+ * used <i>per monitored instance</i>.
+ */
+public class AccessMatrixHandler implements ExceptionHandler, ArgumentsAware {
+
+	private static final long NO_THREAD = Long.MIN_VALUE;
+	private static final CallSite UNKNOWN = new CallSite("<unknown>", "<unknown>", null, -1, -1);
+
+	private static final ConcurrentMap<String, CallSite[]> CALL_SITES = new ConcurrentHashMap<String, CallSite[]>();
+	private static final Queue<WeakReference<AccessMatrixHandler>> HANDLERS = new ConcurrentLinkedQueue<WeakReference<AccessMatrixHandler>>();
+	private static final AtomicInteger REGISTRATIONS = new AtomicInteger();
+	/** the group of a platform thread, which does not change */
+	private static final ThreadLocal<String> THREAD_GROUP = new ThreadLocal<String>() {
+		@Override
+		protected String initialValue() {
+			final Thread thread = Thread.currentThread();
+			return Threads.group(thread, thread.toString());
+		}
+	};
+
+	protected final Logger logger;
+	protected final ConcurrentMap<CallSite, ConcurrentMap<String, Counts>> matrix;
+	protected final AtomicLong firstThread;
+	protected volatile boolean shared;
+	protected volatile String targetDescription;
+
+	/**
+	 * Creates the handler using the {@link DefaultLogger}.
+	 */
+	public AccessMatrixHandler() {
+		this(new DefaultLogger());
+	}
+
+	/**
+	 * Creates the handler using the given logger.
+	 * @param aLogger the logger to use in case of an exception, must not be <code>null</code>.
+	 */
+	public AccessMatrixHandler(final Logger aLogger) {
+		logger = aLogger;
+		matrix = new ConcurrentHashMap<CallSite, ConcurrentMap<String, Counts>>();
+		firstThread = new AtomicLong(NO_THREAD);
+		register(this);
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != AccessMatrixHandler.class;
+	}
+
+	/**
+	 * Records the call site and thread of the invocation.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		if (targetDescription == null) {
+			targetDescription = target.getClass().getName()+'@'+Integer.toHexString(System.identityHashCode(target));
+		}
+		final long id = Threads.id(Thread.currentThread());
+		if (!shared && !firstThread.compareAndSet(NO_THREAD, id) && firstThread.get() != id) {
+			shared = true;
+		}
+		final ConcurrentMap<String, Counts> row = row(CallSite.of(Frames.caller()));
+		final String group = group(Thread.currentThread());
+		Counts counts = row.get(group);
+		if (counts == null) {
+			counts = new Counts();
+			final Counts existing = row.putIfAbsent(group, counts);
+			if (existing != null) {
+				counts = existing;
+			}
+		}
+		if (Access.isWrite(method)) {
+			counts.writes.increment();
+		} else {
+			counts.reads.increment();
+		}
+	}
+
+	/**
+	 * Does nothing.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		// does nothing
+	}
+
+	/**
+	 * Logs the exception and the accesses to the monitored object.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		final StringBuilder sb = new StringBuilder(1024);
+		sb.append("exception occurred:\n").append(Thread.currentThread()).append(" - ").append(throwable).append('\n');
+		appendMatrix(sb);
+		logger.log(sb.toString());
+	}
+
+	/**
+	 * Checks whether the monitored object was accessed by more than one thread.
+	 * @return <code>true</code> if the object was accessed by more than one thread.
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the call sites and threads which accessed the monitored object
+	 * if it was accessed by more than one thread.
+	 * @return the report, empty if the object was not shared between threads.
+	 */
+	public String report() {
+		final StringBuilder sb = new StringBuilder(512);
+		if (shared) {
+			sb.append("monitored ").append(targetDescription).append(" was touched by more than one thread:\n");
+			appendMatrix(sb);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the reports of all monitored objects which were accessed
+	 * by more than one thread.
+	 * @return the report, empty if no object was shared between threads.
+	 */
+	public static String reportAll() {
+		final StringBuilder sb = new StringBuilder(1024);
+		for (Iterator<WeakReference<AccessMatrixHandler>> i = HANDLERS.iterator(); i.hasNext(); ) {
+			final AccessMatrixHandler handler = i.next().get();
+			if (handler == null) {
+				i.remove();
+			} else {
+				sb.append(handler.report());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the reports of all shared monitored objects to the given
+	 * logger when the JVM shuts down.
+	 * @param aLogger the logger to write to, must not be <code>null</code>.
+	 */
+	public static void reportOnShutdown(final Logger aLogger) {
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final String report = reportAll();
+				if (report.length() > 0) {
+					aLogger.log(report);
+				}
+			}
+		}, "kongcurrent-access-report"));
+	}
+
+	protected void appendMatrix(final StringBuilder sb) {
+		for (Map.Entry<CallSite, ConcurrentMap<String, Counts>> site : matrix.entrySet()) {
+			sb.append("\tat ").append(site.getKey()).append('\n');
+			for (Map.Entry<String, Counts> group : site.getValue().entrySet()) {
+				final Counts counts = group.getValue();
+				sb.append("\t\t").append(group.getKey()).append(": ")
+				  .append(counts.reads.sum()).append(" reads, ")
+				  .append(counts.writes.sum()).append(" writes\n");
+			}
+		}
+	}
+
+	/**
+	 * Returns the group of the given thread. The group of a virtual thread
+	 * is not cached, it depends on the carrier the thread is mounted on.
+	 * @param thread the current thread, must not be <code>null</code>
+	 * @return the key of the group of the thread, never <code>null</code>.
+	 */
+	protected String group(final Thread thread) {
+		return Threads.isVirtual(thread) ? Threads.group(thread, thread.toString()) : THREAD_GROUP.get();
+	}
+
+	protected ConcurrentMap<String, Counts> row(final CallSite site) {
+		ConcurrentMap<String, Counts> result = matrix.get(site);
+		if (result == null) {
+			result = new ConcurrentHashMap<String, Counts>();
+			final ConcurrentMap<String, Counts> existing = matrix.putIfAbsent(site, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	private static void register(final AccessMatrixHandler handler) {
+		HANDLERS.add(new WeakReference<AccessMatrixHandler>(handler));
+		if ((REGISTRATIONS.incrementAndGet() & 63) == 0) {
+			// occasionally drop the references to collected handlers
+			for (Iterator<WeakReference<AccessMatrixHandler>> i = HANDLERS.iterator(); i.hasNext(); ) {
+				if (i.next().get() == null) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The number of reading and writing invocations.
+	 */
+	protected static class Counts {
+		protected final LongAdder reads = new LongAdder();
+		protected final LongAdder writes = new LongAdder();
+	}
+
+	/**
+	 * A code location calling a monitored object. Call sites are interned,
+	 * i.e. there is exactly one instance per location.
+	 */
+	public static final class CallSite {
+
+		private final String className;
+		private final String methodName;
+		private final String fileName;
+		private final int lineNumber;
+		private final int byteCodeIndex;
+
+		private CallSite(final String aClassName, final String aMethodName, final String aFileName, final int line, final int bci) {
+			className = aClassName;
+			methodName = aMethodName;
+			fileName = aFileName;
+			lineNumber = line;
+			byteCodeIndex = bci;
+		}
+
+		/**
+		 * Returns the interned call site for the given frame.
+		 * @param frame the frame, may be <code>null</code>
+		 * @return the call site, never <code>null</code>
+		 */
+		static CallSite of(final StackWalker.StackFrame frame) {
+			if (frame == null) {
+				return UNKNOWN;
+			}
+			final String clz = frame.getClassName();
+			final String method = frame.getMethodName();
+			final int bci = frame.getByteCodeIndex();
+			CallSite[] sites = CALL_SITES.get(clz);
+			CallSite result = find(sites, method, bci);
+			while (result == null) {
+				// copy-on-write, sites of a class are few
+				final CallSite site = new CallSite(clz, method, frame.getFileName(), frame.getLineNumber(), bci);
+				final CallSite[] extended;
+				if (sites == null) {
+					extended = new CallSite[] { site };
+					sites = CALL_SITES.putIfAbsent(clz, extended);
+					if (sites == null) {
+						result = site;
+					}
+				} else {
+					extended = new CallSite[sites.length+1];
+					System.arraycopy(sites, 0, extended, 0, sites.length);
+					extended[sites.length] = site;
+					if (CALL_SITES.replace(clz, sites, extended)) {
+						result = site;
+					} else {
+						sites = CALL_SITES.get(clz);
+					}
+				}
+				if (result == null) {
+					result = find(sites, method, bci);
+				}
+			}
+			return result;
+		}
+
+		private static CallSite find(final CallSite[] sites, final String method, final int bci) {
+			if (sites != null) {
+				for (CallSite site : sites) {
+					if (site.byteCodeIndex == bci && site.methodName.equals(method)) {
+						return site;
+					}
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(96);
+			sb.append(className).append('.').append(methodName).append('(');
+			if (fileName == null) {
+				sb.append("Unknown Source");
+			} else {
+				sb.append(fileName);
+				if (lineNumber >= 0) {
+					sb.append(':').append(lineNumber);
+				}
+			}
+			return sb.append(')').toString();
+		}
+
+	}
+
+}
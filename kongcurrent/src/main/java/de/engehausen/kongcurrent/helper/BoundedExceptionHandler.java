@@ -0,0 +1,304 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ContextCapture;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+
+/**
+ * A handler implementation for tracking invocations to a monitored
+ * object from very many threads, e.g. virtual threads. Callers are recorded
+ * by thread identifier in a table of fixed size without using any monitors;
+ * if two threads map to the same slot, the more recent caller wins. Memory
+ * use is thus bounded regardless of the number of threads touching the object,
+ * and calling threads (virtual or not) are never blocked.
+ * <p>In case of an exception the callers are reported grouped by thread type
+ * (virtual or platform) and pool; within a group callers with the same
+ * stack trace are reported once, together with the number of threads.
+ * The identifier and the name of the thread are recorded with each call; for
+ * virtual threads, the carrier thread at the time of the call is recorded as well.
+ * No reference to the thread is kept.
+ * <p>Optionally a {@link ContextCapture} can be given, which records e.g.
+ * a request identifier with each invocation; the stack traces can then
+ * be switched off to make recording an invocation considerably cheaper.
+ * <br>This handler is written to be used <i>per monitored instance</i>.
+ */
+public class BoundedExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int DEFAULT_SAMPLES = 3;
+
+	protected final Logger logger;
+	protected final AtomicReferenceArray<Caller> callers;
+	protected final int mask;
+	protected final int samples;
+	protected final ContextCapture contextCapture;
+	protected final boolean captureStacks;
+
+	/**
+	 * Creates the exception handler using the {@link DefaultLogger}.
+	 */
+	public BoundedExceptionHandler() {
+		this(new DefaultLogger());
+	}
+
+	/**
+	 * Creates the exception handler using the given logger, tracking
+	 * up to 1024 callers and reporting up to three different stacks per group.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 */
+	public BoundedExceptionHandler(final Logger aLogger) {
+		this(aLogger, DEFAULT_CAPACITY, DEFAULT_SAMPLES);
+	}
+
+	/**
+	 * Creates the exception handler.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 * @param capacity the maximum number of callers to track; rounded up to the next power of two.
+	 * @param maxStacks the maximum number of different stacks to report per group of threads.
+	 */
+	public BoundedExceptionHandler(final Logger aLogger, final int capacity, final int maxStacks) {
+		this(aLogger, capacity, maxStacks, null, true);
+	}
+
+	/**
+	 * Creates the exception handler, recording the context of each invocation.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 * @param capacity the maximum number of callers to track; rounded up to the next power of two.
+	 * @param maxStacks the maximum number of different stacks to report per group of threads.
+	 * @param aContextCapture the context capture to use, may be <code>null</code>.
+	 * @param stacks <code>true</code> to record the stack trace of each invocation,
+	 * <code>false</code> to only record the context; ignored (i.e. stacks are recorded)
+	 * if no context capture is given.
+	 */
+	public BoundedExceptionHandler(final Logger aLogger, final int capacity, final int maxStacks, final ContextCapture aContextCapture, final boolean stacks) {
+		logger = aLogger;
+		contextCapture = aContextCapture;
+		captureStacks = stacks || aContextCapture == null;
+		final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		callers = new AtomicReferenceArray<Caller>(size);
+		mask = size - 1;
+		samples = maxStacks;
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != BoundedExceptionHandler.class;
+	}
+
+	/**
+	 * Records the current thread and the calling stack
+	 * for analysis if {@link #handle(Throwable, Object, Method, Object[])} is called.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		final Thread currentThread = Thread.currentThread();
+		callers.set(slot(Threads.id(currentThread)), new Caller(currentThread,
+			contextCapture == null ? null : contextCapture.capture(),
+			captureStacks ? new Exception("caller...") : null));
+	}
+
+	/**
+	 * Does nothing.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		// does nothing; as with the default handler the caller is kept to show it was "recently" invoked
+	}
+
+	/**
+	 * Handles an exception which occurred while executing a method
+	 * of the monitored object.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		final StringWriter sw = new StringWriter(4096);
+		final PrintWriter pw = new PrintWriter(sw);
+		sw.write("exception occurred");
+		if (contextCapture != null) {
+			sw.append(" in context ").append(String.valueOf(contextCapture.capture()));
+		}
+		sw.write(":\n");
+		final Thread currentThread = Thread.currentThread();
+		pw.append(currentThread.toString()).append(" (").append(Threads.kind(currentThread)).append(") - ");
+		throwable.printStackTrace(pw);
+		final Map<String, List<Caller>> groups = group(recentCallers());
+		int total = 0;
+		for (List<Caller> list : groups.values()) {
+			total += list.size();
+		}
+		sw.append("\nthe following threads were recently operating on the object (")
+		  .append(Integer.toString(total)).append(" threads in ")
+		  .append(Integer.toString(groups.size())).append(" groups):\n");
+		for (Map.Entry<String, List<Caller>> entry : groups.entrySet()) {
+			showGroup(pw, entry.getKey(), entry.getValue());
+		}
+		pw.flush();
+		logger.log(sw.toString());
+	}
+
+	/**
+	 * Returns the currently recorded callers.
+	 * @return the currently recorded callers, never <code>null</code>.
+	 */
+	protected List<Caller> recentCallers() {
+		final List<Caller> result = new ArrayList<Caller>();
+		for (int i = callers.length(); i-->0; ) {
+			final Caller caller = callers.get(i);
+			if (caller != null) {
+				result.add(caller);
+			}
+		}
+		return result;
+	}
+
+	protected Map<String, List<Caller>> group(final List<Caller> list) {
+		final Map<String, List<Caller>> result = new LinkedHashMap<String, List<Caller>>();
+		for (Caller caller : list) {
+			final String group = caller.group();
+			List<Caller> members = result.get(group);
+			if (members == null) {
+				members = new ArrayList<Caller>();
+				result.put(group, members);
+			}
+			members.add(caller);
+		}
+		return result;
+	}
+
+	protected void showGroup(final PrintWriter pw, final String group, final List<Caller> members) {
+		pw.append(group).append(" (").append(Integer.toString(members.size())).append(" threads):\n");
+		// identical stacks (in the same context) are shown once
+		final Map<List<Object>, List<Caller>> byStack = new LinkedHashMap<List<Object>, List<Caller>>();
+		for (Caller caller : members) {
+			final List<Object> key = Arrays.<Object>asList(caller.context, Arrays.asList(caller.stack()));
+			List<Caller> same = byStack.get(key);
+			if (same == null) {
+				same = new ArrayList<Caller>();
+				byStack.put(key, same);
+			}
+			same.add(caller);
+		}
+		int shown = 0;
+		for (List<Caller> same : byStack.values()) {
+			if (shown++ == samples) {
+				pw.append("\t... and ").append(Integer.toString(byStack.size() - samples)).append(" more different stacks or contexts\n");
+				break;
+			}
+			final Caller first = same.get(0);
+			pw.append(first.description());
+			if (same.size() > 1) {
+				pw.append(" and ").append(Integer.toString(same.size() - 1)).append(" more");
+			}
+			pw.append(" - ");
+			first.printStack(pw);
+		}
+	}
+
+	protected int slot(final long id) {
+		// spread the (usually sequential) identifiers
+		final long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Information on a caller.
+	 */
+	protected static class Caller {
+
+		protected final long id;
+		protected final String name;
+		/** the string representation of a virtual thread, including its carrier; <code>null</code> for platform threads */
+		protected final String virtual;
+		protected final Object context;
+		protected final Exception exception;
+		private volatile StackTraceElement[] stack;
+
+		protected Caller(final Thread thread, final Object aContext, final Exception caller) {
+			id = Threads.id(thread);
+			name = thread.getName();
+			// only a virtual thread is described right away, its carrier changes
+			virtual = Threads.isVirtual(thread) ? thread.toString() : null;
+			context = aContext;
+			exception = caller;
+		}
+
+		/**
+		 * Returns the description of the thread at the time of the call.
+		 * @return the description of the thread.
+		 */
+		protected String description() {
+			return virtual == null ? "Thread[#"+id+","+name+"]" : virtual;
+		}
+
+		/**
+		 * Returns the key of the group of the thread at the time of the call.
+		 * @return the key of the group of the thread.
+		 */
+		protected String group() {
+			return Threads.group(virtual != null, name, virtual == null ? null : Threads.carrier(virtual));
+		}
+
+		/**
+		 * Returns the stack of the caller, without the frames of the handler
+		 * and the monitor.
+		 * @return the stack of the caller.
+		 */
+		protected StackTraceElement[] stack() {
+			StackTraceElement[] result = stack;
+			if (result == null) {
+				final StackTraceElement[] elements = exception == null ? new StackTraceElement[0] : exception.getStackTrace();
+				final int max = elements.length - 2;
+				if (max > 0) {
+					result = new StackTraceElement[max];
+					System.arraycopy(elements, 2, result, 0, max);
+				} else {
+					result = elements;
+				}
+				stack = result;
+			}
+			return result;
+		}
+
+		protected void printStack(final PrintWriter pw) {
+			if (context != null || exception == null) {
+				pw.append("context ").append(String.valueOf(context));
+				if (exception == null) {
+					pw.println();
+				} else {
+					pw.append(" - ");
+				}
+			}
+			if (exception != null) {
+				pw.println(exception);
+				for (StackTraceElement element : stack()) {
+					pw.append("\tat ").println(element);
+				}
+			}
+		}
+
+	}
+
+}
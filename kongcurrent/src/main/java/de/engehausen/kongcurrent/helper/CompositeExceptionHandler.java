@@ -0,0 +1,114 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.reflect.Method;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Monitor;
+
+/**
+ * A handler notifying several handlers. The handlers are invoked in the
+ * given order before the method invocation and in reverse order after it.
+ * The monitor uses this handler when an already monitored object is
+ * monitored again with another handler.
+ */
+public class CompositeExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	protected final ExceptionHandler[] handlers;
+
+	/**
+	 * Creates the handler.
+	 * @param someHandlers the handlers to notify, must not be <code>null</code>.
+	 */
+	public CompositeExceptionHandler(final ExceptionHandler... someHandlers) {
+		handlers = someHandlers.clone();
+	}
+
+	/**
+	 * Combines the given handlers. Composite handlers are flattened and
+	 * a handler contained in both is only notified once.
+	 * @param first the first handler, must not be <code>null</code>.
+	 * @param second the second handler, must not be <code>null</code>.
+	 * @return a handler notifying both handlers, never <code>null</code>.
+	 */
+	public static ExceptionHandler combine(final ExceptionHandler first, final ExceptionHandler second) {
+		final ExceptionHandler[] firsts = flatten(first);
+		final ExceptionHandler[] seconds = flatten(second);
+		final ExceptionHandler[] result = new ExceptionHandler[firsts.length + seconds.length];
+		System.arraycopy(firsts, 0, result, 0, firsts.length);
+		int size = firsts.length;
+		outer: for (ExceptionHandler candidate : seconds) {
+			for (int i = 0; i < size; i++) {
+				if (result[i] == candidate) {
+					continue outer;
+				}
+			}
+			result[size++] = candidate;
+		}
+		if (size == 1) {
+			return result[0];
+		}
+		final ExceptionHandler[] handlers = new ExceptionHandler[size];
+		System.arraycopy(result, 0, handlers, 0, size);
+		return new CompositeExceptionHandler(handlers);
+	}
+
+	private static ExceptionHandler[] flatten(final ExceptionHandler handler) {
+		if (handler instanceof CompositeExceptionHandler) {
+			return ((CompositeExceptionHandler) handler).handlers;
+		} else {
+			return new ExceptionHandler[] { handler };
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if one of the handlers needs the arguments.
+	 * @return <code>true</code> if one of the handlers needs the arguments.
+	 */
+	public boolean needsArguments() {
+		for (int i = 0; i < handlers.length; i++) {
+			if (Monitor.needsArguments(handlers[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Notifies all handlers in order.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		for (int i = 0; i < handlers.length; i++) {
+			handlers[i].preInvoke(target, method, args);
+		}
+	}
+
+	/**
+	 * Notifies all handlers in reverse order.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		for (int i = handlers.length; i-->0; ) {
+			handlers[i].postInvoke(target, method, args);
+		}
+	}
+
+	/**
+	 * Notifies all handlers in order.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		for (int i = 0; i < handlers.length; i++) {
+			handlers[i].handle(throwable, target, method, args);
+		}
+	}
+
+}
@@ -0,0 +1,441 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A concurrent map with weakly held keys which are compared by identity.
+ * An entry disappears once its key is garbage collected; the values are
+ * held strongly and must not reference their key.
+ * <p>The map is divided into segments, each guarded by its own lock for
+ * modifications; lookups do not lock. Entries of collected keys are removed
+ * by the writing operations of a segment, using a reference queue, so there
+ * is no cleanup thread and no cost for lookups.
+ * <p>Like the <code>IdentityHashMap</code> this map intentionally violates the
+ * general contract of {@link Map}, which mandates the use of <code>equals</code>
+ * when comparing keys. It does not permit <code>null</code> keys or values, and
+ * its size is only an estimate, as it may include entries of collected keys which
+ * have not been removed yet. The {@link #entrySet() entry set} iterates over a
+ * snapshot of the entries (see {@link #entries()}).
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ConcurrentWeakIdentityMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int DEFAULT_CONCURRENCY = 16;
+	private static final int INITIAL_SEGMENT_CAPACITY = 4;
+
+	private final Segment<K, V>[] segments;
+	private final int segmentShift;
+
+	/**
+	 * Creates the map for about 16 concurrently writing threads.
+	 */
+	public ConcurrentWeakIdentityMap() {
+		this(DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * Creates the map.
+	 * @param concurrencyLevel the estimated number of concurrently writing threads;
+	 * rounded up to the next power of two.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentWeakIdentityMap(final int concurrencyLevel) {
+		final int size = Integer.highestOneBit(Math.max(1, concurrencyLevel - 1)) << 1;
+		segmentShift = 32 - Integer.numberOfTrailingZeros(size);
+		segments = new Segment[size];
+		for (int i = size; i-->0; ) {
+			segments[i] = new Segment<K, V>();
+		}
+	}
+
+	/**
+	 * Returns the value for the given key.
+	 * @param key the key, may be <code>null</code>
+	 * @return the value, or <code>null</code> if the key is not contained.
+	 */
+	public V get(final Object key) {
+		if (key == null) {
+			return null;
+		}
+		final int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * Checks whether the map contains the given key.
+	 * @param key the key, may be <code>null</code>
+	 * @return <code>true</code> if the key is contained.
+	 */
+	public boolean containsKey(final Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associates the value with the given key.
+	 * @param key the key, must not be <code>null</code>
+	 * @param value the value, must not be <code>null</code>
+	 * @return the previous value, or <code>null</code> if the key was not contained.
+	 */
+	public V put(final K key, final V value) {
+		checkNotNull(key, value);
+		final int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	/**
+	 * Associates the value with the given key if the key is not contained yet.
+	 * @param key the key, must not be <code>null</code>
+	 * @param value the value, must not be <code>null</code>
+	 * @return the current value, or <code>null</code> if the key was not contained
+	 * (and is now associated with the given value).
+	 */
+	public V putIfAbsent(final K key, final V value) {
+		checkNotNull(key, value);
+		final int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	/**
+	 * Replaces the value of the given key if it is the given value.
+	 * @param key the key, must not be <code>null</code>
+	 * @param oldValue the expected value, must not be <code>null</code>
+	 * @param newValue the new value, must not be <code>null</code>
+	 * @return <code>true</code> if the value was replaced.
+	 */
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		checkNotNull(key, newValue);
+		checkNotNull(key, oldValue);
+		final int hash = hash(key);
+		return segmentFor(hash).replace(key, hash, oldValue, newValue);
+	}
+
+	/**
+	 * Removes the given key.
+	 * @param key the key, may be <code>null</code>
+	 * @return the previous value, or <code>null</code> if the key was not contained.
+	 */
+	public V remove(final Object key) {
+		if (key == null) {
+			return null;
+		}
+		final int hash = hash(key);
+		return segmentFor(hash).remove(key, hash);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Returns the estimated number of entries.
+	 * @return the number of entries, including entries of collected keys
+	 * which have not been removed yet.
+	 */
+	public int size() {
+		long result = 0;
+		for (Segment<K, V> segment : segments) {
+			result += segment.count;
+		}
+		return (int) Math.min(Integer.MAX_VALUE, result);
+	}
+
+	/**
+	 * Checks whether the map is empty.
+	 * @return <code>true</code> if the map is empty.
+	 */
+	public boolean isEmpty() {
+		for (Segment<K, V> segment : segments) {
+			if (segment.count != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a snapshot of the entries of keys which are still reachable.
+	 * The returned entries hold their keys strongly and are not backed by the map.
+	 * @return the entries, never <code>null</code>.
+	 */
+	public List<Map.Entry<K, V>> entries() {
+		final List<Map.Entry<K, V>> result = new ArrayList<Map.Entry<K, V>>();
+		for (Segment<K, V> segment : segments) {
+			segment.collect(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a view of the entries. Its iterator works on a snapshot of the
+	 * entries of keys which are still reachable; removing through the iterator
+	 * removes the key from the map, setting a value is not supported.
+	 * @return the entries, never <code>null</code>.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				final Iterator<Map.Entry<K, V>> snapshot = entries().iterator();
+				return new Iterator<Map.Entry<K, V>>() {
+					private Map.Entry<K, V> current;
+					@Override
+					public boolean hasNext() {
+						return snapshot.hasNext();
+					}
+					@Override
+					public Map.Entry<K, V> next() {
+						current = snapshot.next();
+						return current;
+					}
+					@Override
+					public void remove() {
+						if (current == null) {
+							throw new IllegalStateException();
+						}
+						ConcurrentWeakIdentityMap.this.remove(current.getKey());
+						current = null;
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return ConcurrentWeakIdentityMap.this.size();
+			}
+			@Override
+			public void clear() {
+				ConcurrentWeakIdentityMap.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Removes the entries of collected keys now. This is done
+	 * implicitly by all modifying operations.
+	 */
+	public void expunge() {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.expunge(true);
+			}
+		}
+	}
+
+	private Segment<K, V> segmentFor(final int hash) {
+		return segments[segmentShift == 32 ? 0 : hash >>> segmentShift];
+	}
+
+	private static int hash(final Object key) {
+		// spread the identity hash codes, the upper bits select the segment
+		final int h = System.identityHashCode(key) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static void checkNotNull(final Object key, final Object value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+	}
+
+	/**
+	 * An entry, holding its key weakly. Entries are immutable except
+	 * for the value, so chains can be traversed without locking.
+	 */
+	private static final class Entry<K, V> extends WeakReference<K> {
+
+		final int hash;
+		final Entry<K, V> next;
+		volatile V value;
+
+		Entry(final K key, final int aHash, final Entry<K, V> aNext, final V aValue, final ReferenceQueue<K> queue) {
+			super(key, queue);
+			hash = aHash;
+			next = aNext;
+			value = aValue;
+		}
+
+	}
+
+	/**
+	 * A part of the map with its own lock.
+	 */
+	private static final class Segment<K, V> {
+
+		final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+		volatile Entry<K, V>[] table;
+		/** written last by all modifications, read first by lookups */
+		volatile int count;
+
+		@SuppressWarnings("unchecked")
+		Segment() {
+			table = new Entry[INITIAL_SEGMENT_CAPACITY];
+		}
+
+		V get(final Object key, final int hash) {
+			if (count != 0) {
+				final Entry<K, V>[] tab = table;
+				for (Entry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+					if (e.hash == hash && e.get() == key) {
+						return e.value;
+					}
+				}
+			}
+			return null;
+		}
+
+		synchronized V put(final K key, final int hash, final V value, final boolean onlyIfAbsent) {
+			expunge(false);
+			Entry<K, V>[] tab = table;
+			for (Entry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+				if (e.hash == hash && e.get() == key) {
+					final V previous = e.value;
+					if (!onlyIfAbsent) {
+						e.value = value;
+					}
+					return previous;
+				}
+			}
+			int c = count + 1;
+			if (c > tab.length - (tab.length >>> 2)) {
+				tab = rehash(tab);
+				c = count + 1;
+			}
+			final int idx = hash & (tab.length - 1);
+			tab[idx] = new Entry<K, V>(key, hash, tab[idx], value, queue);
+			count = c;
+			return null;
+		}
+
+		synchronized boolean replace(final K key, final int hash, final V oldValue, final V newValue) {
+			final Entry<K, V>[] tab = table;
+			for (Entry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+				if (e.hash == hash && e.get() == key) {
+					if (oldValue.equals(e.value)) {
+						e.value = newValue;
+						return true;
+					}
+					return false;
+				}
+			}
+			return false;
+		}
+
+		synchronized V remove(final Object key, final int hash) {
+			expunge(false);
+			final Entry<K, V>[] tab = table;
+			final int idx = hash & (tab.length - 1);
+			for (Entry<K, V> e = tab[idx]; e != null; e = e.next) {
+				if (e.hash == hash && e.get() == key) {
+					final V previous = e.value;
+					unlink(tab, idx, e);
+					return previous;
+				}
+			}
+			return null;
+		}
+
+		synchronized void clear() {
+			if (count != 0) {
+				final Entry<K, V>[] tab = table;
+				for (int i = tab.length; i-->0; ) {
+					tab[i] = null;
+				}
+				count = 0;
+			}
+			while (queue.poll() != null) { //NOPMD
+				// drain
+			}
+		}
+
+		void collect(final List<Map.Entry<K, V>> result) {
+			if (count != 0) {
+				final Entry<K, V>[] tab = table;
+				for (int i = tab.length; i-->0; ) {
+					for (Entry<K, V> e = tab[i]; e != null; e = e.next) {
+						final K key = e.get();
+						if (key != null) {
+							result.add(new AbstractMap.SimpleImmutableEntry<K, V>(key, e.value));
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Removes the entries of collected keys; must be called holding the lock.
+		 * @param all <code>false</code> to limit the work done by a single write
+		 */
+		void expunge(final boolean all) {
+			int budget = all ? Integer.MAX_VALUE : 64;
+			for (Reference<? extends K> ref = queue.poll(); ref != null; ref = budget-->0 ? queue.poll() : null) {
+				@SuppressWarnings("unchecked")
+				final Entry<K, V> stale = (Entry<K, V>) ref;
+				final Entry<K, V>[] tab = table;
+				final int idx = stale.hash & (tab.length - 1);
+				for (Entry<K, V> e = tab[idx]; e != null; e = e.next) {
+					if (e == stale) {
+						unlink(tab, idx, e);
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Removes the entry from its chain; the entries in front of it are
+		 * copied, since the chain may be traversed concurrently.
+		 */
+		private void unlink(final Entry<K, V>[] tab, final int idx, final Entry<K, V> entry) {
+			int c = count - 1;
+			Entry<K, V> head = entry.next;
+			for (Entry<K, V> e = tab[idx]; e != entry; e = e.next) {
+				final K key = e.get();
+				if (key == null) {
+					c--; // collected as well, drop it
+				} else {
+					head = new Entry<K, V>(key, e.hash, head, e.value, queue);
+				}
+			}
+			tab[idx] = head;
+			count = c;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Entry<K, V>[] rehash(final Entry<K, V>[] tab) {
+			final Entry<K, V>[] result = new Entry[tab.length << 1];
+			final int mask = result.length - 1;
+			int c = 0;
+			for (int i = tab.length; i-->0; ) {
+				for (Entry<K, V> e = tab[i]; e != null; e = e.next) {
+					final K key = e.get();
+					if (key != null) {
+						final int idx = e.hash & mask;
+						result[idx] = new Entry<K, V>(key, e.hash, result[idx], e.value, queue);
+						c++;
+					}
+				}
+			}
+			table = result;
+			count = c;
+			return result;
+		}
+
+	}
+
+}
@@ -1,10 +1,14 @@
 package de.engehausen.kongcurrent.helper;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
 import java.util.Set;
 
 import de.engehausen.kongcurrent.Comparator;
+import de.engehausen.kongcurrent.Monitor;
 
 /**
  * A collection of default comparator implementations. The following
@@ -18,8 +22,13 @@ import de.engehausen.kongcurrent.Comparator;
  * defined for <a href="http://download.oracle.com/javase/6/docs/api/java/util/Set.html#equals%28java.lang.Object%29">Sets</a>
  * <li>{@link #mapComparator()} - a comparator that follows the rules
  * defined for <a href="http://download.oracle.com/javase/6/docs/api/java/util/Map.html#equals%28java.lang.Object%29">Maps</a>
+ * <li>{@link #queueComparator()} - a comparator that follows the rules of the
+ * JDK queues and deques, i.e. identity
  * </ul>
  * Custom comparators can be used by implementing {@link Comparator}.
+ * <p>The list, set and map comparators compare the original objects of
+ * monitored objects (see {@link Monitor#unwrap(Object)}), so comparing two
+ * monitored collections does not cause a monitored invocation per element.
  */
 public final class DefaultComparators {
 
@@ -33,6 +42,8 @@ public final class DefaultComparators {
 	private static final Comparator setComparatorInst = new SetComparator();
 	@SuppressWarnings(UNCHECKED)
 	private static final Comparator mapComparatorInst = new MapComparator();
+	@SuppressWarnings(UNCHECKED)
+	private static final Comparator queueComparatorInst = new QueueComparator();
 
 	private DefaultComparators() {
 		// not to be instantiated
@@ -83,6 +94,19 @@ public final class DefaultComparators {
 		return (Comparator<Map<K, V>>) mapComparatorInst;
 	}
 
+	/**
+	 * Returns a comparator instance which uses the rules of the queues
+	 * and deques of the JDK (e.g. <code>ArrayDeque</code> or <code>PriorityQueue</code>),
+	 * which do not override {@link Object#equals(Object)}: a queue only equals
+	 * itself, whether monitored or not.
+	 * @param <E> the type the comparator will use
+	 * @return a comparator instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <E> Comparator<Queue<E>> queueComparator() {
+		return queueComparatorInst;
+	}
+
 	private static class ObjectComparator implements Comparator<Object> {
 		@Override
 		public boolean equals(final Object one, final Object two) {
@@ -92,21 +116,30 @@ public final class DefaultComparators {
 	
 	private static class ListComparator<E> implements Comparator<List<E>> {
 		@Override
-		public boolean equals(final List<E> list1, final List<E> list2) {
-			if (list2 == null) {
+		public boolean equals(final List<E> one, final List<E> two) {
+			if (two == null) {
 				return false;
 			} else {
+				final List<E> list1 = Monitor.unwrap(one);
+				final List<E> list2 = Monitor.unwrap(two);
 				final int size = list1.size();
 				if (size == list2.size()) {
-					for (int i = size; i-->0; ) {
-						final E item = list1.get(i);
-						if (item == null) {
-							if (list2.get(i) != null) {
+					if (list1 instanceof RandomAccess && list2 instanceof RandomAccess) {
+						for (int i = size; i-->0; ) {
+							if (!same(list1.get(i), list2.get(i))) {
 								return false;
 							}
-						} else if (!item.equals(list2.get(i))) {
-							return false;
 						}
+					} else {
+						// indexed access is linear for sequential lists
+						final Iterator<E> i1 = list1.iterator();
+						final Iterator<E> i2 = list2.iterator();
+						while (i1.hasNext() && i2.hasNext()) {
+							if (!same(i1.next(), i2.next())) {
+								return false;
+							}
+						}
+						return !(i1.hasNext() || i2.hasNext());
 					}
 					return true;
 				} else {
@@ -114,14 +147,20 @@ public final class DefaultComparators {
 				}
 			}
 		}
+
+		private static boolean same(final Object item1, final Object item2) {
+			return item1 == null ? item2 == null : item1.equals(item2);
+		}
 	}
 
 	private static class SetComparator<E> implements Comparator<Set<E>> {
 		@Override
-		public boolean equals(final Set<E> set1, final Set<E> set2) {
-			if (set2 == null) {
+		public boolean equals(final Set<E> one, final Set<E> two) {
+			if (two == null) {
 				return false;
 			} else {
+				final Set<E> set1 = Monitor.unwrap(one);
+				final Set<E> set2 = Monitor.unwrap(two);
 				if (set1.size() == set2.size()) {
 					return set1.containsAll(set2);
 				} else {
@@ -131,12 +170,21 @@ public final class DefaultComparators {
 		}		
 	}
 	
+	private static class QueueComparator<E> implements Comparator<Queue<E>> {
+		@Override
+		public boolean equals(final Queue<E> one, final Queue<E> two) {
+			return two != null && Monitor.unwrap(one) == Monitor.unwrap(two); //NOPMD identity is intended
+		}
+	}
+
 	private static class MapComparator<K, V> implements Comparator<Map<K, V>> {
 		@Override
-		public boolean equals(final Map<K, V> map1, final Map<K, V> map2) {
-			if (map2 == null) {
+		public boolean equals(final Map<K, V> one, final Map<K, V> two) {
+			if (two == null) {
 				return false;
 			} else {
+				final Map<K, V> map1 = Monitor.unwrap(one);
+				final Map<K, V> map2 = Monitor.unwrap(two);
 				if (map1.size() == map2.size()) {
 					return map1.entrySet().equals(map2.entrySet());
 				} else {
@@ -0,0 +1,55 @@
+package de.engehausen.kongcurrent.helper;
+
+import de.engehausen.kongcurrent.ContextCapture;
+
+/**
+ * A collection of default context capture implementations. The following
+ * captures are supported:
+ * <ul>
+ * <li>{@link #threadLocal(ThreadLocal)} - captures the value of a thread local
+ * <li>{@link #threadName()} - captures the name of the current thread
+ * </ul>
+ * Other sources, e.g. a logging MDC or a <code>ScopedValue</code>, can be
+ * captured by implementing {@link ContextCapture}, for example:
+ * <pre>new ContextCapture() {
+ *    public Object capture() {
+ *        return MDC.get("requestId");
+ *    }
+ *}</pre>
+ */
+public final class DefaultContextCaptures {
+
+	private static final ContextCapture threadNameInst = new ContextCapture() {
+		@Override
+		public Object capture() {
+			return Thread.currentThread().getName();
+		}
+	};
+
+	private DefaultContextCaptures() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns a capture of the value of the given thread local.
+	 * @param threadLocal the thread local holding the context, must not be <code>null</code>
+	 * @return a context capture, never <code>null</code>
+	 */
+	public static ContextCapture threadLocal(final ThreadLocal<?> threadLocal) {
+		return new ContextCapture() {
+			@Override
+			public Object capture() {
+				return threadLocal.get();
+			}
+		};
+	}
+
+	/**
+	 * Returns a capture of the name of the current thread.
+	 * @return a context capture, never <code>null</code>
+	 */
+	public static ContextCapture threadName() {
+		return threadNameInst;
+	}
+
+}
@@ -1,11 +1,26 @@
 package de.engehausen.kongcurrent.helper;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import de.engehausen.kongcurrent.Description;
 import de.engehausen.kongcurrent.Monitor;
@@ -21,22 +36,86 @@ import de.engehausen.kongcurrent.Monitor;
  * <li>{@link #listDescription()} - a description for lists
  * <li>{@link #setDescription()} - a description for sets
  * <li>{@link #mapDescription()} - a description for maps
+ * <li>{@link #queueDescription()} - a description for queues
+ * <li>{@link #dequeDescription()} - a description for deques
+ * <li>{@link #sortedSetDescription()} - a description for sorted sets
+ * <li>{@link #navigableSetDescription()} - a description for navigable sets
+ * <li>{@link #sortedMapDescription()} - a description for sorted maps
+ * <li>{@link #navigableMapDescription()} - a description for navigable maps
+ * <li>{@link #concurrentMapDescription()} - a description for concurrent maps
+ * <li>{@link #spliteratorDescription()} - a description for spliterators
+ * <li>{@link #streamDescription()} - a description for streams
  * </ul>
+ * Bulk operations such as <code>forEach</code>, <code>removeIf</code> or
+ * <code>replaceAll</code> are monitored as a single invocation covering the
+ * whole operation. Spliterators and streams of collections are monitored as
+ * well: the terminal operation of a stream is a single invocation, and each
+ * part of a split spliterator records the (e.g. fork-join worker) threads using it.
+ * <p>For each of the collection descriptions a variant exists which records
+ * only the creation of iterators and spliterators, e.g. {@link #listDescription(boolean)};
+ * scanning a large collection then costs a single recorded invocation.
+ * <p>The modifying methods of the collections and maps are marked as writes,
+ * and their iterators and spliterators as iterating (see {@link Description#setIterating(boolean)}):
+ * a modification by another thread is reported to the exception handler when
+ * an open iterator is used next, even if no <code>ConcurrentModificationException</code>
+ * is thrown.
  * Custom descriptions can be built by instantiating and setting up new
  * instances of {@link Description}.
  */
 public final class DefaultDescriptions {
 	
 	private static final String UNCHECKED = "unchecked";
+	private static final String[] COLLECTION_WRITES = {
+		"add", "addAll", "remove", "removeAll", "retainAll", "removeIf", "clear",
+		"set", "replaceAll", "sort", "addFirst", "addLast", "removeFirst", "removeLast",
+		"offer", "offerFirst", "offerLast", "poll", "pollFirst", "pollLast", "push", "pop",
+		"removeFirstOccurrence", "removeLastOccurrence"
+	};
+	private static final String[] MAP_WRITES = {
+		"put", "putAll", "putIfAbsent", "remove", "replace", "replaceAll", "clear",
+		"compute", "computeIfAbsent", "computeIfPresent", "merge", "pollFirstEntry", "pollLastEntry"
+	};
+	/** views of maps created once by the usual implementations */
+	private static final String[] MAP_VIEWS = {
+		"entrySet", "keySet", "values", "navigableKeySet", "descendingKeySet", "descendingMap"
+	};
 	
 	@SuppressWarnings(UNCHECKED)
-	private static final Description collectionDescInst = buildCollectionDescription();
+	private static final Description spliteratorDescInst = buildSpliteratorDescription(false, true);
 	@SuppressWarnings(UNCHECKED)
-	private static final Description setDescInst = buildSetDescription();
+	private static final Description coarseSpliteratorDescInst = buildSpliteratorDescription(true, true);
 	@SuppressWarnings(UNCHECKED)
-	private static final Description listDescInst = buildListDescription();
+	private static final Description streamDescInst = buildStreamDescriptions();
 	@SuppressWarnings(UNCHECKED)
-	private static final Description mapDescInst = buildMapDescription();
+	private static final Description collectionDescInst = buildCollectionDescription(false);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description coarseCollectionDescInst = buildCollectionDescription(true);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description setDescInst = buildSetDescription(false);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description coarseSetDescInst = buildSetDescription(true);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description listDescInst = buildListDescription(false);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description coarseListDescInst = buildListDescription(true);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description mapDescInst = buildMapDescription(false);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description coarseMapDescInst = buildMapDescription(true);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description queueDescInst = buildQueueDescription(Queue.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description dequeDescInst = buildQueueDescription(Deque.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description sortedSetDescInst = buildSortedSetDescription(SortedSet.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description navigableSetDescInst = buildSortedSetDescription(NavigableSet.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description sortedMapDescInst = buildSortedMapDescription(SortedMap.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description navigableMapDescInst = buildSortedMapDescription(NavigableMap.class);
+	@SuppressWarnings(UNCHECKED)
+	private static final Description concurrentMapDescInst = buildConcurrentMapDescription();
 	
 	private DefaultDescriptions() {
 		// not to be instantiated
@@ -53,6 +132,19 @@ public final class DefaultDescriptions {
 	public static <T> Description<Collection<T>> collectionDescription() {
 		return collectionDescInst;
 	}
+
+	/**
+	 * A description for collections with the given iterator policy.
+	 * @param creationOnly <code>true</code> to only record the creation of iterators
+	 * and spliterators (see {@link Description#setCreationOnly(boolean)}), <code>false</code>
+	 * to record each of their invocations as {@link #collectionDescription()} does.
+	 * @param <T> the type of objects held in the collection
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Collection<T>> collectionDescription(final boolean creationOnly) {
+		return creationOnly ? coarseCollectionDescInst : collectionDescInst;
+	}
 	
 	/**
 	 * A description for sets. The description ensures that
@@ -66,6 +158,19 @@ public final class DefaultDescriptions {
 		return setDescInst;
 	}
 
+	/**
+	 * A description for sets with the given iterator policy.
+	 * @param creationOnly <code>true</code> to only record the creation of iterators
+	 * and spliterators (see {@link Description#setCreationOnly(boolean)}), <code>false</code>
+	 * to record each of their invocations as {@link #setDescription()} does.
+	 * @param <T> the type of objects held in the set
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Set<T>> setDescription(final boolean creationOnly) {
+		return creationOnly ? coarseSetDescInst : setDescInst;
+	}
+
 	/**
 	 * A description for lists. The description ensures that
 	 * the {@link Iterator}, {@link ListIterator} or sub list the 
@@ -78,10 +183,24 @@ public final class DefaultDescriptions {
 		return listDescInst;
 	}
 
+	/**
+	 * A description for lists with the given iterator policy.
+	 * @param creationOnly <code>true</code> to only record the creation of iterators
+	 * and spliterators (see {@link Description#setCreationOnly(boolean)}), <code>false</code>
+	 * to record each of their invocations as {@link #listDescription()} does.
+	 * @param <T> the type of objects held in the list
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<List<T>> listDescription(final boolean creationOnly) {
+		return creationOnly ? coarseListDescInst : listDescInst;
+	}
+
 	/**
 	 * A description for maps. The description ensures that the
 	 * key set, entry set or value collection the map may return is
-	 * monitored as well.
+	 * monitored as well. Repeated invocations return the same monitored view
+	 * while it is referenced.
 	 * @param <K> the type of keys of the map
 	 * @param <V> the type of values of the map
 	 * @return a description instance, never <code>null</code>
@@ -91,53 +210,354 @@ public final class DefaultDescriptions {
 		return mapDescInst;
 	}
 
-	private static <T> Description<Collection<T>> buildCollectionDescription() {
+	/**
+	 * A description for maps with the given iterator policy for the iterators
+	 * of its views.
+	 * @param creationOnly <code>true</code> to only record the creation of iterators
+	 * and spliterators (see {@link Description#setCreationOnly(boolean)}), <code>false</code>
+	 * to record each of their invocations as {@link #mapDescription()} does.
+	 * @param <K> the type of keys of the map
+	 * @param <V> the type of values of the map
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <K, V> Description<Map<K, V>> mapDescription(final boolean creationOnly) {
+		return creationOnly ? coarseMapDescInst : mapDescInst;
+	}
+
+	/**
+	 * A description for queues, e.g. a <code>PriorityQueue</code>. The
+	 * description ensures that the {@link Iterator} that the queue may return
+	 * is monitored as well. As the queues of the JDK, it uses identity for equality.
+	 * @param <T> the type of objects held in the queue
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Queue<T>> queueDescription() {
+		return queueDescInst;
+	}
+
+	/**
+	 * A description for deques, e.g. an <code>ArrayDeque</code>. The
+	 * description ensures that the iterators (including the descending
+	 * iterator) that the deque may return are monitored as well. As the
+	 * deques of the JDK, it uses identity for equality.
+	 * @param <T> the type of objects held in the deque
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Deque<T>> dequeDescription() {
+		return dequeDescInst;
+	}
+
+	/**
+	 * A description for sorted sets. The description ensures that the
+	 * {@link Iterator} and the sub sets (<code>headSet</code>, <code>tailSet</code>,
+	 * <code>subSet</code>) the set may return are monitored as well.
+	 * @param <T> the type of objects held in the set
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<SortedSet<T>> sortedSetDescription() {
+		return sortedSetDescInst;
+	}
+
+	/**
+	 * A description for navigable sets, e.g. a <code>TreeSet</code>. In addition
+	 * to the views of the {@link #sortedSetDescription()}, the descending set
+	 * and iterator are monitored as well.
+	 * @param <T> the type of objects held in the set
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<NavigableSet<T>> navigableSetDescription() {
+		return navigableSetDescInst;
+	}
+
+	/**
+	 * A description for sorted maps. The description ensures that the key set,
+	 * entry set, value collection and the sub maps (<code>headMap</code>,
+	 * <code>tailMap</code>, <code>subMap</code>) the map may return are monitored
+	 * as well.
+	 * @param <K> the type of keys of the map
+	 * @param <V> the type of values of the map
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <K, V> Description<SortedMap<K, V>> sortedMapDescription() {
+		return sortedMapDescInst;
+	}
+
+	/**
+	 * A description for navigable maps, e.g. a <code>TreeMap</code>. In addition
+	 * to the views of the {@link #sortedMapDescription()}, the navigable and
+	 * descending key sets and the descending map are monitored as well.
+	 * @param <K> the type of keys of the map
+	 * @param <V> the type of values of the map
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <K, V> Description<NavigableMap<K, V>> navigableMapDescription() {
+		return navigableMapDescInst;
+	}
+
+	/**
+	 * A description for concurrent maps, e.g. a <code>ConcurrentHashMap</code>.
+	 * The views of the map are monitored as well. As the iterators of
+	 * concurrent maps are weakly consistent, modifications while iterating are
+	 * legal and not reported (the iterators are not {@link Description#setIterating(boolean) iterating}).
+	 * @param <K> the type of keys of the map
+	 * @param <V> the type of values of the map
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <K, V> Description<ConcurrentMap<K, V>> concurrentMapDescription() {
+		return concurrentMapDescInst;
+	}
+
+	/**
+	 * A description for spliterators. The parts split off a spliterator
+	 * are monitored as well.
+	 * @param <T> the type of objects of the spliterator
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Spliterator<T>> spliteratorDescription() {
+		return spliteratorDescInst;
+	}
+
+	/**
+	 * A description for streams. The streams returned by intermediate
+	 * operations, including streams of primitives, are monitored as well,
+	 * so the terminal operation is monitored as a single invocation.
+	 * @param <T> the type of objects of the stream
+	 * @return a description instance, never <code>null</code>
+	 */
+	@SuppressWarnings(UNCHECKED)
+	public static <T> Description<Stream<T>> streamDescription() {
+		return streamDescInst;
+	}
+
+	private static <T> Description<Spliterator<T>> buildSpliteratorDescription(final boolean creationOnly, final boolean iterating) {
+		final Description<Spliterator<T>> result = new Description<Spliterator<T>>(Spliterator.class);
+		result.setCreationOnly(creationOnly);
+		result.setIterating(iterating);
+		try {
+			result.addDependant(result, "trySplit", (Class<?>[]) null);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	@SuppressWarnings(UNCHECKED)
+	private static Description buildStreamDescriptions() {
+		final Class<?>[] types = { Stream.class, IntStream.class, LongStream.class, DoubleStream.class };
+		final Description[] descriptions = new Description[types.length];
+		for (int i = types.length; i-->0; ) {
+			descriptions[i] = new Description(types[i]);
+		}
+		try {
+			for (int i = types.length; i-->0; ) {
+				for (Method method : types[i].getMethods()) {
+					final Class<?> returnType = method.getReturnType();
+					if (Modifier.isStatic(method.getModifiers())) {
+						continue;
+					} else if (BaseStream.class.equals(returnType)) {
+						// parallel(), sequential() etc. inherited from the base stream
+						descriptions[i].addDependant(descriptions[i], method.getName(), method.getParameterTypes());
+					} else if (Spliterator.class.equals(returnType)) {
+						// the primitive spliterators are not monitored, their interfaces differ
+						descriptions[i].addDependant(spliteratorDescInst, method.getName(), method.getParameterTypes());
+					} else if (Iterator.class.equals(returnType) && Stream.class.equals(types[i])) {
+						// the primitive iterators are not monitored either
+						addMethod(descriptions[i], false, true, Iterator.class, method.getName(), method.getParameterTypes());
+					} else {
+						for (int j = types.length; j-->0; ) {
+							if (types[j].equals(returnType)) {
+								descriptions[i].addDependant(descriptions[j], method.getName(), method.getParameterTypes());
+							}
+						}
+					}
+				}
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return descriptions[0];
+	}
+
+	private static void addBulkMethods(final Description<?> parent, final Description<?> spliterators) throws NoSuchMethodException {
+		parent.addDependant(spliterators, "spliterator", (Class<?>[]) null);
+		parent.addDependant(streamDescription(), "stream", (Class<?>[]) null);
+		parent.addDependant(streamDescription(), "parallelStream", (Class<?>[]) null);
+		parent.setSpliteratorStream("stream", (Class<?>[]) null);
+		parent.setSpliteratorStream("parallelStream", (Class<?>[]) null);
+	}
+
+	private static <T> Description<Collection<T>> buildCollectionDescription(final boolean creationOnly) {
 		final Description<Collection<T>> result = new Description<Collection<T>>(Collection.class);
 		try {
-			addMethod(result, Iterator.class, "iterator", (Class<?>[]) null);
+			addMethod(result, creationOnly, true, Iterator.class, "iterator", (Class<?>[]) null);
+			addBulkMethods(result, creationOnly ? coarseSpliteratorDescInst : spliteratorDescInst);
+			addWrites(result, COLLECTION_WRITES);
 		} catch (NoSuchMethodException e) {
 			throw new IllegalStateException(e);
 		}
 		return result;
 	}
 
-	private static <T> Description<Set<T>> buildSetDescription() {
+	private static <T> Description<Set<T>> buildSetDescription(final boolean creationOnly) {
 		final Description<Set<T>> result = new Description<Set<T>>(Set.class, DefaultComparators.<T>setComparator());
 		try {
-			addMethod(result, Iterator.class, "iterator", (Class<?>[]) null);
+			addMethod(result, creationOnly, true, Iterator.class, "iterator", (Class<?>[]) null);
+			addBulkMethods(result, creationOnly ? coarseSpliteratorDescInst : spliteratorDescInst);
+			addWrites(result, COLLECTION_WRITES);
 		} catch (NoSuchMethodException e) {
 			throw new IllegalStateException(e);
 		}
 		return result;
 	}
 
-	private static <T> Description<List<T>> buildListDescription() {
+	private static <T> Description<List<T>> buildListDescription(final boolean creationOnly) {
 		final Description<List<T>> result = new Description<List<T>>(List.class, DefaultComparators.<T>listComparator());
 		try {
-			addMethod(result, Iterator.class, "iterator", (Class<?>[]) null);
-			addMethod(result, ListIterator.class, "listIterator", (Class<?>[]) null);
-			addMethod(result, ListIterator.class, "listIterator", new Class<?>[] { Integer.TYPE });
+			addMethod(result, creationOnly, true, Iterator.class, "iterator", (Class<?>[]) null);
+			addMethod(result, creationOnly, true, ListIterator.class, "listIterator", (Class<?>[]) null);
+			addMethod(result, creationOnly, true, ListIterator.class, "listIterator", new Class<?>[] { Integer.TYPE });
 			result.addDependant(result, "subList", new Class<?>[] { Integer.TYPE, Integer.TYPE });
+			addBulkMethods(result, creationOnly ? coarseSpliteratorDescInst : spliteratorDescInst);
+			addWrites(result, COLLECTION_WRITES);
 		} catch (NoSuchMethodException e) {
 			throw new IllegalStateException(e);
 		}
 		return result;
 	}
 
-	private static <K, V> Description<Map<K, V>> buildMapDescription() {
+	private static <K, V> Description<Map<K, V>> buildMapDescription(final boolean creationOnly) {
 		final Description<Map<K, V>> result = new Description<Map<K, V>>(Map.class, DefaultComparators.<K, V>mapComparator());
 		try {
-			result.addDependant(setDescription(), "entrySet", (Class<?>[]) null);
-			result.addDependant(setDescription(), "keySet", (Class<?>[]) null);
-			result.addDependant(collectionDescription(), "values", (Class<?>[]) null);
+			result.addDependant(setDescription(creationOnly), "entrySet", (Class<?>[]) null);
+			result.addDependant(setDescription(creationOnly), "keySet", (Class<?>[]) null);
+			result.addDependant(collectionDescription(creationOnly), "values", (Class<?>[]) null);
+			// the views are created once by the usual implementations
+			result.setCached("entrySet", (Class<?>[]) null);
+			result.setCached("keySet", (Class<?>[]) null);
+			result.setCached("values", (Class<?>[]) null);
+			addWrites(result, MAP_WRITES);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	@SuppressWarnings(UNCHECKED)
+	private static Description buildQueueDescription(final Class<?> type) {
+		final Description result = new Description(type, DefaultComparators.queueComparator());
+		try {
+			addViews(result, true);
+			addBulkMethods(result, spliteratorDescInst);
+			addWrites(result, COLLECTION_WRITES);
 		} catch (NoSuchMethodException e) {
 			throw new IllegalStateException(e);
 		}
 		return result;
 	}
 
-	private static <T> Description<T> addMethod(final Description<T> parent, final Class<?> clz, final String methodName, final Class<?>... parameterTypes) throws NoSuchMethodException {
+	@SuppressWarnings(UNCHECKED)
+	private static Description buildSortedSetDescription(final Class<?> type) {
+		final Description result = new Description(type, DefaultComparators.setComparator());
+		try {
+			// for the navigable set, the sorted sub sets are sorted set views
+			addViews(result, true, result, sortedSetDescInst);
+			addBulkMethods(result, spliteratorDescInst);
+			addWrites(result, COLLECTION_WRITES);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	@SuppressWarnings(UNCHECKED)
+	private static Description buildSortedMapDescription(final Class<?> type) {
+		final Description result = new Description(type, DefaultComparators.mapComparator());
+		try {
+			addViews(result, true, result, sortedMapDescInst, navigableSetDescInst, setDescInst, collectionDescInst);
+			setCachedViews(result);
+			addWrites(result, MAP_WRITES);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	@SuppressWarnings(UNCHECKED)
+	private static Description buildConcurrentMapDescription() {
+		final Description result = new Description(ConcurrentMap.class, DefaultComparators.mapComparator());
+		try {
+			// weakly consistent views, modifications while iterating are legal
+			final Description spliterators = buildSpliteratorDescription(false, false);
+			final Description keys = new Description(Set.class, DefaultComparators.setComparator());
+			addViews(keys, false);
+			addBulkMethods(keys, spliterators);
+			final Description values = new Description(Collection.class);
+			addViews(values, false);
+			addBulkMethods(values, spliterators);
+			addViews(result, false, keys, values);
+			setCachedViews(result);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the methods returning an {@link Iterator} or a type of the given
+	 * views as dependants of the description.
+	 */
+	private static void addViews(final Description<?> description, final boolean iterating, final Description<?>... views) throws NoSuchMethodException {
+		for (Method method : description.getInterface().getMethods()) {
+			if (!Modifier.isStatic(method.getModifiers()) && !method.isBridge()) {
+				final Class<?> returnType = method.getReturnType();
+				if (Iterator.class.equals(returnType)) {
+					addMethod(description, false, iterating, Iterator.class, method.getName(), method.getParameterTypes());
+				} else {
+					for (Description<?> view : views) {
+						if (view != null && view.getInterface().equals(returnType)) {
+							description.addDependant(view, method.getName(), method.getParameterTypes());
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void setCachedViews(final Description<?> description) throws NoSuchMethodException {
+		for (String name : MAP_VIEWS) {
+			try {
+				description.getInterface().getMethod(name);
+			} catch (NoSuchMethodException e) {
+				continue;
+			}
+			description.setCached(name, (Class<?>[]) null);
+		}
+	}
+
+	private static void addWrites(final Description<?> description, final String... names) throws NoSuchMethodException {
+		for (Method method : description.getInterface().getMethods()) {
+			for (String name : names) {
+				if (name.equals(method.getName())) {
+					description.setWrite(name, method.getParameterTypes());
+				}
+			}
+		}
+	}
+
+	private static <T> Description<T> addMethod(final Description<T> parent, final boolean creationOnly, final boolean iterating, final Class<?> clz, final String methodName, final Class<?>... parameterTypes) throws NoSuchMethodException {
 		final Description<T> child = new Description<T>(clz);
+		child.setCreationOnly(creationOnly);
+		child.setIterating(iterating);
 		parent.addDependant(child, methodName, parameterTypes);
 		return child;
 	}
@@ -4,8 +4,9 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.util.Map;
-import java.util.WeakHashMap;
 
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ContextCapture;
 import de.engehausen.kongcurrent.ExceptionHandler;
 import de.engehausen.kongcurrent.Logger;
 
@@ -18,12 +19,20 @@ import de.engehausen.kongcurrent.Logger;
  * it must not be shared between more than one monitored instance. Keep
  * in mind that this implementation may slow down performance of the
  * monitored object considerably; this may even affect the concurrency 
- * situation that is to be analyzed through the handler.
+ * situation that is to be analyzed through the handler. For objects
+ * accessed by very many (e.g. virtual) threads consider using the
+ * {@link BoundedExceptionHandler}, for very many monitored objects the
+ * {@link InterningExceptionHandler}.
+ * <p>Optionally a {@link ContextCapture} can be given, which records e.g.
+ * a request identifier with each invocation; the stack traces can then
+ * be switched off to make recording an invocation considerably cheaper.
  */
-public class DefaultExceptionHandler implements ExceptionHandler {
+public class DefaultExceptionHandler implements ExceptionHandler, ArgumentsAware {
 	
 	protected final Logger logger;
 	protected final Map<Thread, Exception> callers;
+	protected final ContextCapture contextCapture;
+	protected final boolean captureStacks;
 	
 	/**
 	 * Creates the exception handler using the {@link DefaultLogger}.
@@ -37,11 +46,36 @@ public class DefaultExceptionHandler implements ExceptionHandler {
 	 * @param aLogger the logger to use, must not be <code>null</code>.
 	 */
 	public DefaultExceptionHandler(final Logger aLogger) {
+		this(aLogger, null, true);
+	}
+
+	/**
+	 * Creates the exception handler using the given logger, recording
+	 * the context of each invocation.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 * @param aContextCapture the context capture to use, may be <code>null</code>.
+	 * @param stacks <code>true</code> to record the stack trace of each invocation,
+	 * <code>false</code> to only record the context; ignored (i.e. stacks are recorded)
+	 * if no context capture is given.
+	 */
+	public DefaultExceptionHandler(final Logger aLogger, final ContextCapture aContextCapture, final boolean stacks) {
 		logger = aLogger;
+		contextCapture = aContextCapture;
+		captureStacks = stacks || aContextCapture == null;
 		// tracks invokers of the monitored object via exceptions
 		// and by thread. the thread is held weakly; if the thread
 		// goes, so will the map entry
-		callers = new WeakHashMap<Thread, Exception>();
+		callers = new ConcurrentWeakIdentityMap<Thread, Exception>();
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != DefaultExceptionHandler.class;
 	}
 
 	/**
@@ -53,10 +87,8 @@ public class DefaultExceptionHandler implements ExceptionHandler {
 	 */
 	public void preInvoke(final Object target, final Method method, final Object[] args) {
 		final Thread currentThread = Thread.currentThread();
-		final Exception e = new Exception("caller...");
-		synchronized (callers) {
-			callers.put(currentThread, e); 			
-		}
+		final Exception e = contextCapture == null ? new Exception("caller...") : new Caller(contextCapture.capture(), captureStacks);
+		callers.put(currentThread, e);
 	}
 
 	/**
@@ -84,15 +116,17 @@ public class DefaultExceptionHandler implements ExceptionHandler {
 	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
 		final StringWriter sw = new StringWriter(4096);
 		final PrintWriter pw = new PrintWriter(sw);
-		sw.write("exception occurred:\n");
+		sw.write("exception occurred");
+		if (contextCapture != null) {
+			sw.append(" in context ").append(String.valueOf(contextCapture.capture()));
+		}
+		sw.write(":\n");
 		showStack(pw, Thread.currentThread(), throwable);
 		sw.append("\nthe following threads were recently operating on the object:\n");
-		synchronized (callers) {
-			for (Map.Entry<Thread, Exception> entry : callers.entrySet()) {
-				final Exception e = entry.getValue();
-				fixStack(e, 2); // suppress the pre-invoke from the stack trace..
-				showStack(pw, entry.getKey(), e);
-			}
+		for (Map.Entry<Thread, Exception> entry : callers.entrySet()) {
+			final Exception e = entry.getValue();
+			fixStack(e, 2); // suppress the pre-invoke from the stack trace..
+			showStack(pw, entry.getKey(), e);
 		}
 		logger.log(sw.toString());
 	}
@@ -112,4 +146,38 @@ public class DefaultExceptionHandler implements ExceptionHandler {
 		throwable.printStackTrace(pw);
 	}
 
+	/**
+	 * Caller information including the context of the invocation.
+	 */
+	protected static class Caller extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final transient Object context;
+
+		/**
+		 * Creates the caller information.
+		 * @param aContext the context of the invocation, may be <code>null</code>.
+		 * @param stack <code>true</code> to record the stack trace
+		 */
+		public Caller(final Object aContext, final boolean stack) {
+			super("caller...", null, false, stack);
+			context = aContext;
+		}
+
+		/**
+		 * Returns the context of the invocation.
+		 * @return the context of the invocation, may be <code>null</code>.
+		 */
+		public Object getContext() {
+			return context;
+		}
+
+		@Override
+		public String toString() {
+			return "context "+context+" ("+getMessage()+")";
+		}
+
+	}
+
 }
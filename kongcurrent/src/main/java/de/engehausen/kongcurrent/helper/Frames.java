@@ -0,0 +1,61 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.cglib.MonitorHidden;
+
+/**
+ * Helper methods on stack frames of calls to monitored objects.
+ */
+final class Frames {
+
+	private static final StackWalker WALKER = StackWalker.getInstance();
+	/** the frames of hidden classes are not walked; their monitor is called right before */
+	private static final String HIDDEN_MONITOR = MonitorHidden.Handler.class.getName();
+
+	/** finds the frame calling the proxy of a monitored object */
+	private static final Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame> CALLER = new Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame>() {
+		@Override
+		public StackWalker.StackFrame apply(final Stream<StackWalker.StackFrame> frames) {
+			boolean proxy = false;
+			for (Iterator<StackWalker.StackFrame> i = frames.iterator(); i.hasNext(); ) {
+				final StackWalker.StackFrame frame = i.next();
+				final boolean isProxy = isProxy(frame.getClassName());
+				if (proxy && !isProxy) {
+					return frame;
+				}
+				proxy = isProxy;
+			}
+			return null;
+		}
+	};
+
+	private Frames() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns the frame of the code calling the monitored object, i.e. the
+	 * first frame following the proxy (and the frames of the proxy itself).
+	 * The walk stops at that frame, but each call allocates the stream and the
+	 * frames walked up to it.
+	 * @return the frame of the caller, or <code>null</code> if not called through a proxy.
+	 */
+	static StackWalker.StackFrame caller() {
+		return WALKER.walk(CALLER);
+	}
+
+	/**
+	 * Checks whether the given class is a proxy created for monitoring.
+	 * @param className the name of the class, must not be <code>null</code>
+	 * @return <code>true</code> for proxy classes.
+	 */
+	static boolean isProxy(final String className) {
+		return className.contains("$Proxy") || className.contains("$$EnhancerByCGLIB$$") || className.endsWith(Monitor.WRAPPER_SUFFIX) ||
+			className.contains(MonitorHidden.CLASS_SUFFIX) || HIDDEN_MONITOR.equals(className);
+	}
+
+}
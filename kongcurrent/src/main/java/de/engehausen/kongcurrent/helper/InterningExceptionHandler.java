@@ -0,0 +1,205 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+
+/**
+ * A handler implementation for tracking invocations to a monitored
+ * object which keeps the calling stacks in a {@link StackDictionary}.
+ * Per thread the handler only records the identifier of the stack; stacks
+ * which are recorded by many handlers, e.g. when monitoring thousands of
+ * objects created and used by the same code, are stored once. Compared
+ * to the {@link DefaultExceptionHandler} this uses much less memory for
+ * many monitored objects, at the price of decoding the stack on each
+ * invocation.
+ * <p>In case of an exception the output is the same as the one of the
+ * {@link DefaultExceptionHandler}. Stacks of threads which have ended or
+ * of handlers which are no longer used are released from the dictionary.
+ * <br>This handler is written to be used <i>per monitored instance</i>.
+ */
+public class InterningExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	protected final Logger logger;
+	protected final StackDictionary dictionary;
+	protected final ConcurrentMap<Long, Record> records;
+	protected final ReferenceQueue<Thread> queue;
+
+	/**
+	 * Creates the exception handler using the {@link DefaultLogger}
+	 * and the shared dictionary.
+	 */
+	public InterningExceptionHandler() {
+		this(new DefaultLogger());
+	}
+
+	/**
+	 * Creates the exception handler using the given logger and the shared dictionary.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 */
+	public InterningExceptionHandler(final Logger aLogger) {
+		this(aLogger, StackDictionary.shared());
+	}
+
+	/**
+	 * Creates the exception handler using the given logger and dictionary.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 * @param aDictionary the dictionary to store the stacks in, must not be <code>null</code>.
+	 */
+	public InterningExceptionHandler(final Logger aLogger, final StackDictionary aDictionary) {
+		logger = aLogger;
+		dictionary = aDictionary;
+		records = new ConcurrentHashMap<Long, Record>();
+		queue = new ReferenceQueue<Thread>();
+		// releases the stacks once the handler (i.e. the monitored object) is gone
+		CLEANER.register(this, new Releaser(dictionary, records));
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != InterningExceptionHandler.class;
+	}
+
+	/**
+	 * Records the stack of the current thread for analysis
+	 * if {@link #handle(Throwable, Object, Method, Object[])} is called.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		expunge();
+		final Thread currentThread = Thread.currentThread();
+		// suppress the pre-invoke from the stack trace
+		final int stack = dictionary.intern(new Exception().getStackTrace(), 2);
+		final Long key = Long.valueOf(Threads.id(currentThread));
+		Record record = records.get(key);
+		if (record == null) {
+			record = new Record(currentThread, key, queue);
+			final Record existing = records.putIfAbsent(key, record);
+			if (existing != null) {
+				record = existing;
+			}
+		}
+		// only the thread itself replaces its stack
+		final int previous = record.stack;
+		record.stack = stack;
+		dictionary.release(previous);
+	}
+
+	/**
+	 * Does nothing.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		// does nothing; as with the default handler the stack is kept to show it was "recently" invoked
+	}
+
+	/**
+	 * Handles an exception which occurred while executing a method
+	 * of the monitored object.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		final StringWriter sw = new StringWriter(4096);
+		final PrintWriter pw = new PrintWriter(sw);
+		sw.write("exception occurred:\n");
+		showStack(pw, Thread.currentThread(), throwable);
+		sw.append("\nthe following threads were recently operating on the object:\n");
+		for (Record record : records.values()) {
+			final Thread thread = record.get();
+			if (thread != null) {
+				final Exception e = new Exception("caller...");
+				try {
+					e.setStackTrace(dictionary.resolve(record.stack));
+				} catch (IllegalArgumentException ignored) {
+					// the thread has just recorded a new stack
+					continue;
+				}
+				showStack(pw, thread, e);
+			}
+		}
+		pw.flush();
+		logger.log(sw.toString());
+	}
+
+	protected void showStack(final PrintWriter pw, final Thread thread, final Throwable throwable) {
+		pw.append(thread.toString()).append(" - ");
+		throwable.printStackTrace(pw);
+	}
+
+	/**
+	 * Releases the stacks of threads which have ended.
+	 */
+	protected void expunge() {
+		for (Reference<? extends Thread> ref = queue.poll(); ref != null; ref = queue.poll()) {
+			final Record record = (Record) ref;
+			if (records.remove(record.key, record)) {
+				dictionary.release(record.stack);
+			}
+		}
+	}
+
+	/**
+	 * The stack most recently recorded for a thread.
+	 */
+	protected static class Record extends WeakReference<Thread> {
+
+		protected final Long key;
+		protected volatile int stack;
+
+		protected Record(final Thread thread, final Long aKey, final ReferenceQueue<Thread> aQueue) {
+			super(thread, aQueue);
+			key = aKey;
+		}
+
+	}
+
+	/**
+	 * Releases all stacks of a handler which is no longer used.
+	 * Must not reference the handler.
+	 */
+	private static class Releaser implements Runnable {
+
+		private final StackDictionary dictionary;
+		private final ConcurrentMap<Long, Record> records;
+
+		Releaser(final StackDictionary aDictionary, final ConcurrentMap<Long, Record> someRecords) {
+			dictionary = aDictionary;
+			records = someRecords;
+		}
+
+		@Override
+		public void run() {
+			for (Record record : records.values()) {
+				if (records.remove(record.key, record)) {
+					dictionary.release(record.stack);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,309 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+
+/**
+ * A handler implementation tracing the structural modifications of JDK
+ * collections such as <code>ArrayList</code>, <code>LinkedList</code>
+ * (and other <code>AbstractList</code> based lists) or <code>HashMap</code>.
+ * These count their structural modifications in a <code>modCount</code>
+ * field, which the handler reads before and after each invocation of a
+ * writing method (e.g. <code>add</code>, <code>put</code> or <code>remove</code>,
+ * classified by name); the caller is only recorded if the count changed.
+ * Reading invocations are not looked at, so they cost next to nothing, and
+ * a read overlapping a write of another thread is never taken for the
+ * modification.
+ * <p>In case of a {@link java.util.ConcurrentModificationException} the
+ * handler reports the recently recorded modifications; if the failing
+ * iterator exposes the count it expects (<code>expectedModCount</code>),
+ * the report names the single modification which invalidated it:
+ * <pre>exception occurred:
+ *Thread[Thread-1,5,main] - java.util.ConcurrentModificationException
+ *	...
+ *
+ *the iterator was invalidated by this modification:
+ *Thread[main,5,main] - java.lang.Exception: add() changed modCount from 3 to 4
+ *	at $Proxy0.add(Unknown Source)
+ *	at Test.run(Unknown Source)</pre>
+ * The fields are read through cached {@link VarHandle}s; the package
+ * <code>java.util</code> must be opened to the handler, e.g. with
+ * <code>--add-opens java.base/java.util=ALL-UNNAMED</code>. For objects
+ * without an accessible <code>modCount</code> nothing is recorded, see
+ * {@link #isSupported(Class)}. This includes views and iterators (e.g.
+ * <code>keySet()</code> of a map or the iterator of a list): modifications
+ * made through them, such as <code>iterator().remove()</code> or
+ * <code>keySet().remove(key)</code>, are not recorded, so a report cannot name
+ * them as the modification which invalidated an iterator.
+ * <br>Like the {@link DefaultExceptionHandler} this handler is written
+ * to be used per monitored instance (and its dependants).
+ */
+public class ModCountExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	private static final int HISTORY = 16;
+
+	private static final ClassValue<VarHandle> MOD_COUNT = new FieldHandles("modCount");
+	private static final ClassValue<VarHandle> EXPECTED_MOD_COUNT = new FieldHandles("expectedModCount");
+
+	protected final Logger logger;
+	/** the count read before the current invocation, per thread */
+	private final ThreadLocal<int[]> before;
+	private final AtomicReferenceArray<Modification> modifications;
+	private final AtomicLong sequence;
+
+	/**
+	 * Creates the handler using the {@link DefaultLogger}.
+	 */
+	public ModCountExceptionHandler() {
+		this(new DefaultLogger());
+	}
+
+	/**
+	 * Creates the handler using the given logger.
+	 * @param aLogger the logger to use, must not be <code>null</code>.
+	 */
+	public ModCountExceptionHandler(final Logger aLogger) {
+		logger = aLogger;
+		before = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[1];
+			}
+		};
+		modifications = new AtomicReferenceArray<Modification>(HISTORY);
+		sequence = new AtomicLong();
+	}
+
+	/**
+	 * Checks whether the structural modifications of instances of the
+	 * given class can be traced.
+	 * @param clazz the class to check, must not be <code>null</code>
+	 * @return <code>true</code> if the class has an accessible <code>modCount</code> field.
+	 */
+	public static boolean isSupported(final Class<?> clazz) {
+		return MOD_COUNT.get(clazz) != null;
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != ModCountExceptionHandler.class;
+	}
+
+	/**
+	 * Reads the modification count of the monitored object before a writing method.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		final VarHandle handle = Access.isWrite(method) ? MOD_COUNT.get(target.getClass()) : null;
+		if (handle != null) {
+			before.get()[0] = (int) handle.get(target);
+		}
+	}
+
+	/**
+	 * Records the caller of a writing method if the modification count of the
+	 * monitored object changed.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		final VarHandle handle = Access.isWrite(method) ? MOD_COUNT.get(target.getClass()) : null;
+		if (handle != null) {
+			final int previous = before.get()[0];
+			final int current = (int) handle.get(target);
+			if (current != previous) {
+				final Modification modification = new Modification(method, previous, current);
+				modifications.set((int) (sequence.getAndIncrement() % HISTORY), modification);
+			}
+		}
+	}
+
+	/**
+	 * Handles an exception which occurred while executing a method
+	 * of the monitored object, reporting the recent modifications.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		final StringWriter sw = new StringWriter(4096);
+		final PrintWriter pw = new PrintWriter(sw);
+		sw.write("exception occurred:\n");
+		showStack(pw, Thread.currentThread().toString(), throwable);
+		final Modification[] recent = getModifications();
+		final Modification culprit = findCulprit(target, recent);
+		if (culprit != null) {
+			sw.append("\nthe iterator was invalidated by this modification:\n");
+			showStack(pw, culprit.getThread(), culprit.trim());
+		} else if (recent.length > 0) {
+			sw.append("\nthe following structural modifications were made recently:\n");
+			for (int i = recent.length; i-->0; ) {
+				showStack(pw, recent[i].getThread(), recent[i].trim());
+			}
+		}
+		pw.flush();
+		logger.log(sw.toString());
+	}
+
+	/**
+	 * Returns the recorded modifications, oldest first.
+	 * @return the recent modifications, never <code>null</code>.
+	 */
+	public Modification[] getModifications() {
+		final long end = sequence.get();
+		final long start = Math.max(0, end - HISTORY);
+		final Modification[] temp = new Modification[(int) (end - start)];
+		int size = 0;
+		for (long i = start; i < end; i++) {
+			final Modification modification = modifications.get((int) (i % HISTORY));
+			if (modification != null) {
+				temp[size++] = modification;
+			}
+		}
+		final Modification[] result = new Modification[size];
+		System.arraycopy(temp, 0, result, 0, size);
+		return result;
+	}
+
+	/**
+	 * Finds the modification which changed the count from the one expected
+	 * by the given (iterator) object.
+	 * @param target the failing object
+	 * @param recent the recent modifications, oldest first
+	 * @return the modification, or <code>null</code> if unknown.
+	 */
+	protected Modification findCulprit(final Object target, final Modification[] recent) {
+		final VarHandle handle = EXPECTED_MOD_COUNT.get(target.getClass());
+		if (handle != null) {
+			final int expected = (int) handle.get(target);
+			for (Modification modification : recent) {
+				if (modification.getBefore() == expected) {
+					return modification;
+				}
+			}
+		}
+		return null;
+	}
+
+	protected void showStack(final PrintWriter pw, final String thread, final Throwable throwable) {
+		pw.append(thread).append(" - ");
+		throwable.printStackTrace(pw);
+	}
+
+	/**
+	 * A structural modification of a monitored object, with the stack of the caller.
+	 */
+	public static class Modification extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String thread;
+		private final int beforeCount;
+		private final int afterCount;
+		private boolean trimmed;
+
+		protected Modification(final Method method, final int previous, final int current) {
+			super(method.getName()+"() changed modCount from "+previous+" to "+current);
+			thread = Thread.currentThread().toString();
+			beforeCount = previous;
+			afterCount = current;
+		}
+
+		/**
+		 * Returns a description of the modifying thread.
+		 * @return the thread description, never <code>null</code>.
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Returns the modification count before the modification.
+		 * @return the modification count before the modification.
+		 */
+		public int getBefore() {
+			return beforeCount;
+		}
+
+		/**
+		 * Returns the modification count after the modification.
+		 * @return the modification count after the modification.
+		 */
+		public int getAfter() {
+			return afterCount;
+		}
+
+		/**
+		 * Removes the frames of the handler and the monitor from the stack.
+		 * @return this modification
+		 */
+		protected synchronized Modification trim() {
+			if (!trimmed) {
+				trimmed = true;
+				final StackTraceElement[] elements = getStackTrace();
+				final int max = elements.length - 2;
+				if (max > 0) {
+					final StackTraceElement[] shortened = new StackTraceElement[max];
+					System.arraycopy(elements, 2, shortened, 0, max);
+					setStackTrace(shortened);
+				}
+			}
+			return this;
+		}
+
+	}
+
+	/**
+	 * Looks up the handle of an <code>int</code> field of the given name,
+	 * declared by the class or one of its super classes; <code>null</code>
+	 * if there is none or it is not accessible.
+	 */
+	private static class FieldHandles extends ClassValue<VarHandle> {
+
+		private final String name;
+
+		FieldHandles(final String aName) {
+			name = aName;
+		}
+
+		@Override
+		protected VarHandle computeValue(final Class<?> type) {
+			for (Class<?> clz = type; clz != null; clz = clz.getSuperclass()) {
+				for (Field field : clz.getDeclaredFields()) {
+					if (name.equals(field.getName()) && Integer.TYPE.equals(field.getType())) {
+						try {
+							return MethodHandles.privateLookupIn(clz, MethodHandles.lookup()).unreflectVarHandle(field);
+						} catch (IllegalAccessException e) {
+							return null;
+						} catch (RuntimeException e) {
+							// e.g. the package is not opened
+							return null;
+						}
+					}
+				}
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,348 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+import de.engehausen.kongcurrent.Monitor;
+
+/**
+ * A handler wrapping another handler which perturbs the schedule of the
+ * calling threads before and after each invocation of the monitored object.
+ * Depending on a {@link Strategy} the calling thread may yield, spin or park
+ * shortly; this widens the windows in which races on the monitored object
+ * can happen and lets rare problems show up much faster in a test environment.
+ * <p>The decisions are driven by a seeded pseudo random number generator per thread,
+ * which is derived from the seed and the name of the thread. Running the same
+ * test with the seed reported in case of an exception repeats the decisions
+ * taken per (named) thread.
+ * <p>Example:
+ * <pre>long seed = System.nanoTime();
+ *List&lt;String&gt; monitoredList = Monitor.monitor(myList, DefaultDescriptions.&lt;String&gt;listDescription(),
+ *    new PerturbingExceptionHandler(new DefaultExceptionHandler(), PerturbingExceptionHandler.priorityStrategy(3, 10000, seed), seed, new DefaultLogger()));</pre>
+ * <b>Important:</b> This handler deliberately slows down the monitored object
+ * and must only be used in a test environment.
+ */
+public class PerturbingExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	/**
+	 * The ways the schedule of a thread can be perturbed.
+	 */
+	public enum Perturbation {
+		/** do nothing */
+		NONE,
+		/** call {@link Thread#yield()} */
+		YIELD,
+		/** spin a number of times using {@link Thread#onSpinWait()} */
+		SPIN,
+		/** park the thread for a short time using {@link LockSupport#parkNanos(long)} */
+		PARK
+	}
+
+	/**
+	 * Decides how to perturb the schedule of the calling thread.
+	 * Implementations must be thread-safe.
+	 */
+	public interface Strategy {
+		/**
+		 * Chooses the perturbation for the calling thread.
+		 * @param random the pseudo random number generator of the calling thread, never <code>null</code>
+		 * @param step the global number of the perturbation point, starting at one
+		 * @return the perturbation to apply, never <code>null</code>
+		 */
+		Perturbation choose(Random random, long step);
+	}
+
+	private static final Perturbation[] ACTIVE = { Perturbation.YIELD, Perturbation.SPIN, Perturbation.PARK };
+
+	protected final ExceptionHandler delegate;
+	protected final Strategy strategy;
+	protected final long seed;
+	protected final Logger logger;
+	protected final AtomicLong steps;
+	protected final ThreadLocal<Random> randoms;
+	protected int spins;
+	protected long parkNanos;
+
+	/**
+	 * Creates the handler with a seed based on the current time which is
+	 * written to the {@link DefaultLogger} in case of an exception.
+	 * @param aDelegate the handler to delegate to, must not be <code>null</code>.
+	 * @param aStrategy the strategy to use, must not be <code>null</code>.
+	 */
+	public PerturbingExceptionHandler(final ExceptionHandler aDelegate, final Strategy aStrategy) {
+		this(aDelegate, aStrategy, System.nanoTime(), new DefaultLogger());
+	}
+
+	/**
+	 * Creates the handler.
+	 * @param aDelegate the handler to delegate to, must not be <code>null</code>.
+	 * @param aStrategy the strategy to use, must not be <code>null</code>.
+	 * @param aSeed the seed for the pseudo random number generators
+	 * @param aLogger the logger to report the seed to in case of an exception; may be <code>null</code>.
+	 */
+	public PerturbingExceptionHandler(final ExceptionHandler aDelegate, final Strategy aStrategy, final long aSeed, final Logger aLogger) {
+		delegate = aDelegate;
+		strategy = aStrategy;
+		seed = aSeed;
+		logger = aLogger;
+		steps = new AtomicLong();
+		randoms = new ThreadLocal<Random>() {
+			@Override
+			protected Random initialValue() {
+				return new Random(seed * 31 + Thread.currentThread().getName().hashCode());
+			}
+		};
+		spins = 64;
+		parkNanos = 50000L;
+	}
+
+	/**
+	 * Sets the number of spins for {@link Perturbation#SPIN}.
+	 * @param count the number of spins, default is 64
+	 */
+	public void setSpins(final int count) {
+		spins = count;
+	}
+
+	/**
+	 * Sets the park time for {@link Perturbation#PARK}.
+	 * @param nanos the time to park in nanoseconds, default is 50000
+	 */
+	public void setParkNanos(final long nanos) {
+		parkNanos = nanos;
+	}
+
+	/**
+	 * Returns the seed of this handler.
+	 * @return the seed of this handler.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns whether the handler delegated to needs the arguments.
+	 * @return <code>true</code> if the handler delegated to needs the arguments.
+	 */
+	public boolean needsArguments() {
+		return Monitor.needsArguments(delegate);
+	}
+
+	/**
+	 * Delegates, then perturbs the schedule before the method is invoked.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		delegate.preInvoke(target, method, args);
+		perturb(next());
+	}
+
+	/**
+	 * Perturbs the schedule after the method was invoked, then delegates.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		perturb(next());
+		delegate.postInvoke(target, method, args);
+	}
+
+	/**
+	 * Delegates and reports the seed of this handler.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		delegate.handle(throwable, target, method, args);
+		if (logger != null) {
+			logger.log("schedule perturbed by "+strategy+" with seed "+seed);
+		}
+	}
+
+	protected Perturbation next() {
+		return strategy.choose(randoms.get(), steps.incrementAndGet());
+	}
+
+	protected void perturb(final Perturbation perturbation) {
+		switch (perturbation) {
+		case YIELD:
+			Thread.yield();
+			break;
+		case SPIN:
+			for (int i = spins; i-->0; ) {
+				Thread.onSpinWait();
+			}
+			break;
+		case PARK:
+			LockSupport.parkNanos(parkNanos);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Returns a strategy which perturbs with the given probability,
+	 * picking one of yielding, spinning or parking at random.
+	 * @param probability the probability to perturb, between 0 and 1
+	 * @return a strategy, never <code>null</code>.
+	 */
+	public static Strategy randomStrategy(final double probability) {
+		return new RandomStrategy(probability);
+	}
+
+	/**
+	 * Returns a strategy modeled after the PCT (probabilistic concurrency testing)
+	 * scheduler: each thread gets a random priority when first seen; threads
+	 * not having the highest priority are parked at each perturbation point.
+	 * At <code>depth-1</code> randomly chosen steps the priority of the thread
+	 * reaching the step is lowered below all others. On real threads this only
+	 * approximates PCT, but it forces orderings the scheduler would rarely produce
+	 * for bugs of depth <code>d</code> (i.e. requiring <code>d</code> ordering constraints).
+	 * The change points are derived from the given seed when the strategy is created;
+	 * pass the seed of the handler to repeat a run with the seed it reports.
+	 * @param depth the bug depth to look for, must be positive
+	 * @param expectedSteps the expected number of perturbation points (two per invocation) of a test run
+	 * @param seed the seed to derive the change points from
+	 * @return a strategy, never <code>null</code>.
+	 * @throws IllegalArgumentException if the depth is not positive
+	 */
+	public static Strategy priorityStrategy(final int depth, final long expectedSteps, final long seed) {
+		return new PriorityStrategy(depth, expectedSteps, seed);
+	}
+
+	/**
+	 * Randomly perturbs with a given probability.
+	 */
+	protected static class RandomStrategy implements Strategy {
+
+		protected final double probability;
+
+		protected RandomStrategy(final double aProbability) {
+			probability = aProbability;
+		}
+
+		@Override
+		public Perturbation choose(final Random random, final long step) {
+			if (random.nextDouble() < probability) {
+				return ACTIVE[random.nextInt(ACTIVE.length)];
+			} else {
+				return Perturbation.NONE;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "random("+probability+")";
+		}
+
+	}
+
+	/**
+	 * PCT-style priority based perturbation.
+	 */
+	protected static class PriorityStrategy implements Strategy {
+
+		protected final int depth;
+		protected final long expectedSteps;
+		protected final ThreadLocal<AtomicInteger> priorities;
+		protected final Map<Thread, AtomicInteger> threads;
+		protected final long seed;
+		protected final long[] changePoints;
+		private final Object lock = new Object();
+		private volatile Thread leader;
+
+		protected PriorityStrategy(final int aDepth, final long steps, final long aSeed) {
+			if (aDepth <= 0) {
+				throw new IllegalArgumentException("depth must be positive: "+aDepth);
+			}
+			depth = aDepth;
+			expectedSteps = steps;
+			seed = aSeed;
+			priorities = new ThreadLocal<AtomicInteger>();
+			threads = new ConcurrentHashMap<Thread, AtomicInteger>();
+			final Random random = new Random(seed);
+			changePoints = new long[depth - 1];
+			for (int i = changePoints.length; i-->0; ) {
+				changePoints[i] = 1 + (long) (random.nextDouble() * expectedSteps);
+			}
+			Arrays.sort(changePoints);
+		}
+
+		@Override
+		public Perturbation choose(final Random random, final long step) {
+			final Thread current = Thread.currentThread();
+			AtomicInteger priority = priorities.get();
+			if (priority == null) {
+				// initial priorities are above the ones used for the change points
+				priority = new AtomicInteger(depth + random.nextInt(Integer.MAX_VALUE - depth));
+				priorities.set(priority);
+				register(current, priority);
+			}
+			final int change = Arrays.binarySearch(changePoints, step);
+			if (change >= 0) {
+				// change point reached: lower the priority below all initial ones
+				priority.set(change);
+				if (leader == current) {
+					elect();
+				}
+			}
+			final Thread top = leader;
+			if (top != current && !top.isAlive()) {
+				elect();
+			}
+			return leader == current ? Perturbation.NONE : Perturbation.PARK;
+		}
+
+		private void register(final Thread thread, final AtomicInteger priority) {
+			synchronized (lock) {
+				threads.put(thread, priority);
+				if (leader == null || priority.get() > threads.get(leader).get()) {
+					leader = thread;
+				}
+			}
+		}
+
+		private void elect() {
+			synchronized (lock) {
+				Thread top = null;
+				int max = Integer.MIN_VALUE;
+				for (Iterator<Map.Entry<Thread, AtomicInteger>> i = threads.entrySet().iterator(); i.hasNext(); ) {
+					final Map.Entry<Thread, AtomicInteger> entry = i.next();
+					if (entry.getKey().isAlive()) {
+						final int priority = entry.getValue().get();
+						if (priority > max) {
+							max = priority;
+							top = entry.getKey();
+						}
+					} else {
+						i.remove();
+					}
+				}
+				leader = top == null ? Thread.currentThread() : top;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "priority(depth="+depth+",steps="+expectedSteps+",seed="+seed+")";
+		}
+
+	}
+
+}
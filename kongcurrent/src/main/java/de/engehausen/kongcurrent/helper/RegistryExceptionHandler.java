@@ -0,0 +1,274 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Logger;
+
+/**
+ * A handler implementation which can be shared by very many monitored
+ * objects, e.g. all maps created by a factory:
+ * <pre>RegistryExceptionHandler registry = new RegistryExceptionHandler();
+ *...
+ *Map&lt;K, V&gt; map = Monitor.monitor(new HashMap&lt;K, V&gt;(), DefaultDescriptions.&lt;K, V&gt;mapDescription(), registry);</pre>
+ * Per monitored object only the number of invocations and the most recent
+ * incident (i.e. exception) are kept, in a {@link ConcurrentWeakIdentityMap};
+ * the state of an object disappears once the object is garbage collected.
+ * Objects returned by monitored objects (e.g. iterators) are tracked as
+ * objects of their own.
+ * <p>The registry can be queried for the objects currently monitored
+ * ({@link #getTargets()}), each with its number of invocations and last
+ * incident. As no stack traces are recorded, incidents are logged with the
+ * calling thread and stack of the failing invocation only.
+ */
+public class RegistryExceptionHandler implements ExceptionHandler, ArgumentsAware {
+
+	protected final Logger logger;
+	protected final ConcurrentWeakIdentityMap<Object, State> states;
+
+	/**
+	 * Creates the handler using the {@link DefaultLogger}.
+	 */
+	public RegistryExceptionHandler() {
+		this(new DefaultLogger());
+	}
+
+	/**
+	 * Creates the handler using the given logger.
+	 * @param aLogger the logger to use in case of an exception, may be <code>null</code>.
+	 */
+	public RegistryExceptionHandler(final Logger aLogger) {
+		logger = aLogger;
+		states = new ConcurrentWeakIdentityMap<Object, State>();
+	}
+
+	/**
+	 * Returns <code>false</code> for this class, which does not use the arguments.
+	 * Subclasses are passed the arguments, as they may use them, unless they
+	 * override this method.
+	 * @return <code>false</code> for an instance of this class, <code>true</code> for subclasses
+	 */
+	public boolean needsArguments() {
+		return getClass() != RegistryExceptionHandler.class;
+	}
+
+	/**
+	 * Counts the invocation of the monitored object.
+	 * @param target the monitored object
+	 * @param method the method to be invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void preInvoke(final Object target, final Method method, final Object[] args) {
+		State.CALLS.incrementAndGet(state(target));
+	}
+
+	/**
+	 * Does nothing.
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void postInvoke(final Object target, final Method method, final Object[] args) {
+		// does nothing
+	}
+
+	/**
+	 * Records the incident for the monitored object and logs it.
+	 * @param throwable the exception which occurred while executing a method
+	 * @param target the monitored object
+	 * @param method the method invoked on that object
+	 * @param args the arguments to the method
+	 */
+	public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+		final Incident incident = new Incident(throwable, method);
+		final State state = state(target);
+		state.lastIncident = incident;
+		if (logger != null) {
+			final StringWriter sw = new StringWriter(2048);
+			final PrintWriter pw = new PrintWriter(sw);
+			pw.append("exception occurred on ").append(describe(target))
+			  .append(" after ").append(Long.toString(state.calls)).append(" invocations:\n")
+			  .append(incident.getThread()).append(" - ");
+			throwable.printStackTrace(pw);
+			pw.flush();
+			logger.log(sw.toString());
+		}
+	}
+
+	/**
+	 * Returns the objects currently monitored using this handler.
+	 * @return a snapshot of the monitored objects, never <code>null</code>.
+	 */
+	public List<Target> getTargets() {
+		final List<Map.Entry<Object, State>> entries = states.entries();
+		final List<Target> result = new ArrayList<Target>(entries.size());
+		for (Map.Entry<Object, State> entry : entries) {
+			final State state = entry.getValue();
+			result.add(new Target(describe(entry.getKey()), state.calls, state.lastIncident));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of invocations of the given monitored object.
+	 * @param target the (unproxied) monitored object
+	 * @return the number of invocations, zero if unknown
+	 */
+	public long getCalls(final Object target) {
+		final State state = states.get(target);
+		return state == null ? 0 : state.calls;
+	}
+
+	/**
+	 * Returns the most recent incident of the given monitored object.
+	 * @param target the (unproxied) monitored object
+	 * @return the most recent incident, or <code>null</code>.
+	 */
+	public Incident getLastIncident(final Object target) {
+		final State state = states.get(target);
+		return state == null ? null : state.lastIncident;
+	}
+
+	protected State state(final Object target) {
+		State result = states.get(target);
+		if (result == null) {
+			result = new State();
+			final State existing = states.putIfAbsent(target, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	protected static String describe(final Object target) {
+		return target.getClass().getName()+'@'+Integer.toHexString(System.identityHashCode(target));
+	}
+
+	/**
+	 * The state kept per monitored object; must not reference the object.
+	 */
+	protected static class State {
+
+		static final AtomicLongFieldUpdater<State> CALLS = AtomicLongFieldUpdater.newUpdater(State.class, "calls");
+
+		protected volatile long calls;
+		protected volatile Incident lastIncident;
+
+	}
+
+	/**
+	 * An exception which occurred on a monitored object.
+	 */
+	public static class Incident {
+
+		private final Throwable throwable;
+		private final String method;
+		private final String thread;
+		private final long time;
+
+		protected Incident(final Throwable aThrowable, final Method aMethod) {
+			throwable = aThrowable;
+			method = aMethod.getName();
+			thread = Thread.currentThread().toString();
+			time = System.currentTimeMillis();
+		}
+
+		/**
+		 * Returns the exception.
+		 * @return the exception, never <code>null</code>.
+		 */
+		public Throwable getThrowable() {
+			return throwable;
+		}
+
+		/**
+		 * Returns the name of the invoked method.
+		 * @return the name of the method, never <code>null</code>.
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Returns a description of the invoking thread.
+		 * @return the thread description, never <code>null</code>.
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Returns the time the exception occurred.
+		 * @return the time in milliseconds since the epoch.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		@Override
+		public String toString() {
+			return throwable+" in "+method+"() by "+thread;
+		}
+
+	}
+
+	/**
+	 * A monitored object as reported by {@link RegistryExceptionHandler#getTargets()}.
+	 */
+	public static class Target {
+
+		private final String description;
+		private final long calls;
+		private final Incident lastIncident;
+
+		protected Target(final String aDescription, final long callCount, final Incident incident) {
+			description = aDescription;
+			calls = callCount;
+			lastIncident = incident;
+		}
+
+		/**
+		 * Returns the class and identity hash code of the object.
+		 * @return the description of the object, never <code>null</code>.
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns the number of invocations.
+		 * @return the number of invocations.
+		 */
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * Returns the most recent incident.
+		 * @return the most recent incident, or <code>null</code>.
+		 */
+		public Incident getLastIncident() {
+			return lastIncident;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(64);
+			sb.append(description).append(": ").append(calls).append(" invocations");
+			if (lastIncident != null) {
+				sb.append(", last incident ").append(lastIncident);
+			}
+			return sb.toString();
+		}
+
+	}
+
+}
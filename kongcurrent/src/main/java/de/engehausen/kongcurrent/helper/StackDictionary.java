@@ -0,0 +1,222 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A concurrent store of stack traces in which each distinct stack is kept
+ * only once. Stacks are stored as a prefix trie, starting at the outermost
+ * frame (e.g. <code>Thread.run()</code>), so frames shared by several stacks
+ * are stored once as well. A stack is identified by an <code>int</code>;
+ * users of the dictionary keep this identifier instead of the stack.
+ * <p>Stored stacks are reference counted: each call to {@link #intern(StackTraceElement[], int)}
+ * must be matched by a call to {@link #release(int)} once the stack is no longer
+ * needed. Frames not belonging to any referenced stack are removed, so the memory
+ * used is bounded by the number of distinct call paths in use, not by the number
+ * of calls. Interning a stack which is already stored only changes the count of
+ * its innermost frame, so threads interning stacks with common outer frames do
+ * not contend on them.
+ * <p>Handlers should normally use the {@link #shared() shared} dictionary, so
+ * identical stacks recorded for different monitored objects are stored once.
+ */
+public final class StackDictionary {
+
+	private static final StackDictionary sharedInst = new StackDictionary();
+
+	private final Node root;
+	private final ConcurrentMap<Integer, Node> nodes;
+	private final AtomicInteger nextId;
+
+	/**
+	 * Creates an empty dictionary.
+	 */
+	public StackDictionary() {
+		root = new Node(0, null, null);
+		nodes = new ConcurrentHashMap<Integer, Node>();
+		nodes.put(Integer.valueOf(0), root);
+		nextId = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the dictionary shared by all handlers.
+	 * @return the shared dictionary, never <code>null</code>.
+	 */
+	public static StackDictionary shared() {
+		return sharedInst;
+	}
+
+	/**
+	 * Stores the given stack, unless already contained, and returns its identifier.
+	 * The stack is referenced until {@link #release(int)} is called with the identifier.
+	 * @param stack the stack, innermost frame first (as returned by {@link Throwable#getStackTrace()}); must not be <code>null</code>.
+	 * @param skip the number of innermost frames to leave out
+	 * @return the identifier of the stack.
+	 */
+	public int intern(final StackTraceElement[] stack, final int skip) {
+		// look up without acquiring the outer frames; a referenced innermost frame keeps them
+		Node current = root;
+		for (int i = stack.length; i-->skip && current != null; ) {
+			current = current.child(stack[i]);
+		}
+		if (current == root) {
+			return 0; // the empty stack
+		} else if (current != null && current.tryAcquire()) {
+			return current.id;
+		}
+		// missing or being removed: walk down holding a reference on each frame
+		current = root;
+		for (int i = stack.length; i-->skip; ) {
+			final Node child = acquireChild(current, stack[i]);
+			release(current);
+			current = child;
+		}
+		return current.id;
+	}
+
+	/**
+	 * Returns the stack with the given identifier.
+	 * @param id the identifier of a referenced stack
+	 * @return the stack, innermost frame first; never <code>null</code>.
+	 * @throws IllegalArgumentException if the stack is unknown
+	 */
+	public StackTraceElement[] resolve(final int id) {
+		Node node = node(id);
+		final StackTraceElement[] result = new StackTraceElement[node.depth];
+		for (int i = 0; node != root; node = node.parent) {
+			result[i++] = node.frame;
+		}
+		return result;
+	}
+
+	/**
+	 * Releases the reference to the stack with the given identifier.
+	 * After releasing the stack must not be resolved any more.
+	 * @param id the identifier of a referenced stack
+	 * @throws IllegalArgumentException if the stack is unknown
+	 */
+	public void release(final int id) {
+		release(node(id));
+	}
+
+	/**
+	 * Returns the number of frames currently stored.
+	 * @return the number of frames currently stored.
+	 */
+	public int size() {
+		return nodes.size() - 1;
+	}
+
+	private Node node(final int id) {
+		final Node result = nodes.get(Integer.valueOf(id));
+		if (result == null) {
+			throw new IllegalArgumentException("unknown stack "+id);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the child of the given node for the frame with one reference acquired.
+	 * The caller must hold a reference to the parent.
+	 */
+	private Node acquireChild(final Node parent, final StackTraceElement frame) {
+		final ConcurrentMap<StackTraceElement, Node> children = parent.children();
+		while (true) {
+			final Node existing = children.get(frame);
+			if (existing == null) {
+				final Node created = newNode(parent, frame);
+				Node.REFS.incrementAndGet(parent); // held by the new child
+				if (children.putIfAbsent(frame, created) == null) {
+					return created;
+				}
+				nodes.remove(Integer.valueOf(created.id), created);
+				Node.REFS.decrementAndGet(parent); // cannot drop to zero, the caller holds a reference
+			} else if (existing.tryAcquire()) {
+				return existing;
+			} else {
+				// unreferenced and about to be removed
+				children.remove(frame, existing);
+			}
+		}
+	}
+
+	private void release(final Node node) {
+		Node current = node;
+		while (current != root && Node.REFS.decrementAndGet(current) == 0) {
+			current.parent.children.remove(current.frame, current);
+			nodes.remove(Integer.valueOf(current.id), current);
+			current = current.parent;
+		}
+	}
+
+	private Node newNode(final Node parent, final StackTraceElement frame) {
+		while (true) {
+			// identifiers are only reused after wrapping around
+			final int id = nextId.incrementAndGet() & Integer.MAX_VALUE;
+			if (id != 0) {
+				final Node result = new Node(id, parent, frame);
+				if (nodes.putIfAbsent(Integer.valueOf(id), result) == null) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A frame in the trie; the path to the root is the stack. A frame is
+	 * referenced by the stacks ending in it and by each of its children, so
+	 * a referenced frame keeps the frames on its path to the root.
+	 */
+	private static final class Node {
+
+		static final AtomicIntegerFieldUpdater<Node> REFS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "refs");
+
+		final int id;
+		final int depth;
+		final Node parent;
+		final StackTraceElement frame;
+		volatile int refs;
+		private volatile ConcurrentMap<StackTraceElement, Node> children;
+
+		Node(final int anId, final Node aParent, final StackTraceElement aFrame) {
+			id = anId;
+			parent = aParent;
+			frame = aFrame;
+			depth = aParent == null ? 0 : aParent.depth + 1;
+			refs = 1;
+		}
+
+		Node child(final StackTraceElement aFrame) {
+			final ConcurrentMap<StackTraceElement, Node> map = children;
+			return map == null ? null : map.get(aFrame);
+		}
+
+		boolean tryAcquire() {
+			while (true) {
+				final int current = refs;
+				if (current == 0) {
+					return false;
+				} else if (REFS.compareAndSet(this, current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		ConcurrentMap<StackTraceElement, Node> children() {
+			ConcurrentMap<StackTraceElement, Node> result = children;
+			if (result == null) {
+				synchronized (this) {
+					result = children;
+					if (result == null) {
+						result = new ConcurrentHashMap<StackTraceElement, Node>(4);
+						children = result;
+					}
+				}
+			}
+			return result;
+		}
+
+	}
+
+}
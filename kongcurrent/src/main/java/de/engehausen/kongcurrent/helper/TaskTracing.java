@@ -0,0 +1,390 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import de.engehausen.kongcurrent.ContextCapture;
+
+/**
+ * Traces work submitted to executors back to the code that submitted it.
+ * The stacks recorded for callers of a monitored object end in the worker
+ * of the executor that ran the task; they do not show who submitted the
+ * task. Executors wrapped by {@link #trace(ExecutorService)} or {@link #trace(Executor)}
+ * record a {@link Submission} for each task, which can be recorded with each
+ * invocation of a monitored object by using the {@link #submissionCapture()}
+ * with a handler, e.g.:
+ * <pre>ExecutorService executor = TaskTracing.trace(Executors.newFixedThreadPool(4));
+ *List&lt;String&gt; monitoredList = Monitor.monitor(myList, DefaultDescriptions.&lt;String&gt;listDescription(),
+ *    new DefaultExceptionHandler(new DefaultLogger(), TaskTracing.submissionCapture(), true));</pre>
+ * The report then shows for each caller in which task the object was accessed
+ * and where that task was submitted from; submissions from within traced tasks
+ * are chained; of long chains (e.g. tasks resubmitting themselves) only the latest
+ * {@value #MAX_CHAIN} submissions and the first one are kept. The same works for <code>CompletableFuture</code> stages when a traced
+ * executor is passed to the asynchronous methods.
+ * <p>Parallel streams fork their work to a fork-join pool internally. Running the
+ * stream through {@link #traceParallel(Runnable)} (for the common pool) or inside
+ * a task submitted to a traced <code>ForkJoinPool</code> attributes accesses from the
+ * workers of the pool to the originating call.
+ * <p>The stack of the submitting thread is recorded for each task by filling in
+ * the stack trace of a <code>Throwable</code>, which walks the whole stack of the
+ * thread; this costs in proportion to the depth of the stack on every submission.
+ * Only the decoding of the stack into <code>StackTraceElement</code>s is deferred
+ * until a submission is reported.
+ */
+public final class TaskTracing {
+
+	/** the maximum number of submissions kept in a chain, see {@link Submission#getParent()} */
+	public static final int MAX_CHAIN = 8;
+
+	private static final ThreadLocal<Submission> CURRENT = new ThreadLocal<Submission>();
+	private static final Map<ForkJoinPool, Set<Submission>> ACTIVE = new ConcurrentHashMap<ForkJoinPool, Set<Submission>>();
+	private static final String[] SKIPPED = { TaskTracing.class.getName()+'$', "java.util.concurrent.", "java.util.stream." };
+
+	private static final ContextCapture submissionCaptureInst = new ContextCapture() {
+		@Override
+		public Object capture() {
+			return currentSubmission();
+		}
+	};
+
+	private TaskTracing() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Wraps the given executor service so that the submission site of each task is recorded.
+	 * @param executorService the executor service to wrap, must not be <code>null</code>
+	 * @return the wrapped executor service, never <code>null</code>
+	 */
+	public static ExecutorService trace(final ExecutorService executorService) {
+		return new TracingExecutorService(executorService);
+	}
+
+	/**
+	 * Wraps the given executor so that the submission site of each task is recorded.
+	 * @param executor the executor to wrap, must not be <code>null</code>
+	 * @return the wrapped executor, never <code>null</code>
+	 */
+	public static Executor trace(final Executor executor) {
+		return new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				executor.execute(trace(command));
+			}
+		};
+	}
+
+	/**
+	 * Wraps the given task so that it runs with the current call as its submission site.
+	 * @param task the task to wrap, must not be <code>null</code>
+	 * @return the wrapped task, never <code>null</code>
+	 */
+	public static Runnable trace(final Runnable task) {
+		final Submission submission = new Submission(CURRENT.get());
+		return new Runnable() {
+			@Override
+			public void run() {
+				runAs(submission, task);
+			}
+		};
+	}
+
+	/**
+	 * Wraps the given task so that it runs with the current call as its submission site.
+	 * @param task the task to wrap, must not be <code>null</code>
+	 * @param <V> the result type of the task
+	 * @return the wrapped task, never <code>null</code>
+	 */
+	public static <V> Callable<V> trace(final Callable<V> task) {
+		final Submission submission = new Submission(CURRENT.get());
+		return new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				final Submission previous = enter(submission);
+				try {
+					return task.call();
+				} finally {
+					exit(submission, previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Runs the given code, typically a parallel stream, in the current thread.
+	 * Accesses from workers of the common fork-join pool while the code runs
+	 * are attributed to the current call.
+	 * @param body the code to run, must not be <code>null</code>
+	 */
+	public static void traceParallel(final Runnable body) {
+		final Submission submission = new Submission(CURRENT.get());
+		final Submission previous = enter(submission);
+		register(ForkJoinPool.commonPool(), submission);
+		try {
+			body.run();
+		} finally {
+			unregister(ForkJoinPool.commonPool(), submission);
+			exit(submission, previous);
+		}
+	}
+
+	/**
+	 * Returns a context capture which records the submission of the task the
+	 * current thread is running.
+	 * @return a context capture, never <code>null</code>
+	 */
+	public static ContextCapture submissionCapture() {
+		return submissionCaptureInst;
+	}
+
+	/**
+	 * Returns the submission of the task the current thread is running.
+	 * For workers of a fork-join pool without a traced task of their own
+	 * these are the submissions active in the pool: a single one if only one
+	 * is active, a list if several are.
+	 * @return the submission, a list of submissions or <code>null</code> if unknown.
+	 */
+	public static Object currentSubmission() {
+		final Submission result = CURRENT.get();
+		if (result == null) {
+			final Thread thread = Thread.currentThread();
+			if (thread instanceof ForkJoinWorkerThread) {
+				final Set<Submission> active = ACTIVE.get(((ForkJoinWorkerThread) thread).getPool());
+				if (active != null) {
+					final List<Submission> list = new ArrayList<Submission>(active);
+					if (list.size() == 1) {
+						return list.get(0);
+					} else if (!list.isEmpty()) {
+						return list;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void runAs(final Submission submission, final Runnable task) {
+		final Submission previous = enter(submission);
+		try {
+			task.run();
+		} finally {
+			exit(submission, previous);
+		}
+	}
+
+	private static Submission enter(final Submission submission) {
+		final Submission previous = CURRENT.get();
+		CURRENT.set(submission);
+		final Thread thread = Thread.currentThread();
+		if (thread instanceof ForkJoinWorkerThread) {
+			register(((ForkJoinWorkerThread) thread).getPool(), submission);
+		}
+		return previous;
+	}
+
+	private static void exit(final Submission submission, final Submission previous) {
+		final Thread thread = Thread.currentThread();
+		if (thread instanceof ForkJoinWorkerThread) {
+			unregister(((ForkJoinWorkerThread) thread).getPool(), submission);
+		}
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+	private static void register(final ForkJoinPool pool, final Submission submission) {
+		ACTIVE.compute(pool, new BiFunction<ForkJoinPool, Set<Submission>, Set<Submission>>() {
+			@Override
+			public Set<Submission> apply(final ForkJoinPool key, final Set<Submission> value) {
+				final Set<Submission> result = value == null ? ConcurrentHashMap.<Submission>newKeySet() : value;
+				result.add(submission);
+				return result;
+			}
+		});
+	}
+
+	private static void unregister(final ForkJoinPool pool, final Submission submission) {
+		ACTIVE.computeIfPresent(pool, new BiFunction<ForkJoinPool, Set<Submission>, Set<Submission>>() {
+			@Override
+			public Set<Submission> apply(final ForkJoinPool key, final Set<Submission> value) {
+				value.remove(submission);
+				return value.isEmpty() ? null : value;
+			}
+		});
+	}
+
+	/**
+	 * The site a task was submitted from.
+	 */
+	public static class Submission {
+
+		protected final Submission parent;
+		protected final String thread;
+		protected final Throwable site;
+		/** the number of submissions this one descends from, including dropped ones */
+		protected final int depth;
+		/** the number of submissions kept in the chain above this one */
+		private final int links;
+
+		/**
+		 * Records the current call as submission site.
+		 * @param aParent the submission of the task submitting, may be <code>null</code>
+		 */
+		protected Submission(final Submission aParent) {
+			// the stack is captured in the internal form of the JVM and only decoded on demand
+			this(Thread.currentThread().getName(), new Throwable(), aParent == null ? null : aParent.attachable(), aParent == null ? 0 : aParent.depth + 1);
+		}
+
+		private Submission(final String aThread, final Throwable aSite, final Submission aParent, final int aDepth) {
+			parent = aParent;
+			thread = aThread;
+			site = aSite;
+			depth = aDepth;
+			links = aParent == null ? 0 : aParent.links + 1;
+		}
+
+		/**
+		 * Returns the submission of the task which submitted this task. Chains
+		 * are limited to {@link TaskTracing#MAX_CHAIN} submissions: beyond that the
+		 * parent of the oldest kept submission is the first submission of the
+		 * chain, i.e. the submissions in between are dropped.
+		 * @return the parent submission, or <code>null</code>
+		 */
+		public Submission getParent() {
+			return parent;
+		}
+
+		/**
+		 * Returns the number of submissions this one descends from, including
+		 * those dropped from the chain.
+		 * @return the depth of the submission, 0 for a submission outside of traced tasks
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * Returns this submission to be used as parent, or a copy attached
+		 * directly to the first submission if the chain is full.
+		 */
+		private Submission attachable() {
+			if (links < MAX_CHAIN - 1) {
+				return this;
+			}
+			Submission root = parent;
+			while (root.parent != null) {
+				root = root.parent;
+			}
+			return new Submission(thread, site, root, depth);
+		}
+
+		/**
+		 * Returns the stack of the submitting thread, starting at the
+		 * first frame not belonging to an executor.
+		 * @return the stack of the submitting thread
+		 */
+		public StackTraceElement[] getStackTrace() {
+			final StackTraceElement[] elements = site.getStackTrace();
+			int start = 0;
+			while (start < elements.length - 1 && skipped(elements[start].getClassName())) {
+				start++;
+			}
+			final StackTraceElement[] result = new StackTraceElement[elements.length - start];
+			System.arraycopy(elements, start, result, 0, result.length);
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(128);
+			Submission submission = this;
+			while (true) {
+				final StackTraceElement[] elements = submission.getStackTrace();
+				sb.append("task submitted from ");
+				if (elements.length > 0) {
+					sb.append(elements[0]);
+				}
+				sb.append(" by ").append(submission.thread);
+				final Submission next = submission.parent;
+				if (next == null) {
+					return sb.toString();
+				}
+				sb.append(" <- ");
+				if (submission.depth - next.depth > 1) {
+					sb.append("... (").append(submission.depth - next.depth - 1).append(" dropped) <- ");
+				}
+				submission = next;
+			}
+		}
+
+		private static boolean skipped(final String className) {
+			if (TaskTracing.class.getName().equals(className)) {
+				return true;
+			}
+			for (String prefix : SKIPPED) {
+				if (className.startsWith(prefix)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * Executor service wrapper tracing each task.
+	 */
+	private static class TracingExecutorService extends AbstractExecutorService {
+
+		private final ExecutorService delegate;
+
+		public TracingExecutorService(final ExecutorService executorService) {
+			delegate = executorService;
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			delegate.execute(trace(command));
+		}
+
+		@Override
+		public void shutdown() {
+			delegate.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return delegate.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return delegate.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return delegate.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+			return delegate.awaitTermination(timeout, unit);
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+package de.engehausen.kongcurrent.helper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Helper methods describing threads. Virtual threads are detected
+ * reflectively, so this also works on JDKs without virtual threads.
+ */
+final class Threads {
+
+	private static final String VIRTUAL = "virtual";
+	private static final String PLATFORM = "platform";
+
+	private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+	private Threads() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns the identifier of the thread.
+	 * @param thread the thread, must not be <code>null</code>
+	 * @return the identifier of the thread.
+	 */
+	@SuppressWarnings("deprecation")
+	static long id(final Thread thread) {
+		// same value as Thread.threadId() on newer JDKs
+		return thread.getId();
+	}
+
+	/**
+	 * Checks whether the given thread is a virtual thread.
+	 * @param thread the thread, must not be <code>null</code>
+	 * @return <code>true</code> if the thread is virtual.
+	 */
+	static boolean isVirtual(final Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		} else {
+			try {
+				return (boolean) IS_VIRTUAL.invokeExact(thread);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	/**
+	 * Returns the carrier thread description of a virtual thread.
+	 * The description is taken from the string representation of the thread,
+	 * e.g. <code>VirtualThread[#21]/runnable@ForkJoinPool-1-worker-1</code>.
+	 * @param description the string representation of a virtual thread, must not be <code>null</code>
+	 * @return the carrier thread description, or <code>null</code> if the thread is not mounted.
+	 */
+	static String carrier(final String description) {
+		final int idx = description.lastIndexOf('@');
+		return idx < 0 ? null : description.substring(idx+1);
+	}
+
+	/**
+	 * Returns a key grouping similar threads, i.e. threads of the same type and
+	 * of the same executor or pool. Digits at the end of thread names (e.g.
+	 * <code>pool-1-thread-3</code>) are replaced by an asterisk.
+	 * @param thread the thread, must not be <code>null</code>
+	 * @param description the string representation of the thread, must not be <code>null</code>
+	 * @return a key describing the group, never <code>null</code>.
+	 */
+	static String group(final Thread thread, final String description) {
+		final boolean virtual = isVirtual(thread);
+		return group(virtual, thread.getName(), virtual ? carrier(description) : null);
+	}
+
+	/**
+	 * Returns a key grouping similar threads, see {@link #group(Thread, String)}.
+	 * @param virtual <code>true</code> for a virtual thread
+	 * @param name the name of the thread, must not be <code>null</code>
+	 * @param carrier the carrier thread description of a virtual thread, may be <code>null</code>
+	 * @return a key describing the group, never <code>null</code>.
+	 */
+	static String group(final boolean virtual, final String name, final String carrier) {
+		final StringBuilder sb = new StringBuilder(48);
+		if (virtual) {
+			sb.append(VIRTUAL);
+			if (carrier != null) {
+				sb.append(" on ").append(wildcard(carrier));
+			}
+		} else {
+			sb.append(PLATFORM).append(' ').append(wildcard(name));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the kind of the thread.
+	 * @param thread the thread, must not be <code>null</code>
+	 * @return <code>"virtual"</code> or <code>"platform"</code>
+	 */
+	static String kind(final Thread thread) {
+		return isVirtual(thread) ? VIRTUAL : PLATFORM;
+	}
+
+	static String wildcard(final String name) {
+		int end = name.length();
+		while (end > 0 && Character.isDigit(name.charAt(end-1))) {
+			end--;
+		}
+		return end == name.length() ? name : name.substring(0, end)+'*';
+	}
+
+	private static MethodHandle findIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,317 @@
+package de.engehausen.kongcurrent.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.MonitorBase;
+import de.engehausen.kongcurrent.Monitored;
+
+/**
+ * Generates the monitored wrapper of each interface annotated with {@link Monitored}.
+ * The wrapper of the interface <code>Registry</code> is the class <code>Registry$$Monitored</code>
+ * in the same package; it extends {@link MonitorBase} and implements each method of the
+ * interface (including the inherited and the default methods) by invoking the method
+ * of the monitored object directly:
+ * <pre>public java.util.Set&lt;java.lang.String&gt; names() {
+ *    final java.util.Set&lt;java.lang.String&gt; result;
+ *    try {
+ *        before(M0, null);
+ *        result = target.names();
+ *    } catch (final Throwable t) {
+ *        failed(t, M0, null);
+ *        throw t;
+ *    } finally {
+ *        after(M0, null);
+ *    }
+ *    return (java.util.Set&lt;java.lang.String&gt;) returned(M0, result);
+ *}</pre>
+ * The methods passed to the {@link de.engehausen.kongcurrent.ExceptionHandler} are looked
+ * up once, when the wrapper class is initialized. The arguments of methods with parameters
+ * are only put into an array if the handler needs them (see {@link de.engehausen.kongcurrent.ArgumentsAware}). The methods of <code>Object</code> are
+ * inherited from {@link MonitorBase}.
+ */
+public class MonitoredProcessor extends AbstractProcessor {
+
+	private static final String BASE = MonitorBase.class.getName();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(Monitored.class.getName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.INTERFACE) {
+					error(element, "only interfaces can be @Monitored");
+				} else if (element.getModifiers().contains(Modifier.PRIVATE)) {
+					error(element, "a @Monitored interface must not be private");
+				} else {
+					try {
+						generate((TypeElement) element);
+					} catch (IOException e) {
+						error(element, "cannot write the monitored wrapper: "+e.getMessage());
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the wrapper of the given interface.
+	 * @param type the interface, must not be <code>null</code>
+	 * @throws IOException in case of error
+	 */
+	protected void generate(final TypeElement type) throws IOException {
+		final Elements elements = processingEnv.getElementUtils();
+		final String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		final String binaryName = elements.getBinaryName(type).toString();
+		final String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length()+1))+Monitor.WRAPPER_SUFFIX;
+		final String interfaceName = type.getQualifiedName().toString();
+		final String typeParameters = typeParameters(type.getTypeParameters());
+		final String interfaceType = type.asType().toString();
+
+		final StringBuilder sb = new StringBuilder(4096);
+		if (packageName.length() > 0) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+		sb.append("/**\n * The monitored wrapper of {@link ").append(interfaceName).append("}, generated by the ")
+			.append(getClass().getName()).append(".\n */\n");
+		sb.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		sb.append("public final class ").append(simpleName).append(typeParameters)
+			.append(" extends ").append(BASE).append('<').append(interfaceType).append('>')
+			.append(" implements ").append(interfaceType).append(" {\n\n");
+
+		final List<ExecutableElement> methods = methods(type);
+		for (int i = 0; i < methods.size(); i++) {
+			final ExecutableElement method = methods.get(i);
+			sb.append("\tprivate static final java.lang.reflect.Method M").append(i).append(" = method(")
+				.append(interfaceName).append(".class, \"").append(method.getSimpleName()).append('"');
+			for (VariableElement parameter : method.getParameters()) {
+				sb.append(", ").append(erasure(parameter.asType())).append(".class");
+			}
+			sb.append(");\n");
+		}
+		sb.append('\n');
+
+		sb.append("\tpublic ").append(simpleName).append("(final ").append(interfaceType)
+			.append(" aTarget, final de.engehausen.kongcurrent.Description<?> aDescription, final de.engehausen.kongcurrent.ExceptionHandler aHandler, final ")
+			.append(BASE).append("<?> aParent) {\n")
+			.append("\t\tsuper(aTarget, aDescription, aHandler, aParent);\n")
+			.append("\t}\n\n");
+		sb.append("\t@Override\n\tpublic boolean equals(final Object other) {\n\t\treturn equals(other, this);\n\t}\n\n");
+
+		final DeclaredType declaredType = (DeclaredType) type.asType();
+		for (int i = 0; i < methods.size(); i++) {
+			generate(sb, "M"+i, methods.get(i), (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, methods.get(i)));
+		}
+		sb.append("}\n");
+
+		final Writer writer = processingEnv.getFiler().createSourceFile(packageName.length() == 0 ? simpleName : packageName+'.'+simpleName, type).openWriter();
+		try {
+			writer.write(sb.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Appends the implementation of a method.
+	 * @param sb the source to append to
+	 * @param constant the name of the constant holding the method
+	 * @param method the method
+	 * @param methodType the type of the method as a member of the interface
+	 */
+	protected void generate(final StringBuilder sb, final String constant, final ExecutableElement method, final ExecutableType methodType) {
+		final List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+		final TypeMirror returnType = methodType.getReturnType();
+		final TypeKind returnKind = returnType.getKind();
+		final String args = parameterTypes.isEmpty() ? "null" : "args";
+
+		sb.append("\t@Override\n\tpublic ");
+		if (!methodType.getTypeVariables().isEmpty()) {
+			sb.append(typeVariables(methodType.getTypeVariables())).append(' ');
+		}
+		sb.append(returnType).append(' ').append(method.getSimpleName()).append('(');
+		final StringBuilder call = new StringBuilder(64);
+		call.append("target.").append(method.getSimpleName()).append('(');
+		for (int i = 0; i < parameterTypes.size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+				call.append(", ");
+			}
+			String parameterType = parameterTypes.get(i).toString();
+			if (method.isVarArgs() && i == parameterTypes.size()-1) {
+				parameterType = parameterType.substring(0, parameterType.length()-2)+"...";
+			}
+			sb.append("final ").append(parameterType).append(" p").append(i);
+			call.append('p').append(i);
+		}
+		call.append(')');
+		sb.append(')');
+		if (!methodType.getThrownTypes().isEmpty()) {
+			sb.append(" throws ");
+			for (int i = 0; i < methodType.getThrownTypes().size(); i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(methodType.getThrownTypes().get(i));
+			}
+		}
+		sb.append(" {\n");
+		if (!parameterTypes.isEmpty()) {
+			sb.append("\t\tfinal Object[] args = arguments ? new Object[] { ");
+			for (int i = 0; i < parameterTypes.size(); i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append('p').append(i);
+			}
+			sb.append(" } : null;\n");
+		}
+		if (returnKind != TypeKind.VOID) {
+			sb.append("\t\tfinal ").append(returnType).append(" result;\n");
+		}
+		sb.append("\t\ttry {\n\t\t\tbefore(").append(constant).append(", ").append(args).append(");\n\t\t\t");
+		if (returnKind != TypeKind.VOID) {
+			sb.append("result = ");
+		}
+		sb.append(call).append(";\n");
+		sb.append("\t\t} catch (final Throwable t) {\n\t\t\tfailed(t, ").append(constant).append(", ").append(args).append(");\n\t\t\tthrow t;\n");
+		sb.append("\t\t} finally {\n\t\t\tafter(").append(constant).append(", ").append(args).append(");\n\t\t}\n");
+		if (returnKind == TypeKind.VOID) {
+			sb.append("\t\treturned(").append(constant).append(");\n");
+		} else if (returnKind == TypeKind.BOOLEAN) {
+			sb.append("\t\treturn returned(").append(constant).append(", result);\n");
+		} else if (returnKind.isPrimitive()) {
+			sb.append("\t\treturn result;\n");
+		} else {
+			sb.append("\t\treturn (").append(returnType).append(") returned(").append(constant).append(", result);\n");
+		}
+		sb.append("\t}\n\n");
+	}
+
+	/**
+	 * Collects the methods to implement, i.e. the declared and inherited
+	 * instance methods of the interface except the methods of <code>Object</code>;
+	 * of methods with the same signature the one with the most specific
+	 * return type is kept.
+	 * @param type the interface
+	 * @return the methods to implement, never <code>null</code>
+	 */
+	protected List<ExecutableElement> methods(final TypeElement type) {
+		final Types types = processingEnv.getTypeUtils();
+		final DeclaredType declaredType = (DeclaredType) type.asType();
+		final Map<String, ExecutableElement> result = new LinkedHashMap<String, ExecutableElement>();
+		for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+			if (member.getKind() == ElementKind.METHOD && member.getEnclosingElement().getKind() == ElementKind.INTERFACE
+					&& !member.getModifiers().contains(Modifier.STATIC) && !member.getModifiers().contains(Modifier.PRIVATE)) {
+				final ExecutableElement method = (ExecutableElement) member;
+				final String signature = signature(method);
+				if (!isObjectMethod(signature)) {
+					final ExecutableElement existing = result.get(signature);
+					if (existing == null || types.isSubtype(
+							types.erasure(((ExecutableType) types.asMemberOf(declaredType, method)).getReturnType()),
+							types.erasure(((ExecutableType) types.asMemberOf(declaredType, existing)).getReturnType()))) {
+						result.put(signature, method);
+					}
+				}
+			}
+		}
+		return new ArrayList<ExecutableElement>(result.values());
+	}
+
+	private String signature(final ExecutableElement method) {
+		final StringBuilder sb = new StringBuilder(32);
+		sb.append(method.getSimpleName()).append('(');
+		for (VariableElement parameter : method.getParameters()) {
+			sb.append(erasure(parameter.asType())).append(';');
+		}
+		return sb.append(')').toString();
+	}
+
+	private boolean isObjectMethod(final String signature) {
+		return "equals(java.lang.Object;)".equals(signature) || "hashCode()".equals(signature) || "toString()".equals(signature);
+	}
+
+	private String erasure(final TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String typeParameters(final List<? extends TypeParameterElement> parameters) {
+		if (parameters.isEmpty()) {
+			return "";
+		}
+		final StringBuilder sb = new StringBuilder(32);
+		sb.append('<');
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			bounded(sb, parameters.get(i).getSimpleName().toString(), parameters.get(i).getBounds());
+		}
+		return sb.append('>').toString();
+	}
+
+	private String typeVariables(final List<? extends TypeVariable> variables) {
+		final StringBuilder sb = new StringBuilder(32);
+		sb.append('<');
+		for (int i = 0; i < variables.size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			final TypeParameterElement parameter = (TypeParameterElement) variables.get(i).asElement();
+			bounded(sb, variables.get(i).toString(), parameter.getBounds());
+		}
+		return sb.append('>').toString();
+	}
+
+	private void bounded(final StringBuilder sb, final String name, final List<? extends TypeMirror> bounds) {
+		sb.append(name);
+		boolean first = true;
+		for (TypeMirror bound : bounds) {
+			if (!"java.lang.Object".equals(bound.toString())) {
+				sb.append(first ? " extends " : " & ").append(bound);
+				first = false;
+			}
+		}
+	}
+
+	private void error(final Element element, final String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+}
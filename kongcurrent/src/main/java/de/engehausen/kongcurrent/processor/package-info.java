@@ -0,0 +1,7 @@
+/**
+ * Provides the annotation processor generating the monitored wrappers of
+ * interfaces annotated with {@link de.engehausen.kongcurrent.Monitored}.
+ * The processor is registered as a service and runs whenever the library
+ * is on the classpath of the compiler.
+ */
+package de.engehausen.kongcurrent.processor;
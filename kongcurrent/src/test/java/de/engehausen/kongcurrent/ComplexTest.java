@@ -8,90 +8,48 @@ import org.junit.Test;
 
 import de.engehausen.kongcurrent.helper.DefaultDescriptions;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.StressHarness;
 
 public class ComplexTest extends AbstractMonitorTest {
 
 	/**
 	 * Tests handling an exception occurring under concurrent load.
+	 * @throws InterruptedException if interrupted
 	 */
 	@Test
-	public void testHandling() {
+	public void testHandling() throws InterruptedException {
 		final Description<List<String>> desc = DefaultDescriptions.<String>listDescription();
 
-		final List<String> list = buildList("one", "two", null, "three");
-		final List<String> monitored = Monitor.monitor(list, desc, new DefaultExceptionHandler(logger));
-		
-		final Thread threads[] = new Thread[2];
-		final Executor executors[] = new Executor[threads.length];
-		
-		for (int i = threads.length; i-->0; ) {
-			executors[i] = new Executor(monitored);
-			threads[i] = new Thread(executors[i]);
-		}
-		for (Thread thread : threads) {
-			thread.start();
-		}
-		int i = 0;
-		for (i = 0; i < 10; i++) {
-			try {
-				Thread.sleep(500L);
-			} catch (InterruptedException ie) {
-				i--;
-			}
-			// try to corrupt the internal state of the list by concurrently adding to it
-			// while other threads iterate over it
-			monitored.add(Integer.toString(i));
-			int count = 0;
-			for (Thread thread : threads) {
-				if (thread.isAlive()) {
-					count++;
+		// try to corrupt the internal state of the list by concurrently adding to it
+		// while other threads iterate over it
+		final StressHarness.Result result = new StressHarness<List<String>>(5000)
+			.threads(3)
+			.operation(1, new StressHarness.Operation<List<String>>() {
+				@Override
+				public void perform(final List<String> list) {
+					int temp = 0;
+					for (String str : list) {
+						temp += (str==null)?0:str.length();
+					}
 				}
-			}
-			if (count < threads.length) {
-				break;
-			}
-		}
-		assertTrue(i < 10);
-		for (Executor e : executors) {
-			e.cancel();
-		}
-		for (Thread thread : threads) {
-			try {
-				thread.join();
-			} catch (InterruptedException ie) {
-				ie.printStackTrace();
-			}
-		}
+			})
+			.threads(1)
+			.operation(1, new StressHarness.Operation<List<String>>() {
+				@Override
+				public void perform(final List<String> list) {
+					list.add("four");
+				}
+			})
+			.run(10, new StressHarness.Factory<List<String>>() {
+				@Override
+				public List<String> create(final StressHarness.Detector detector) {
+					return Monitor.monitor(buildList("one", "two", null, "three"), desc, detector.around(new DefaultExceptionHandler(logger)));
+				}
+			});
+		assertTrue(result.toString(), result.getDetectionRate() > 0.5);
 		final String log = logger.toString();
 		assertTrue(log.contains(".add(Unknown Source)"));
 		assertTrue(log.contains("ConcurrentModificationException"));
-		
 	}
 
-	private static class Executor implements Runnable {
-		
-		private volatile boolean canceled;
-		
-		private final List<String> list;
-		
-		public Executor(final List<String> aList) {
-			list = aList;
-		}
-
-		@Override
-		public void run() {
-			while (!canceled) {
-				int temp = 0;
-				for (String str : list) {
-					temp += (str==null)?0:str.length();
-				}
-			}
-		}
-		
-		public void cancel() {
-			canceled = true;
-		}
-				
-	}
-	
 }
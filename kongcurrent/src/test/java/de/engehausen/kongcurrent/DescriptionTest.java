@@ -1,12 +1,21 @@
 package de.engehausen.kongcurrent;
 
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import de.engehausen.kongcurrent.helper.DefaultComparators;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.Recorder;
+
 public class DescriptionTest {
 
 	@Test
@@ -20,5 +29,114 @@ public class DescriptionTest {
 		Assert.assertFalse(desc1.equals(null));
 		Assert.assertTrue(desc1.hashCode() == desc2.hashCode());
 	}
-	
+
+	/**
+	 * Tests that descriptions differing only in their settings are not equal.
+	 * @throws NoSuchMethodException in case of error
+	 */
+	@Test
+	public void testSettingsEquality() throws NoSuchMethodException {
+		final Description<List<?>> plain = new Description<List<?>>(List.class);
+		final Description<List<?>> iterating = new Description<List<?>>(List.class);
+		iterating.setIterating(true);
+		Assert.assertFalse(plain.equals(iterating));
+		final Description<List<?>> creationOnly = new Description<List<?>>(List.class);
+		creationOnly.setCreationOnly(true);
+		Assert.assertFalse(plain.equals(creationOnly));
+		final Description<List<?>> writing = new Description<List<?>>(List.class);
+		writing.setWrite("add", Object.class);
+		Assert.assertFalse(plain.equals(writing));
+		final Description<List<?>> writing2 = new Description<List<?>>(List.class);
+		writing2.setWrite("add", Object.class);
+		Assert.assertEquals(writing, writing2);
+		Assert.assertEquals(writing.hashCode(), writing2.hashCode());
+		final Description<List<?>> cached = new Description<List<?>>(List.class);
+		cached.addDependant(DefaultDescriptions.listDescription(), "subList", int.class, int.class);
+		final Description<List<?>> uncached = new Description<List<?>>(List.class);
+		uncached.addDependant(DefaultDescriptions.listDescription(), "subList", int.class, int.class);
+		Assert.assertEquals(cached, uncached);
+		cached.setCached("subList", int.class, int.class);
+		Assert.assertFalse(cached.equals(uncached));
+		final Description<List<?>> streaming = new Description<List<?>>(List.class);
+		streaming.addDependant(DefaultDescriptions.spliteratorDescription(), "spliterator");
+		streaming.addDependant(DefaultDescriptions.streamDescription(), "stream");
+		final Description<List<?>> spliterated = new Description<List<?>>(List.class);
+		spliterated.addDependant(DefaultDescriptions.spliteratorDescription(), "spliterator");
+		spliterated.addDependant(DefaultDescriptions.streamDescription(), "stream");
+		spliterated.setSpliteratorStream("stream");
+		Assert.assertFalse(streaming.equals(spliterated));
+	}
+
+	@Test
+	public void testDerive() throws NoSuchMethodException {
+		final Description<Catalog> desc = Description.derive(Catalog.class);
+		Assert.assertSame(desc, Description.derive(Catalog.class));
+		Assert.assertSame(DefaultDescriptions.setDescription(), desc.getDescription(Catalog.class.getMethod("names")));
+		Assert.assertNull(desc.getDescription(Catalog.class.getMethod("snapshot")));
+		Assert.assertNull(desc.getDescription(Catalog.class.getMethod("task")));
+		Assert.assertNull(desc.getDescription(Catalog.class.getMethod("size")));
+		Assert.assertTrue(desc.getDescription(Catalog.class.getMethod("iterator")).isIterating());
+		final Description<Section> section = desc.getDescription(Catalog.class.getMethod("section", String.class));
+		Assert.assertSame(Description.derive(Section.class), section);
+		Assert.assertSame(desc, section.getDescription(Section.class.getMethod("catalog")));
+		Assert.assertSame(DefaultDescriptions.mapDescription(), section.getDescription(Section.class.getMethod("entries")));
+		Assert.assertNull(section.getDescription(Section.class.getMethod("copy")));
+		Assert.assertSame(DefaultDescriptions.listDescription(), Description.derive(List.class));
+		Assert.assertSame(DefaultComparators.listComparator(), Description.<Names>derive(Names.class).getComparator());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeriveClass() {
+		Description.derive(String.class);
+	}
+
+	@Test
+	public void testMonitorDerived() {
+		final Map<String, String> entries = new HashMap<String, String>();
+		final Section section = new Section() {
+			@Override
+			public Catalog catalog() {
+				return null;
+			}
+			@Override
+			public Map<String, String> entries() {
+				return entries;
+			}
+			@Override
+			public Unrelated copy() {
+				return null;
+			}
+		};
+		final Section monitored = Monitor.monitor(section, Description.<Section>derive(Section.class), new DefaultExceptionHandler(new Recorder()));
+		monitored.entries().put("one", "1");
+		Assert.assertTrue(Proxy.isProxyClass(monitored.entries().getClass()));
+		Assert.assertTrue(Proxy.isProxyClass(monitored.entries().keySet().iterator().getClass()));
+		Assert.assertEquals("1", entries.get("one"));
+	}
+
+	public interface Catalog {
+		Set<String> names();
+		@Unmonitored
+		List<String> snapshot();
+		Section section(String name);
+		Iterator<String> iterator();
+		int size();
+		Runnable task();
+	}
+
+	public interface Section {
+		Catalog catalog();
+		Map<String, String> entries();
+		Unrelated copy();
+	}
+
+	@Unmonitored
+	public interface Unrelated {
+		Catalog catalog();
+	}
+
+	public interface Names extends List<String> {
+		Names reversed(int unused);
+	}
+
 }
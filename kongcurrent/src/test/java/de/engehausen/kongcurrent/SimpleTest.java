@@ -7,17 +7,35 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.lang.reflect.Proxy;
 
 import org.junit.Test;
 
+import de.engehausen.kongcurrent.helper.CompositeExceptionHandler;
 import de.engehausen.kongcurrent.helper.DefaultDescriptions;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
 
@@ -96,6 +114,9 @@ public class SimpleTest extends AbstractMonitorTest {
 			fail("operation unexpectedly succeeded");
 		} catch (IllegalStateException e) {
 			assertTrue(true);
+		} catch (UnsupportedOperationException e) {
+			// newer JDKs reject the removal before checking the iterator state
+			assertTrue(true);
 		}
 		try {
 			final Iterator<String> i = readOnly.iterator();
@@ -125,6 +146,351 @@ public class SimpleTest extends AbstractMonitorTest {
 		}
 	}
 	
+	/**
+	 * Tests that the views of a monitored map are returned
+	 * as the same monitored object on repeated invocations.
+	 */
+	@Test
+	public void testCachedDependants() {
+		final Map<String, String> map = new HashMap<String, String>();
+		map.put("a", "b");
+		final Map<String, String> monitored = Monitor.monitor(map, DefaultDescriptions.<String, String>mapDescription(), new DefaultExceptionHandler(logger));
+		final Set<String> keys = monitored.keySet();
+		assertSame(keys, monitored.keySet());
+		assertSame(monitored.entrySet(), monitored.entrySet());
+		assertSame(monitored.values(), monitored.values());
+		assertFalse(keys == map.keySet()); //NOPMD must be monitored
+		assertFalse(keys.iterator() == keys.iterator()); //NOPMD not cached
+		assertEquals(map.keySet(), keys);
+	}
+
+	/**
+	 * Tests that monitored objects are not monitored twice and can be unwrapped.
+	 */
+	@Test
+	public void testMonitorTwice() {
+		final List<String> list = buildList("one");
+		final ExceptionHandler handler = new DefaultExceptionHandler(logger);
+		final List<String> monitored = Monitor.monitor(list, DefaultDescriptions.<String>listDescription(), handler);
+		assertSame(monitored, Monitor.monitor(monitored, DefaultDescriptions.<String>listDescription(), handler));
+		assertSame(list, Monitor.unwrap(monitored));
+		assertSame(list, Monitor.unwrap(list));
+		assertEquals(null, Monitor.unwrap(null));
+
+		final Collection<String> other = Monitor.monitor(monitored, DefaultDescriptions.<String>collectionDescription(), new DefaultExceptionHandler(logger));
+		assertFalse(other == monitored); //NOPMD
+		// the original list is monitored, not the proxy
+		assertSame(list, Monitor.unwrap(other));
+		assertTrue(other.contains("one"));
+		assertTrue(Monitor.unwrap(other.iterator()).getClass().getName().startsWith("java.util."));
+		final Collection<String> same = Monitor.monitor(monitored, DefaultDescriptions.<String>collectionDescription(), new CompositeExceptionHandler(handler));
+		assertSame(list, Monitor.unwrap(same));
+	}
+
+	/**
+	 * Tests that only the creation of iterators is recorded by the creation-only
+	 * descriptions, and that exceptions of the iterators are still handled.
+	 */
+	@Test
+	public void testCreationOnlyIterators() {
+		final List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		final List<String> methods = Collections.synchronizedList(new ArrayList<String>());
+		final List<Integer> monitored = Monitor.monitor(list, DefaultDescriptions.<Integer>listDescription(true), new DefaultExceptionHandler(logger) {
+			@Override
+			public void preInvoke(final Object target, final java.lang.reflect.Method method, final Object[] args) {
+				methods.add(method.getName());
+				super.preInvoke(target, method, args);
+			}
+		});
+		int sum = 0;
+		for (Integer value : monitored) {
+			sum += value.intValue();
+		}
+		assertEquals(499500, sum);
+		assertEquals(Collections.singletonList("iterator"), methods);
+
+		final Iterator<Integer> iterator = monitored.iterator();
+		assertTrue(Proxy.isProxyClass(iterator.getClass()));
+		iterator.next();
+		monitored.add(Integer.valueOf(-1));
+		ConcurrentModificationException failure = null;
+		try {
+			iterator.next();
+		} catch (ConcurrentModificationException e) {
+			failure = e;
+		}
+		assertNotNull("modification not detected", failure);
+		assertEquals(1, failure.getSuppressed().length);
+		final String output = logger.toString();
+		assertTrue(output, output.contains("ConcurrentModificationException"));
+		// the creation site of the iterator is reported, although the list was used since
+		assertTrue(output, output.contains("monitored object created here"));
+		assertTrue(output, output.contains(".iterator("));
+		assertEquals(3, methods.size());
+	}
+
+	/**
+	 * Tests that a write by another thread is reported when an open iterator
+	 * is used next, and that writes after the iteration completed are not.
+	 */
+	@Test
+	public void testModificationWhileIterating() throws InterruptedException {
+		final Map<String, String> map = new HashMap<String, String>();
+		map.put("one", "1");
+		map.put("two", "2");
+		final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+		final Map<String, String> monitored = Monitor.monitor(map, DefaultDescriptions.<String, String>mapDescription(true), new DefaultExceptionHandler(logger) {
+			@Override
+			public void handle(final Throwable throwable, final Object target, final java.lang.reflect.Method method, final Object[] args) {
+				reported.add(throwable);
+			}
+		});
+		final Iterator<?>[] iterator = new Iterator<?>[1];
+		final CountDownLatch opened = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				iterator[0] = monitored.keySet().iterator();
+				iterator[0].next();
+				opened.countDown();
+				try {
+					written.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				iterator[0].hasNext();
+			}
+		});
+		reader.start();
+		opened.await();
+		monitored.put("three", "3");
+		monitored.put("four", "4");
+		// nothing is reported until the iterator is used again
+		assertTrue(reported.isEmpty());
+		written.countDown();
+		reader.join();
+		assertEquals(1, reported.size());
+		assertTrue(reported.get(0) instanceof ConcurrentModificationException);
+		assertTrue(reported.get(0).getMessage(), reported.get(0).getMessage().contains("iterated by Thread["+reader.getName()+","));
+
+		// an exhausted iterator is closed
+		reported.clear();
+		final Thread exhausting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				iterator[0] = monitored.values().iterator();
+				while (iterator[0].hasNext()) {
+					iterator[0].next();
+				}
+			}
+		});
+		exhausting.start();
+		exhausting.join();
+		monitored.remove("four");
+		assertTrue(reported.isEmpty());
+		// writes by the iterating thread itself are left to the collection
+		final Iterator<String> own = monitored.keySet().iterator();
+		monitored.remove("three");
+		assertTrue(reported.isEmpty());
+		assertNotNull(own);
+	}
+
+	/**
+	 * Tests that a write by another thread is reported even if the iterating
+	 * thread wrote itself before it used its iterator again, and that the
+	 * report names the threads with open iterators.
+	 */
+	@Test
+	public void testForeignThenOwnWrite() throws InterruptedException {
+		final Map<String, String> map = new HashMap<String, String>();
+		map.put("one", "1");
+		map.put("two", "2");
+		final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+		final Map<String, String> monitored = Monitor.monitor(map, DefaultDescriptions.<String, String>mapDescription(true), new DefaultExceptionHandler(logger) {
+			@Override
+			public void handle(final Throwable throwable, final Object target, final java.lang.reflect.Method method, final Object[] args) {
+				reported.add(throwable);
+			}
+		});
+		final CountDownLatch opened = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final Iterator<String> iterator = monitored.keySet().iterator();
+				iterator.next();
+				opened.countDown();
+				try {
+					written.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				monitored.put("four", "4");
+				iterator.hasNext();
+			}
+		});
+		reader.start();
+		opened.await();
+		monitored.put("three", "3");
+		written.countDown();
+		reader.join();
+		assertEquals(1, reported.size());
+		final String message = reported.get(0).getMessage();
+		assertTrue(message, message.startsWith("modified by "+Thread.currentThread()+" while iterated by Thread["+reader.getName()+","));
+		assertTrue(message, message.contains("open iterators: [Thread["+reader.getName()+","));
+	}
+
+	/**
+	 * Tests that an iterator abandoned early by correctly locked code does
+	 * not cause reports of later writes by other threads.
+	 */
+	@Test
+	public void testAbandonedIterator() throws InterruptedException {
+		final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+		final List<String> monitored = Monitor.monitor(new ArrayList<String>(buildList("a", "b", "c")), DefaultDescriptions.<String>listDescription(true), new DefaultExceptionHandler(logger) {
+			@Override
+			public void handle(final Throwable throwable, final Object target, final java.lang.reflect.Method method, final Object[] args) {
+				reported.add(throwable);
+			}
+		});
+		synchronized (monitored) {
+			for (String value : monitored) {
+				if ("b".equals(value)) {
+					break;
+				}
+			}
+		}
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (monitored) {
+					monitored.add("d");
+				}
+			}
+		});
+		writer.start();
+		writer.join();
+		assertTrue(reported.toString(), reported.isEmpty());
+		assertEquals(4, monitored.size());
+	}
+
+	/**
+	 * Tests the views of monitored navigable maps and deques.
+	 */
+	@Test
+	public void testNavigableMapAndDeque() {
+		final NavigableMap<Integer, String> map = new TreeMap<Integer, String>();
+		final NavigableMap<Integer, String> monitored = Monitor.monitor(map, DefaultDescriptions.<Integer, String>navigableMapDescription(), new DefaultExceptionHandler(logger));
+		for (int i = 0; i < 10; i++) {
+			monitored.put(Integer.valueOf(i), Integer.toString(i));
+		}
+		final NavigableMap<Integer, String> head = monitored.headMap(Integer.valueOf(5), false);
+		assertTrue(Proxy.isProxyClass(head.getClass()));
+		assertEquals(5, head.size());
+		assertTrue(Proxy.isProxyClass(head.descendingMap().navigableKeySet().iterator().getClass()));
+		assertEquals(Integer.valueOf(4), head.descendingMap().firstKey());
+		assertSame(monitored.descendingMap(), monitored.descendingMap());
+		assertTrue(Proxy.isProxyClass(monitored.tailMap(Integer.valueOf(5)).getClass()));
+
+		final Deque<Integer> deque = Monitor.monitor(new ArrayDeque<Integer>(), DefaultDescriptions.<Integer>dequeDescription(), new DefaultExceptionHandler(logger));
+		deque.push(Integer.valueOf(1));
+		deque.offerLast(Integer.valueOf(2));
+		final Iterator<Integer> descending = deque.descendingIterator();
+		assertTrue(Proxy.isProxyClass(descending.getClass()));
+		assertEquals(Integer.valueOf(2), descending.next());
+		assertEquals(Integer.valueOf(1), deque.pop());
+	}
+
+	/**
+	 * Tests that streams and spliterators of monitored collections are monitored,
+	 * and that parts of a parallel stream record the threads using them.
+	 */
+	@Test
+	public void testStreams() throws InterruptedException, ExecutionException {
+		final List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		final Set<Thread> traversing = ConcurrentHashMap.newKeySet();
+		final List<Integer> monitored = Monitor.monitor(list, DefaultDescriptions.<Integer>listDescription(), new DefaultExceptionHandler(logger) {
+			@Override
+			public void preInvoke(final Object target, final java.lang.reflect.Method method, final Object[] args) {
+				threads.add(Thread.currentThread());
+				if (target instanceof Spliterator<?>) {
+					traversing.add(Thread.currentThread());
+				}
+			}
+		});
+		final Predicate<Integer> even = new Predicate<Integer>() {
+			@Override
+			public boolean test(final Integer value) {
+				return value.intValue() % 2 == 0;
+			}
+		};
+		assertTrue(Proxy.isProxyClass(monitored.stream().getClass()));
+		assertTrue(Proxy.isProxyClass(monitored.stream().filter(even).getClass()));
+		assertEquals(5000, monitored.stream().filter(even).count());
+		assertEquals(5000, monitored.parallelStream().filter(even).mapToInt(new java.util.function.ToIntFunction<Integer>() {
+			@Override
+			public int applyAsInt(final Integer value) {
+				return value.intValue();
+			}
+		}).count());
+
+		// the parts of the monitored spliterator are traversed by the workers of the pool
+		traversing.clear();
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			final long sum = pool.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return Long.valueOf(monitored.parallelStream().mapToLong(new ToLongFunction<Integer>() {
+						@Override
+						public long applyAsLong(final Integer value) {
+							return value.longValue();
+						}
+					}).sum());
+				}
+			}).get().longValue();
+			assertEquals(49995000L, sum);
+		} finally {
+			pool.shutdown();
+		}
+		assertFalse(traversing.isEmpty());
+		for (Thread thread : traversing) {
+			assertTrue(thread.toString(), thread instanceof ForkJoinWorkerThread);
+		}
+
+		final Spliterator<Integer> spliterator = monitored.spliterator();
+		assertTrue(Proxy.isProxyClass(spliterator.getClass()));
+		final Spliterator<Integer> part = spliterator.trySplit();
+		assertTrue(Proxy.isProxyClass(part.getClass()));
+		threads.clear();
+		final Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				part.forEachRemaining(new Consumer<Integer>() {
+					@Override
+					public void accept(final Integer value) {
+						// nothing to do
+					}
+				});
+			}
+		});
+		worker.start();
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			fail(e.toString());
+		}
+		assertTrue(threads.contains(worker));
+	}
+
 	/**
 	 * Tests performance with no contention taking place.
 	 */
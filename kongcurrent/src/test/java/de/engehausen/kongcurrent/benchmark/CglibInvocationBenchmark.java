@@ -0,0 +1,108 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+
+import de.engehausen.kongcurrent.cglib.DescriptionCglib;
+import de.engehausen.kongcurrent.cglib.MonitorCglib;
+import de.engehausen.kongcurrent.cglib.MonitorHidden;
+import de.engehausen.kongcurrent.helper.RegistryExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.cglib.JohnDoe;
+
+/**
+ * Measures an invocation of an object monitored by the {@link MonitorCglib},
+ * invoking the inherited method (the default) and delegating to the original
+ * object through cglib's <code>FastClass</code>, against the plain invocation.
+ * The dispatch used by the delegating monitor (<code>FastClass</code>) is also
+ * measured on its own against a reflective <code>Method.invoke</code>, and the
+ * hidden class generated by the {@link MonitorHidden} against both monitors.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.CglibInvocationBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class CglibInvocationBenchmark {
+
+	private JohnDoe john;
+	private JohnDoe inheriting;
+	private JohnDoe delegating;
+	private JohnDoe hidden;
+	private Method method;
+	private FastMethod fastMethod;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		final RegistryExceptionHandler handler = new RegistryExceptionHandler(null);
+		john = new JohnDoe();
+		john.setInfo("info");
+		final DescriptionCglib<JohnDoe> description = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		inheriting = MonitorCglib.monitor(john, description, handler);
+		inheriting.setInfo("info");
+		final DescriptionCglib<JohnDoe> delegatingDescription = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		delegatingDescription.setDelegating(true);
+		delegating = MonitorCglib.monitor(john, delegatingDescription, handler);
+		final DescriptionCglib<JohnDoe> hiddenDescription = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		hiddenDescription.setHiddenClass(true);
+		hidden = MonitorHidden.monitor(john, hiddenDescription, handler);
+		method = JohnDoe.class.getMethod("getInfo");
+		fastMethod = FastClass.create(JohnDoe.class).getMethod(method);
+	}
+
+	@Benchmark
+	public String plain() {
+		return john.getInfo();
+	}
+
+	@Benchmark
+	public Object reflective() throws IllegalAccessException, InvocationTargetException {
+		return method.invoke(john);
+	}
+
+	@Benchmark
+	public Object fastClass() throws InvocationTargetException {
+		return fastMethod.invoke(john, null);
+	}
+
+	@Benchmark
+	public String monitoredInheriting() {
+		return inheriting.getInfo();
+	}
+
+	@Benchmark
+	public String monitoredDelegating() {
+		return delegating.getInfo();
+	}
+
+	@Benchmark
+	public String monitoredHidden() {
+		return hidden.getInfo();
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CglibInvocationBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
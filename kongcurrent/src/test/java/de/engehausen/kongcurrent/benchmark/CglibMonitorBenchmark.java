@@ -0,0 +1,94 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.cglib.DescriptionCglib;
+import de.engehausen.kongcurrent.cglib.MonitorCglib;
+import de.engehausen.kongcurrent.helper.RegistryExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.Demo;
+import de.engehausen.kongcurrent.testhelper.DemoImpl;
+import de.engehausen.kongcurrent.testhelper.cglib.JaneDoe;
+import de.engehausen.kongcurrent.testhelper.cglib.JohnDoe;
+import de.engehausen.kongcurrent.testhelper.cglib.SimpleJaneDoeConstructorInformation;
+
+/**
+ * Measures the creation of objects monitored by the {@link MonitorCglib}, with
+ * the default constructor, with a constructor described by a
+ * {@link de.engehausen.kongcurrent.cglib.ConstructorInformation} and without
+ * constructor, against the plain allocation and the monitoring of an interface.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.CglibMonitorBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class CglibMonitorBenchmark {
+
+	private RegistryExceptionHandler handler;
+	private DescriptionCglib<JohnDoe> john;
+	private DescriptionCglib<JaneDoe> jane;
+	private DescriptionCglib<JaneDoe> janeConstructorFree;
+	private Description<Demo> demo;
+	private JaneDoe original;
+
+	@Setup
+	public void setup() {
+		handler = new RegistryExceptionHandler(null);
+		john = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		original = new JaneDoe(4);
+		jane = new DescriptionCglib<JaneDoe>(JaneDoe.class, new SimpleJaneDoeConstructorInformation(original));
+		janeConstructorFree = new DescriptionCglib<JaneDoe>(JaneDoe.class);
+		janeConstructorFree.setConstructorFree(true);
+		demo = new Description<Demo>(Demo.class);
+	}
+
+	@Benchmark
+	public Object plain() {
+		return new JohnDoe();
+	}
+
+	@Benchmark
+	public Object monitorDefaultConstructor() {
+		return MonitorCglib.monitor(new JohnDoe(), john, handler);
+	}
+
+	@Benchmark
+	public Object monitorConstructorInformation() {
+		return MonitorCglib.monitor(original, jane, handler);
+	}
+
+	@Benchmark
+	public Object monitorConstructorFree() {
+		return MonitorCglib.monitor(original, janeConstructorFree, handler);
+	}
+
+	@Benchmark
+	public Object monitorInterface() {
+		return Monitor.monitor(new DemoImpl(), demo, handler);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CglibMonitorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
+import de.engehausen.kongcurrent.helper.DefaultLogger;
+
+/**
+ * Measures <code>equals</code> of a monitored {@link LinkedList} for growing
+ * sizes; the time per element must stay about the same.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.ListEqualsBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListEqualsBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int size;
+
+	private List<Integer> monitored;
+	private List<Integer> other;
+
+	@Setup
+	public void setup() {
+		final List<Integer> list = new LinkedList<Integer>();
+		for (int i = 0; i < size; i++) {
+			list.add(Integer.valueOf(i));
+		}
+		other = new LinkedList<Integer>(list);
+		monitored = Monitor.monitor(list, DefaultDescriptions.<Integer>listDescription(), new DefaultExceptionHandler(new DefaultLogger()));
+	}
+
+	@Benchmark
+	public boolean monitoredEquals() {
+		return monitored.equals(other);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ListEqualsBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
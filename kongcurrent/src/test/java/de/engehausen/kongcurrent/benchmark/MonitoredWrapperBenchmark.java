@@ -0,0 +1,98 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.RegistryExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.Inventory;
+import de.engehausen.kongcurrent.testhelper.InventoryImpl;
+
+/**
+ * Measures <code>get(int)</code> on the generated wrapper of the {@link Inventory}
+ * against the plain object, with a handler which does not need the arguments
+ * ({@link ArgumentsAware}) and with one which does. Run with <code>-prof gc</code>
+ * to see that the former does not allocate.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.MonitoredWrapperBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitoredWrapperBenchmark {
+
+	private static final int SIZE = 1024;
+
+	private Inventory<String> inventory;
+	private Inventory<String> lean;
+	private Inventory<String> withArguments;
+	private int counter;
+
+	@Setup
+	public void setup() {
+		final InventoryImpl original = new InventoryImpl();
+		for (int i = 0; i < SIZE; i++) {
+			original.add(Integer.toString(i));
+		}
+		final Description<Inventory<String>> description = new Description<Inventory<String>>(Inventory.class);
+		final RegistryExceptionHandler registry = new RegistryExceptionHandler(null);
+		inventory = original;
+		lean = Monitor.monitor(original, description, registry);
+		withArguments = Monitor.monitor(original, description, new ExceptionHandler() {
+			// does not implement ArgumentsAware, so it gets the arguments
+			@Override
+			public void preInvoke(final Object target, final Method method, final Object[] args) {
+				registry.preInvoke(target, method, args);
+			}
+			@Override
+			public void postInvoke(final Object target, final Method method, final Object[] args) {
+				registry.postInvoke(target, method, args);
+			}
+			@Override
+			public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+				registry.handle(throwable, target, method, args);
+			}
+		});
+	}
+
+	@Benchmark
+	public String plain() {
+		return inventory.get(counter++ & 1023);
+	}
+
+	@Benchmark
+	public String monitored() {
+		return lean.get(counter++ & 1023);
+	}
+
+	@Benchmark
+	public String monitoredWithArguments() {
+		return withArguments.get(counter++ & 1023);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(MonitoredWrapperBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
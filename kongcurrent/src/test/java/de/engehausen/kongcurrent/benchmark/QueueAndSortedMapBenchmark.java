@@ -0,0 +1,124 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+import de.engehausen.kongcurrent.helper.RegistryExceptionHandler;
+
+/**
+ * Measures typical operations on a monitored {@link ArrayDeque}, {@link PriorityQueue}
+ * and {@link TreeMap} (including a sub map view) against the plain objects, using the
+ * cheap {@link RegistryExceptionHandler} to show the overhead of the monitor itself.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.QueueAndSortedMapBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueueAndSortedMapBenchmark {
+
+	private static final int SIZE = 1024;
+
+	private Deque<Integer> deque;
+	private Deque<Integer> monitoredDeque;
+	private Queue<Integer> queue;
+	private Queue<Integer> monitoredQueue;
+	private NavigableMap<Integer, Integer> map;
+	private NavigableMap<Integer, Integer> monitoredMap;
+	private int counter;
+
+	@Setup
+	public void setup() {
+		final RegistryExceptionHandler handler = new RegistryExceptionHandler(null);
+		deque = new ArrayDeque<Integer>();
+		queue = new PriorityQueue<Integer>();
+		map = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < SIZE; i++) {
+			final Integer value = Integer.valueOf(i);
+			deque.add(value);
+			queue.add(value);
+			map.put(value, value);
+		}
+		monitoredDeque = Monitor.monitor(new ArrayDeque<Integer>(deque), DefaultDescriptions.<Integer>dequeDescription(), handler);
+		monitoredQueue = Monitor.monitor(new PriorityQueue<Integer>(queue), DefaultDescriptions.<Integer>queueDescription(), handler);
+		monitoredMap = Monitor.monitor(new TreeMap<Integer, Integer>(map), DefaultDescriptions.<Integer, Integer>navigableMapDescription(), handler);
+	}
+
+	@Benchmark
+	public Integer deque() {
+		return dequeOperations(deque);
+	}
+
+	@Benchmark
+	public Integer monitoredDeque() {
+		return dequeOperations(monitoredDeque);
+	}
+
+	@Benchmark
+	public Integer priorityQueue() {
+		return queueOperations(queue);
+	}
+
+	@Benchmark
+	public Integer monitoredPriorityQueue() {
+		return queueOperations(monitoredQueue);
+	}
+
+	@Benchmark
+	public Integer treeMap() {
+		return mapOperations(map);
+	}
+
+	@Benchmark
+	public Integer monitoredTreeMap() {
+		return mapOperations(monitoredMap);
+	}
+
+	private Integer dequeOperations(final Deque<Integer> aDeque) {
+		aDeque.offerLast(aDeque.pollFirst());
+		return aDeque.peekFirst();
+	}
+
+	private Integer queueOperations(final Queue<Integer> aQueue) {
+		aQueue.offer(Integer.valueOf(SIZE + (counter++ & 1023)));
+		return aQueue.poll();
+	}
+
+	private Integer mapOperations(final NavigableMap<Integer, Integer> aMap) {
+		final Integer key = Integer.valueOf(counter++ & 1023);
+		aMap.put(key, key);
+		final Map.Entry<Integer, Integer> entry = aMap.headMap(key, true).lastEntry();
+		return entry.getValue();
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(QueueAndSortedMapBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
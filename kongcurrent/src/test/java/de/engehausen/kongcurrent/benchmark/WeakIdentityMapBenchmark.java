@@ -0,0 +1,93 @@
+package de.engehausen.kongcurrent.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.engehausen.kongcurrent.helper.ConcurrentWeakIdentityMap;
+
+/**
+ * Compares the {@link ConcurrentWeakIdentityMap} with a synchronized
+ * {@link WeakHashMap}, as used before by the default exception handler,
+ * for a mix of lookups and updates by several threads.
+ * <p>Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.engehausen.kongcurrent.benchmark.WeakIdentityMapBenchmark</code>
+ * or from the IDE.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class WeakIdentityMapBenchmark {
+
+	@Param({ "16", "4096" })
+	public int keyCount;
+
+	/** percentage of updates */
+	@Param({ "10", "50" })
+	public int writePercent;
+
+	private Object[] keys;
+	private Map<Object, Object> synchronizedMap;
+	private ConcurrentWeakIdentityMap<Object, Object> concurrentMap;
+
+	@Setup
+	public void setup() {
+		keys = new Object[keyCount];
+		synchronizedMap = Collections.synchronizedMap(new WeakHashMap<Object, Object>());
+		concurrentMap = new ConcurrentWeakIdentityMap<Object, Object>();
+		for (int i = keys.length; i-->0; ) {
+			keys[i] = new Object();
+			synchronizedMap.put(keys[i], keys[i].toString());
+			concurrentMap.put(keys[i], keys[i].toString());
+		}
+	}
+
+	@Benchmark
+	public Object synchronizedWeakHashMap() {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final Object key = keys[random.nextInt(keys.length)];
+		if (random.nextInt(100) < writePercent) {
+			return synchronizedMap.put(key, key);
+		} else {
+			return synchronizedMap.get(key);
+		}
+	}
+
+	@Benchmark
+	public Object concurrentWeakIdentityMap() {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final Object key = keys[random.nextInt(keys.length)];
+		if (random.nextInt(100) < writePercent) {
+			return concurrentMap.put(key, key);
+		} else {
+			return concurrentMap.get(key);
+		}
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WeakIdentityMapBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -6,79 +6,46 @@ import org.junit.Test;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
 import de.engehausen.kongcurrent.testhelper.Demo3Impl;
 import de.engehausen.kongcurrent.testhelper.Recorder;
+import de.engehausen.kongcurrent.testhelper.StressHarness;
 
 public class ComplexTest {
 	
 	@Test
-	public void testHandling() {
+	public void testHandling() throws InterruptedException {
 		final Recorder logger = new Recorder();
-		final Demo3Impl monitored = MonitorCglib.monitor(
-				new Demo3Impl(),
-				new DescriptionCglib<Demo3Impl>(Demo3Impl.class),
-				new DefaultExceptionHandler(logger));
-		final Thread[] threads = new Thread[4];
-		final Executor[] executors = new Executor[threads.length];
-		for (int i = threads.length; i-->0; ) {
-			executors[i] = new Executor(monitored);
-			threads[i] = new Thread(executors[i]);
+		final int[] list = new int[32];
+		for (int i = list.length; i-->0; ) {
+			list[i] = i;
 		}
-		for (int i = threads.length; i-->0; ) {
-			threads[i].start();
-		}
-		boolean foundException = false;
-		for (int i = threads.length; i-->0; ) {
-			try {
-				threads[i].join();
-				if (executors[i].getCause() != null) {
-					foundException = true;
+		final StressHarness.Result result = new StressHarness<Demo3Impl>(4, 4096)
+			.operation(1, new StressHarness.Operation<Demo3Impl>() {
+				@Override
+				public void perform(final Demo3Impl monitored) {
+					doit(monitored, 2, list);
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		Assert.assertTrue(foundException);
+			})
+			.run(10, new StressHarness.Factory<Demo3Impl>() {
+				@Override
+				public Demo3Impl create(final StressHarness.Detector detector) {
+					return MonitorCglib.monitor(
+							new Demo3Impl(),
+							new DescriptionCglib<Demo3Impl>(Demo3Impl.class),
+							detector.around(new DefaultExceptionHandler(logger)));
+				}
+			});
+		Assert.assertTrue(result.toString(), result.getDetectionRate() > 0.5);
 		final String info = logger.toString();
 		Assert.assertTrue(info.contains("object state changed while processing"));
 		Assert.assertTrue(info.contains("EnhancerByCGLIB"));
 		Assert.assertTrue(info.contains(".doit("));
 	}
-	
-	private static class Executor implements Runnable {
 
-		private final Demo3Impl monitored;
-		private Throwable cause;
-		
-		public Executor(final Demo3Impl impl) {
-			monitored = impl;
-		}
-		
-		public Throwable getCause() {
-			return cause;
-		}
-		
-		@Override
-		public void run() {
-			final int[] list = new int[32];
-			for (int i = list.length; i-->0; ) {
-				list[i] = i;
-			}
-			try {
-				for (int i = 0; i < 4096; i++) {
-					doit((int) (5*Math.random()), list);
-				}
-			} catch (Throwable t) {
-				cause = t;
-			}
-		}
-		
-		protected void doit(final int count, final int[] list) {
-			if (count > 0) {
-				doit(count-1, list);
-			} else {
-				monitored.determineMax(list);
-			}
+	protected void doit(final Demo3Impl monitored, final int count, final int[] list) {
+		if (count > 0) {
+			doit(monitored, count-1, list);
+		} else {
+			monitored.determineMax(list);
 		}
-		
 	}
 
 }
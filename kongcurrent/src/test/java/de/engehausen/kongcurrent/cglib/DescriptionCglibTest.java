@@ -32,5 +32,17 @@ public class DescriptionCglibTest {
 		Assert.assertFalse(desc1.equals(new DescriptionCglib<ArrayList<String>>(ArrayList.class)));
 		Assert.assertFalse(desc1.equals(null));		
 	}
+
+	@Test
+	public void testConstructorFree() {
+		final DescriptionCglib<Object> desc1 = new DescriptionCglib<Object>(Object.class);
+		final DescriptionCglib<Object> desc2 = new DescriptionCglib<Object>(Object.class);
+		Assert.assertFalse(desc1.isConstructorFree());
+		desc2.setConstructorFree(true);
+		Assert.assertTrue(desc2.isConstructorFree());
+		Assert.assertFalse(desc1.equals(desc2));
+		desc1.setConstructorFree(true);
+		Assert.assertEquals(desc1, desc2);
+	}
 	
 }
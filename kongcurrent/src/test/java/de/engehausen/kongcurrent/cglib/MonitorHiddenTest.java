@@ -0,0 +1,239 @@
+package de.engehausen.kongcurrent.cglib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
+import de.engehausen.kongcurrent.testhelper.cglib.JaneDoe;
+import de.engehausen.kongcurrent.testhelper.cglib.JohnDoe;
+import de.engehausen.kongcurrent.testhelper.cglib.Ledger;
+
+public class MonitorHiddenTest extends AbstractMonitorTest {
+
+	@Test
+	public void testMonitor() {
+		final Ledger original = new Ledger();
+		final Calls calls = new Calls(true);
+		assertTrue(MonitorHidden.isSupported());
+		final Ledger monitored = MonitorHidden.monitor(original, description(), calls);
+		assertTrue(monitored.getClass().isHidden());
+		assertTrue(monitored.getClass().getName().contains(MonitorHidden.CLASS_SUFFIX));
+		assertTrue(MonitorHidden.isMonitored(monitored));
+		assertFalse(MonitorHidden.isMonitored(original));
+		assertSame(original, MonitorHidden.unwrap(monitored));
+		assertSame(original, Monitor.unwrap(monitored));
+
+		assertTrue(monitored.book("one", 10L, 1.5d));
+		assertEquals(15L, monitored.getTotal());
+		assertEquals(15d, monitored.average(), 0d);
+		assertEquals('o', monitored.initial(0));
+		assertArrayEquals(new String[] { "zero", "one" }, monitored.toArray("zero"));
+		// final methods are not intercepted and see the (uninitialized) fields of the monitored object
+		try {
+			monitored.size();
+			fail("no exception");
+		} catch (NullPointerException e) {
+			assertEquals(1, original.size());
+		}
+		assertEquals(">book<book>getTotal<getTotal>average<average>initial<initial>toArray<toArray", calls.toString());
+		assertArrayEquals(new Object[] { "one", Long.valueOf(10L), Double.valueOf(1.5d) }, calls.arguments.get(0));
+		assertArrayEquals(new Object[] { Integer.valueOf(0) }, calls.arguments.get(3));
+		assertNull(calls.arguments.get(1));
+	}
+
+	@Test
+	public void testArguments() {
+		final Calls calls = new Calls(false);
+		final Ledger monitored = MonitorHidden.monitor(new Ledger(), description(), calls);
+		monitored.book("one", 1L, 1d);
+		monitored.initial(0);
+		assertEquals(2, calls.arguments.size());
+		assertNull(calls.arguments.get(0));
+		assertNull(calls.arguments.get(1));
+	}
+
+	@Test
+	public void testExceptions() throws IOException {
+		final Calls calls = new Calls(true);
+		final Ledger monitored = MonitorHidden.monitor(new Ledger(), description(), calls);
+		try {
+			monitored.load(null);
+			fail("no exception");
+		} catch (IOException e) {
+			assertEquals(">load!IOException<load", calls.toString());
+		}
+		monitored.load("two".getBytes("UTF-8"));
+		try {
+			monitored.initial(1);
+			fail("no exception");
+		} catch (IndexOutOfBoundsException e) {
+			assertTrue(calls.toString(), calls.toString().endsWith(">initial!IndexOutOfBoundsException<initial"));
+		}
+	}
+
+	@Test
+	public void testDependants() throws NoSuchMethodException {
+		final DescriptionCglib<Ledger> desc = description();
+		desc.addDependant(DefaultDescriptions.<String>listDescription(), "getEntries");
+		final Ledger original = new Ledger();
+		final Ledger monitored = MonitorHidden.monitor(original, desc, new DefaultExceptionHandler(logger));
+		final List<String> entries = monitored.getEntries();
+		assertTrue(Proxy.isProxyClass(entries.getClass()) || entries.getClass().getName().endsWith(Monitor.WRAPPER_SUFFIX));
+		entries.add("one");
+		assertSame(original.getEntries(), Monitor.unwrap(entries));
+
+		final DescriptionCglib<JaneDoe> jane = new DescriptionCglib<JaneDoe>(JaneDoe.class);
+		jane.setHiddenClass(true);
+		final DescriptionCglib<JohnDoe> john = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		john.setHiddenClass(true);
+		jane.addDependant(john, "getPartner");
+		final JohnDoe partner = new JohnDoe();
+		final JohnDoe monitoredPartner = MonitorHidden.monitor(new JaneDoe(1, partner), jane, new DefaultExceptionHandler(logger)).getPartner();
+		assertTrue(MonitorHidden.isMonitored(monitoredPartner));
+		monitoredPartner.setInfo("info");
+		assertEquals("info", partner.getInfo());
+		try {
+			monitoredPartner.fail(true);
+			fail("no exception");
+		} catch (IllegalStateException e) {
+			assertTrue(logger.toString(), logger.toString().contains("IllegalStateException"));
+		}
+	}
+
+	/**
+	 * Tests that {@link MonitorCglib} passes descriptions marked for hidden classes on.
+	 */
+	@Test
+	public void testMonitorCglib() {
+		final JaneDoe original = new JaneDoe(3);
+		final JaneDoe monitored = MonitorCglib.monitor(original, description(JaneDoe.class), new DefaultExceptionHandler(logger));
+		assertTrue(MonitorHidden.isMonitored(monitored));
+		assertFalse(MonitorCglib.isMonitored(monitored));
+		assertEquals(3, monitored.getId());
+		assertTrue(monitored.equals(monitored));
+		assertEquals(original.hashCode(), monitored.hashCode());
+		assertEquals("{monitored:berta3}", monitored.toString());
+		assertSame(monitored.getClass(), MonitorCglib.monitor(new JaneDoe(4), description(JaneDoe.class), new DefaultExceptionHandler(logger)).getClass());
+	}
+
+	/**
+	 * Tests that <code>equals</code>, <code>hashCode</code> and <code>toString</code>
+	 * are answered by the monitor, so a class comparing with <code>getClass()</code>
+	 * equals its monitored object.
+	 */
+	@Test
+	public void testObjectMethods() {
+		final Calls calls = new Calls(true);
+		final Ledger original = new Ledger();
+		original.book("one", 1L, 1d);
+		final Ledger monitored = MonitorHidden.monitor(original, description(), calls);
+		assertTrue(monitored.equals(monitored));
+		assertFalse(monitored.equals(null));
+		assertFalse(monitored.equals(new Ledger()));
+		assertEquals(original.hashCode(), monitored.hashCode());
+		assertEquals("{monitored:"+original+"}", monitored.toString());
+		// the comparison with another ledger is one invocation
+		assertEquals(">equals<equals", calls.toString());
+	}
+
+	/**
+	 * Tests that an exception thrown while the result is monitored is handled.
+	 */
+	@Test
+	public void testFailedResult() throws NoSuchMethodException {
+		final DescriptionCglib<Ledger> desc = description();
+		desc.addDependant(description(Ledger.class), "getEntries");
+		final Calls calls = new Calls(true);
+		final Ledger monitored = MonitorHidden.monitor(new Ledger(), desc, calls);
+		try {
+			monitored.getEntries();
+			fail("no exception");
+		} catch (IllegalArgumentException e) {
+			assertEquals(">getEntries<getEntries!IllegalArgumentException", calls.toString());
+		}
+	}
+
+	@Test
+	public void testMonitorTwice() {
+		final DescriptionCglib<Ledger> desc = description();
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger);
+		final Ledger original = new Ledger();
+		final Ledger monitored = MonitorHidden.monitor(original, desc, handler);
+		assertSame(monitored, MonitorHidden.monitor(monitored, desc, handler));
+		final Ledger other = MonitorHidden.monitor(monitored, desc, new DefaultExceptionHandler(logger));
+		assertSame(original, MonitorHidden.unwrap(other));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testJdkClass() {
+		final DescriptionCglib<ArrayList<String>> desc = new DescriptionCglib<ArrayList<String>>(ArrayList.class);
+		desc.setHiddenClass(true);
+		MonitorHidden.monitor(new ArrayList<String>(), desc, new DefaultExceptionHandler(logger));
+	}
+
+	private static DescriptionCglib<Ledger> description() {
+		return description(Ledger.class);
+	}
+
+	private static <T> DescriptionCglib<T> description(final Class<T> clazz) {
+		final DescriptionCglib<T> result = new DescriptionCglib<T>(clazz);
+		result.setHiddenClass(true);
+		return result;
+	}
+
+	private static class Calls implements ArgumentsAware, de.engehausen.kongcurrent.ExceptionHandler {
+
+		private final StringBuilder calls = new StringBuilder();
+		private final List<Object[]> arguments = new ArrayList<Object[]>();
+		private final boolean needed;
+
+		Calls(final boolean flag) {
+			needed = flag;
+		}
+
+		@Override
+		public boolean needsArguments() {
+			return needed;
+		}
+
+		@Override
+		public void preInvoke(final Object target, final Method method, final Object[] args) {
+			calls.append('>').append(method.getName());
+			arguments.add(args);
+		}
+
+		@Override
+		public void postInvoke(final Object target, final Method method, final Object[] args) {
+			calls.append('<').append(method.getName());
+		}
+
+		@Override
+		public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+			calls.append('!').append(throwable.getClass().getSimpleName());
+		}
+
+		@Override
+		public String toString() {
+			return calls.toString();
+		}
+
+	}
+
+}
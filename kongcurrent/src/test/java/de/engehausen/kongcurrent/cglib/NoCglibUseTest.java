@@ -3,6 +3,7 @@ package de.engehausen.kongcurrent.cglib;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -37,6 +38,22 @@ public class NoCglibUseTest {
 		monitoredIterator.next().getInt();
 	}
 	
+	/**
+	 * Tests that classes can be monitored through hidden classes without cglib.
+	 * @throws NoSuchMethodException in case of error
+	 */
+	@Test
+	public void testHiddenClass() throws NoSuchMethodException {
+		final Description<Iterator<DemoImpl>> stdDesc = new Description<Iterator<DemoImpl>>(Iterator.class);
+		final DescriptionCglib<DemoImpl> hiddenDesc = new DescriptionCglib<DemoImpl>(DemoImpl.class);
+		hiddenDesc.setHiddenClass(true);
+		stdDesc.addDependant(hiddenDesc, "next", (Class<?>[]) null);
+		final Iterator<DemoImpl> monitoredIterator = Monitor.monitor(Arrays.<DemoImpl>asList(new DemoImpl()).iterator(), stdDesc, new DefaultExceptionHandler());
+		final DemoImpl monitored = monitoredIterator.next();
+		Assert.assertTrue(MonitorHidden.isMonitored(monitored));
+		monitored.getInt();
+	}
+
 	@Test
 	public void testNormalUse() {
 		new SimpleTest().testProxying2();
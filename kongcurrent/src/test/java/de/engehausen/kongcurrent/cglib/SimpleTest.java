@@ -5,15 +5,19 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.Monitor;
 import de.engehausen.kongcurrent.helper.DefaultExceptionHandler;
 import de.engehausen.kongcurrent.testhelper.cglib.ArrayListConstructorInformation;
 import de.engehausen.kongcurrent.testhelper.cglib.JaneDoe;
@@ -52,6 +56,21 @@ public class SimpleTest extends AbstractMonitorTest {
 		assertTrue(original.isEmpty());
 	}
 	
+	@Test
+	public void testMonitorTwice() {
+		final JaneDoe original = new JaneDoe(4);
+		final DescriptionCglib<JaneDoe> desc = new DescriptionCglib<JaneDoe>(JaneDoe.class, new SimpleJaneDoeConstructorInformation(original));
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger);
+		final JaneDoe monitored = MonitorCglib.monitor(original, desc, handler);
+		assertTrue(MonitorCglib.isMonitored(monitored));
+		assertFalse(MonitorCglib.isMonitored(original));
+		Assert.assertSame(monitored, MonitorCglib.monitor(monitored, desc, handler));
+		Assert.assertSame(original, MonitorCglib.unwrap(monitored));
+		Assert.assertSame(original, Monitor.unwrap(monitored));
+		final JaneDoe other = MonitorCglib.monitor(monitored, desc, new DefaultExceptionHandler(logger));
+		Assert.assertSame(original, MonitorCglib.unwrap(other));
+	}
+
 	@Test
 	public void testDependant() throws NoSuchMethodException {
 		final JohnDoe john = new JohnDoe();
@@ -69,6 +88,107 @@ public class SimpleTest extends AbstractMonitorTest {
 		}
 	}
 	
+	/**
+	 * Tests that the instances created from the cached prototype are independent.
+	 */
+	@Test
+	public void testPrototypes() {
+		final JaneDoe first = new JaneDoe(1);
+		final JaneDoe second = new JaneDoe(2);
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger);
+		final JaneDoe monitoredFirst = MonitorCglib.monitor(first, new DescriptionCglib<JaneDoe>(JaneDoe.class, new SimpleJaneDoeConstructorInformation(first)), handler);
+		final JaneDoe monitoredSecond = MonitorCglib.monitor(second, new DescriptionCglib<JaneDoe>(JaneDoe.class, new SimpleJaneDoeConstructorInformation(second)), handler);
+		Assert.assertSame(monitoredFirst.getClass(), monitoredSecond.getClass());
+		assertEquals(1, monitoredFirst.getId());
+		assertEquals(2, monitoredSecond.getId());
+		Assert.assertSame(first, MonitorCglib.unwrap(monitoredFirst));
+		Assert.assertSame(second, MonitorCglib.unwrap(monitoredSecond));
+
+		final JohnDoe john = MonitorCglib.monitor(new JohnDoe(), new DescriptionCglib<JohnDoe>(JohnDoe.class), handler);
+		Assert.assertSame(john.getClass(), MonitorCglib.monitor(new JohnDoe(), new DescriptionCglib<JohnDoe>(JohnDoe.class), handler).getClass());
+		assertTrue(MonitorCglib.isMonitored(john));
+	}
+
+	/**
+	 * Tests that the prototype of a class is not constructed, i.e. the constructor
+	 * runs once per original and once per monitored object only.
+	 */
+	@Test
+	public void testPrototypeNotConstructed() {
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger);
+		for (int i = 1; i <= 2; i++) {
+			final Counted original = new Counted(i);
+			final Counted monitored = MonitorCglib.monitor(original, new DescriptionCglib<Counted>(Counted.class, new ConstructorInformation<Counted>(new Class<?>[] { int.class }) {
+				@Override
+				public Object[] getArgValues() {
+					return new Object[] { Integer.valueOf(original.value) };
+				}
+			}), handler);
+			assertEquals(i, monitored.value);
+		}
+		assertEquals(4, Counted.CONSTRUCTED.get());
+	}
+
+	/**
+	 * Tests monitored objects created without constructor, which work on the original object.
+	 */
+	@Test
+	public void testConstructorFree() throws NoSuchMethodException {
+		final JaneDoe original = new JaneDoe(3, new JohnDoe());
+		final DescriptionCglib<JaneDoe> desc = new DescriptionCglib<JaneDoe>(JaneDoe.class);
+		desc.setConstructorFree(true);
+		final DescriptionCglib<JohnDoe> partner = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		partner.setConstructorFree(true);
+		desc.addDependant(partner, "getPartner");
+		final JaneDoe monitored = MonitorCglib.monitor(original, desc, new DefaultExceptionHandler(logger));
+		assertEquals(3, monitored.getId());
+		assertTrue(monitored.equals(original));
+		// the fields of the monitored object itself are not initialized
+		assertFalse(original.equals(monitored));
+		final JohnDoe john = monitored.getPartner();
+		assertTrue(MonitorCglib.isMonitored(john));
+		john.setInfo("info");
+		assertEquals("info", original.getPartner().getInfo());
+
+		final ArrayList<String> list = new ArrayList<String>();
+		final DescriptionCglib<ArrayList<String>> listDesc = new DescriptionCglib<ArrayList<String>>(ArrayList.class);
+		listDesc.setConstructorFree(true);
+		final ArrayList<String> monitoredList = MonitorCglib.monitor(list, listDesc, new DefaultExceptionHandler(logger));
+		monitoredList.add("one");
+		assertEquals(1, list.size());
+		assertEquals("one", monitoredList.get(0));
+		try {
+			monitoredList.get(1);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			assertTrue(logger.toString(), logger.toString().contains("IndexOutOfBoundsException"));
+		}
+	}
+
+	/**
+	 * Tests that a delegating monitored object stays in sync with the original
+	 * and that dependants with a plain description are monitored.
+	 */
+	@Test
+	public void testDelegating() throws NoSuchMethodException {
+		final ArrayList<String> original = new ArrayList<String>();
+		final DescriptionCglib<ArrayList<String>> desc = new DescriptionCglib<ArrayList<String>>(ArrayList.class, new ArrayListConstructorInformation(original));
+		desc.setDelegating(true);
+		final ArrayList<String> monitored = MonitorCglib.monitor(original, desc, new DefaultExceptionHandler(logger));
+		monitored.add("one");
+		assertEquals(1, original.size());
+		original.add("two");
+		assertEquals("two", monitored.get(1));
+
+		final JaneDoe jane = new JaneDoe(2);
+		final DescriptionCglib<JaneDoe> janeDesc = new DescriptionCglib<JaneDoe>(JaneDoe.class);
+		janeDesc.setConstructorFree(true);
+		janeDesc.addDependant(new Description<Iterator<Integer>>(Iterator.class), "iterator");
+		final Iterator<Integer> iterator = MonitorCglib.monitor(jane, janeDesc, new DefaultExceptionHandler(logger)).iterator();
+		assertTrue(Proxy.isProxyClass(iterator.getClass()));
+		assertEquals(Integer.valueOf(0), iterator.next());
+	}
+
 	@Test
 	public void testPlainDescription() {
 		final DescriptionCglib<Iterator<String>> desc = new DescriptionCglib<Iterator<String>>(Iterator.class);
@@ -77,4 +197,17 @@ public class SimpleTest extends AbstractMonitorTest {
 		Assert.assertFalse(monitored.hasNext());
 	}
 
+	public static class Counted {
+
+		static final AtomicInteger CONSTRUCTED = new AtomicInteger();
+
+		final int value;
+
+		public Counted(final int aValue) {
+			value = aValue;
+			CONSTRUCTED.incrementAndGet();
+		}
+
+	}
+
 }
@@ -0,0 +1,92 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.cglib.DescriptionCglib;
+import de.engehausen.kongcurrent.cglib.MonitorHidden;
+import de.engehausen.kongcurrent.testhelper.cglib.JohnDoe;
+
+public class AccessMatrixHandlerTest extends AbstractMonitorTest {
+
+	/**
+	 * Tests that a list accessed from two threads is reported
+	 * with the call sites and threads.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testShared() throws Exception {
+		final AccessMatrixHandler handler = new AccessMatrixHandler(logger);
+		final List<String> list = Monitor.monitor(new ArrayList<String>(), DefaultDescriptions.<String>listDescription(), handler);
+		for (int i = 0; i < 2; i++) {
+			list.add("x");
+		}
+		assertFalse(handler.isShared());
+		assertEquals("", handler.report());
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				list.size();
+			}
+		}, "reader-1");
+		thread.start();
+		thread.join();
+		assertTrue(handler.isShared());
+		final String report = handler.report();
+		assertTrue(report, report.contains("java.util.ArrayList@"));
+		assertTrue(report, report.contains("\tat de.engehausen.kongcurrent.helper.AccessMatrixHandlerTest.testShared(AccessMatrixHandlerTest.java:"));
+		assertTrue(report, report.contains("\t\tplatform main: 0 reads, 2 writes"));
+		assertTrue(report, report.contains("\tat de.engehausen.kongcurrent.helper.AccessMatrixHandlerTest$1.run(AccessMatrixHandlerTest.java:"));
+		assertTrue(report, report.contains("\t\tplatform reader-*: 1 reads, 0 writes"));
+		assertTrue(report, AccessMatrixHandler.reportAll().contains(report));
+
+		handler.handle(new IllegalStateException("boom"), list, List.class.getMethod("size"), null);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("boom"));
+		assertTrue(result, result.contains("platform reader-*: 1 reads, 0 writes"));
+	}
+
+	/**
+	 * Tests that call sites are interned.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testCallSites() throws Exception {
+		final AccessMatrixHandler handler = new AccessMatrixHandler(logger);
+		final List<String> list = Monitor.monitor(new ArrayList<String>(), DefaultDescriptions.<String>listDescription(), handler);
+		for (int i = 0; i < 10; i++) {
+			list.add("x");
+		}
+		list.clear();
+		assertEquals(2, handler.matrix.size());
+		assertEquals(AccessMatrixHandler.CallSite.of(null), AccessMatrixHandler.CallSite.of(null));
+		final Method method = List.class.getMethod("size");
+		handler.preInvoke(list, method, null); // not called through a proxy
+		assertTrue(handler.report(), handler.matrix.containsKey(AccessMatrixHandler.CallSite.of(null)));
+	}
+
+	/**
+	 * Tests that the caller of an object monitored through a hidden class
+	 * is found, although the frames of hidden classes are not walked.
+	 */
+	@Test
+	public void testHiddenClass() {
+		final AccessMatrixHandler handler = new AccessMatrixHandler(logger);
+		final DescriptionCglib<JohnDoe> description = new DescriptionCglib<JohnDoe>(JohnDoe.class);
+		description.setHiddenClass(true);
+		MonitorHidden.monitor(new JohnDoe(), description, handler).setInfo("x");
+		assertEquals(1, handler.matrix.size());
+		final String site = handler.matrix.keySet().iterator().next().toString();
+		assertTrue(site, site.startsWith("de.engehausen.kongcurrent.helper.AccessMatrixHandlerTest.testHiddenClass(AccessMatrixHandlerTest.java:"));
+	}
+
+}
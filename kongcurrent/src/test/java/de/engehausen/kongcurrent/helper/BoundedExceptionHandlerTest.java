@@ -0,0 +1,121 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+
+public class BoundedExceptionHandlerTest extends AbstractMonitorTest {
+
+	@Test
+	public void testInvocation() throws NoSuchMethodException {
+		new BoundedExceptionHandler(); // test constructor...
+
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("contains", new Class<?>[] { Object.class });
+		final Object[] args = new Object[] { "hello" };
+
+		final BoundedExceptionHandler handler = new BoundedExceptionHandler(logger);
+		handler.preInvoke(list, method, args);
+		handler.handle(new Exception("123"), list, method, args);
+		handler.postInvoke(list, method, args);
+
+		final String result = logger.toString();
+		assertTrue("log does not contain expected string", result.contains("123"));
+		assertTrue("log does not contain expected string", result.contains("(1 threads in 1 groups)"));
+		assertTrue("log does not contain expected string", result.contains("platform main"));
+		assertTrue("log does not contain expected string", result.contains("de.engehausen.kongcurrent.helper.BoundedExceptionHandlerTest.testInvocation"));
+	}
+
+	/**
+	 * Tests that many threads are tracked in a bounded table
+	 * and reported in groups.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testManyThreads() throws Exception {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("size", (Class<?>[]) null);
+
+		final BoundedExceptionHandler handler = new BoundedExceptionHandler(logger, 64, 2);
+		for (int i = 0; i < 500; i++) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handler.preInvoke(list, method, null);
+				}
+			}, (i % 2 == 0 ? "even-" : "odd-")+i);
+			thread.start();
+			thread.join();
+		}
+		assertTrue(handler.recentCallers().size() <= 64);
+		handler.handle(new IllegalStateException("boom"), list, method, null);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("platform even-* ("));
+		assertTrue(result, result.contains("platform odd-* ("));
+		assertTrue(result, result.contains(" more - java.lang.Exception: caller..."));
+		assertFalse(result, result.contains("more different stacks"));
+	}
+
+	/**
+	 * Tests that the calling thread is reported as it was when the call
+	 * was recorded.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testRecordedDescription() throws Exception {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("size", (Class<?>[]) null);
+
+		final BoundedExceptionHandler handler = new BoundedExceptionHandler(logger);
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				handler.preInvoke(list, method, null);
+			}
+		}, "recorded-1");
+		thread.start();
+		thread.join();
+		thread.setName("reported-1");
+		handler.handle(new IllegalStateException("boom"), list, method, null);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("platform recorded-* (1 threads)"));
+		assertTrue(result, result.contains("Thread[#"+Threads.id(thread)+",recorded-1] - "));
+		assertFalse(result, result.contains("reported-"));
+	}
+
+	@Test
+	public void testThreads() {
+		assertEquals("pool-1-thread-*", Threads.wildcard("pool-1-thread-12"));
+		assertEquals("main", Threads.wildcard("main"));
+		assertEquals("ForkJoinPool-1-worker-1", Threads.carrier("VirtualThread[#21]/runnable@ForkJoinPool-1-worker-1"));
+		assertEquals(null, Threads.carrier("VirtualThread[#21]/waiting"));
+		assertEquals("virtual on ForkJoinPool-1-worker-*", Threads.group(true, "", "ForkJoinPool-1-worker-1"));
+		assertEquals("virtual", Threads.group(true, "", null));
+		assertEquals("platform pool-1-thread-*", Threads.group(false, "pool-1-thread-2", null));
+		assertFalse(Threads.isVirtual(Thread.currentThread()));
+		assertEquals("platform", Threads.kind(Thread.currentThread()));
+	}
+
+	@Test
+	public void testContext() throws NoSuchMethodException {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("size", (Class<?>[]) null);
+
+		final BoundedExceptionHandler handler = new BoundedExceptionHandler(logger, 16, 3, DefaultContextCaptures.threadName(), false);
+		handler.preInvoke(list, method, null);
+		handler.handle(new IllegalStateException("boom"), list, method, null);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("exception occurred in context main:"));
+		assertTrue(result, result.contains(" - context main\n"));
+		assertFalse(result, result.contains("caller..."));
+	}
+
+}
@@ -0,0 +1,85 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Monitor;
+
+public class CompositeExceptionHandlerTest extends AbstractMonitorTest {
+
+	@Test
+	public void testCombine() throws NoSuchMethodException {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("size", (Class<?>[]) null);
+		final StringBuilder calls = new StringBuilder();
+		final ExceptionHandler first = new Tracing("a", calls);
+		final ExceptionHandler second = new Tracing("b", calls);
+		assertSame(first, CompositeExceptionHandler.combine(first, first));
+		final ExceptionHandler combined = CompositeExceptionHandler.combine(first, second);
+		assertSame(combined.getClass(), CompositeExceptionHandler.class);
+		assertEquals(2, ((CompositeExceptionHandler) CompositeExceptionHandler.combine(combined, second)).handlers.length);
+
+		combined.preInvoke(list, method, null);
+		combined.handle(new IllegalStateException(), list, method, null);
+		combined.postInvoke(list, method, null);
+		assertEquals("pre a,pre b,handle a,handle b,post b,post a,", calls.toString());
+	}
+
+	@Test
+	public void testNeedsArguments() {
+		final ExceptionHandler free = new CompositeExceptionHandler(new DefaultExceptionHandler(logger), new RegistryExceptionHandler(logger));
+		assertFalse(Monitor.needsArguments(free));
+		assertTrue(Monitor.needsArguments(CompositeExceptionHandler.combine(free, new Tracing("a", new StringBuilder()))));
+	}
+
+	@Test
+	public void testLogging() throws NoSuchMethodException {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("size", (Class<?>[]) null);
+		final ExceptionHandler handler = new CompositeExceptionHandler(new DefaultExceptionHandler(logger), new RegistryExceptionHandler(logger));
+		handler.preInvoke(list, method, null);
+		handler.handle(new IllegalStateException("boom"), list, method, null);
+		handler.postInvoke(list, method, null);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("recently operating"));
+		assertTrue(result, result.contains("after 1 invocations"));
+	}
+
+	private static class Tracing implements ExceptionHandler {
+
+		private final String name;
+		private final StringBuilder calls;
+
+		Tracing(final String aName, final StringBuilder someCalls) {
+			name = aName;
+			calls = someCalls;
+		}
+
+		@Override
+		public void preInvoke(final Object target, final Method method, final Object[] args) {
+			calls.append("pre ").append(name).append(',');
+		}
+
+		@Override
+		public void postInvoke(final Object target, final Method method, final Object[] args) {
+			calls.append("post ").append(name).append(',');
+		}
+
+		@Override
+		public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+			calls.append("handle ").append(name).append(',');
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConcurrentWeakIdentityMapTest {
+
+	@Test
+	public void testOperations() {
+		final ConcurrentWeakIdentityMap<String, Integer> map = new ConcurrentWeakIdentityMap<String, Integer>(1);
+		final String key = new String("key");
+		final String equalKey = new String("key");
+		assertTrue(map.isEmpty());
+		assertNull(map.put(key, Integer.valueOf(1)));
+		assertEquals(Integer.valueOf(1), map.put(key, Integer.valueOf(2)));
+		assertEquals(Integer.valueOf(2), map.putIfAbsent(key, Integer.valueOf(3)));
+		assertEquals(Integer.valueOf(2), map.get(key));
+		assertFalse(map.replace(key, Integer.valueOf(3), Integer.valueOf(5)));
+		assertTrue(map.replace(key, Integer.valueOf(2), Integer.valueOf(5)));
+		assertTrue(map.replace(key, Integer.valueOf(5), Integer.valueOf(2)));
+		assertFalse(map.replace(new String("key"), Integer.valueOf(2), Integer.valueOf(5)));
+		assertEquals(Integer.valueOf(2), map.get(key));
+		// keys are compared by identity
+		assertFalse(map.containsKey(equalKey));
+		assertNull(map.putIfAbsent(equalKey, Integer.valueOf(4)));
+		assertEquals(2, map.size());
+		assertNull(map.get(null));
+		assertEquals(Integer.valueOf(4), map.remove(equalKey));
+		assertNull(map.remove(equalKey));
+		final List<Map.Entry<String, Integer>> entries = map.entries();
+		assertEquals(1, entries.size());
+		assertSame(key, entries.get(0).getKey());
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * Tests the map through the {@link Map} interface.
+	 */
+	@Test
+	public void testMapView() {
+		final String key = new String("key");
+		final String other = new String("other");
+		final Map<String, Integer> map = new ConcurrentWeakIdentityMap<String, Integer>();
+		map.put(key, Integer.valueOf(1));
+		map.put(other, Integer.valueOf(2));
+		assertEquals(2, map.entrySet().size());
+		assertTrue(map.containsValue(Integer.valueOf(2)));
+		assertFalse(map.containsKey(new String("key")));
+		for (Iterator<Map.Entry<String, Integer>> i = map.entrySet().iterator(); i.hasNext(); ) {
+			if (i.next().getKey() == other) {
+				i.remove();
+			}
+		}
+		assertEquals(1, map.size());
+		assertSame(key, map.keySet().iterator().next());
+		assertEquals(Integer.valueOf(1), map.values().iterator().next());
+	}
+
+	@Test
+	public void testMany() {
+		final ConcurrentWeakIdentityMap<Object, Integer> map = new ConcurrentWeakIdentityMap<Object, Integer>();
+		final List<Object> keys = new ArrayList<Object>();
+		for (int i = 0; i < 10000; i++) {
+			final Object key = new Object();
+			keys.add(key);
+			map.put(key, Integer.valueOf(i));
+		}
+		assertEquals(keys.size(), map.size());
+		for (int i = 0; i < keys.size(); i += 2) {
+			assertEquals(Integer.valueOf(i), map.remove(keys.get(i)));
+		}
+		assertEquals(keys.size() / 2, map.size());
+		for (int i = 1; i < keys.size(); i += 2) {
+			assertEquals(Integer.valueOf(i), map.get(keys.get(i)));
+		}
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullValue() {
+		new ConcurrentWeakIdentityMap<Object, Object>().put(new Object(), null);
+	}
+
+	/**
+	 * Tests that entries of collected keys are removed.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testExpunge() throws Exception {
+		final ConcurrentWeakIdentityMap<Object, Integer> map = new ConcurrentWeakIdentityMap<Object, Integer>(4);
+		final Object kept = new Object();
+		map.put(kept, Integer.valueOf(-1));
+		for (int i = 0; i < 1000; i++) {
+			map.put(new Object(), Integer.valueOf(i));
+		}
+		for (int i = 0; i < 50 && map.size() > 1; i++) {
+			System.gc();
+			Thread.sleep(10);
+			map.expunge();
+		}
+		assertEquals(1, map.size());
+		assertEquals(Integer.valueOf(-1), map.get(kept));
+	}
+
+	/**
+	 * Tests concurrent writers and readers on the same keys.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testConcurrent() throws Exception {
+		final ConcurrentWeakIdentityMap<Object, Integer> map = new ConcurrentWeakIdentityMap<Object, Integer>(4);
+		final Object[] keys = new Object[256];
+		for (int i = keys.length; i-->0; ) {
+			keys[i] = new Object();
+		}
+		final Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int t = threads.length; t-->0; ) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 50000; i++) {
+							final int idx = i % keys.length;
+							final Integer value = Integer.valueOf(idx);
+							if (i % 3 == 0) {
+								map.remove(keys[idx]);
+							} else {
+								map.putIfAbsent(keys[idx], value);
+							}
+							final Integer current = map.get(keys[idx]);
+							assertTrue(current == null || current.equals(value));
+						}
+					} catch (Throwable e) { //NOPMD
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw new AssertionError(failure[0]);
+			}
+		}
+		assertTrue(map.size() <= keys.length);
+		assertEquals(map.entries().size(), map.size());
+	}
+
+}
@@ -1,18 +1,24 @@
 package de.engehausen.kongcurrent.helper;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import org.junit.Test;
 
 import de.engehausen.kongcurrent.Comparator;
+import de.engehausen.kongcurrent.Monitor;
 
 public class DefaultComparatorsTest {
 
@@ -43,6 +49,48 @@ public class DefaultComparatorsTest {
 		assertFalse(comp.equals(list4, list1));
 	}
 
+	@Test
+	public void testSequentialListComparator() {
+		final Comparator<List<Integer>> comp = DefaultComparators.<Integer>listComparator();
+		final List<Integer> list1 = new LinkedList<Integer>(Arrays.asList(Integer.valueOf(1), null, Integer.valueOf(3)));
+		final List<Integer> list2 = new ArrayList<Integer>(list1);
+		final List<Integer> list3 = new LinkedList<Integer>(Arrays.asList(Integer.valueOf(1), null, Integer.valueOf(4)));
+		basicComparison(comp, list1);
+		assertTrue(comp.equals(list1, list2));
+		assertTrue(comp.equals(list2, list1));
+		assertFalse(comp.equals(list1, list3));
+		assertFalse(comp.equals(list3, list2));
+	}
+
+	/**
+	 * Tests that comparing monitored collections is recorded as
+	 * a single invocation.
+	 */
+	@Test
+	public void testMonitored() {
+		final RegistryExceptionHandler registry = new RegistryExceptionHandler(null);
+		final List<Integer> raw1 = new ArrayList<Integer>();
+		final Map<Integer, Integer> map1 = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++) {
+			raw1.add(Integer.valueOf(i));
+			map1.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		final List<Integer> raw2 = new ArrayList<Integer>(raw1);
+		final List<Integer> list1 = Monitor.monitor(raw1, DefaultDescriptions.<Integer>listDescription(), registry);
+		final List<Integer> list2 = Monitor.monitor(raw2, DefaultDescriptions.<Integer>listDescription(), registry);
+		assertTrue(list1.equals(list2));
+		assertEquals(1, registry.getCalls(raw1));
+		assertEquals(0, registry.getCalls(raw2));
+		assertTrue(list1.equals(raw2));
+		assertEquals(2, registry.getCalls(raw1));
+
+		final Map<Integer, Integer> map2 = Monitor.monitor(new HashMap<Integer, Integer>(map1), DefaultDescriptions.<Integer, Integer>mapDescription(), registry);
+		final Map<Integer, Integer> monitored = Monitor.monitor(map1, DefaultDescriptions.<Integer, Integer>mapDescription(), registry);
+		assertTrue(monitored.equals(map2));
+		assertEquals(1, registry.getCalls(map1));
+		assertEquals(2, registry.getTargets().size()); // no element access recorded
+	}
+
 	@Test
 	public void testSetComparator() {
 		final Comparator<Set<Integer>> comp = DefaultComparators.<Integer>setComparator();
@@ -75,6 +123,21 @@ public class DefaultComparatorsTest {
 		assertFalse(comp.equals(map4, map1));
 	}
 
+	@Test
+	public void testQueueComparator() {
+		final Comparator<Queue<Integer>> comp = DefaultComparators.<Integer>queueComparator();
+		final Queue<Integer> one = new ArrayDeque<Integer>(Arrays.asList(1, 2));
+		final Queue<Integer> two = new ArrayDeque<Integer>(Arrays.asList(1, 2));
+
+		basicComparison(comp, one);
+		assertFalse(comp.equals(one, two));
+		final Queue<Integer> monitored = Monitor.monitor(one, DefaultDescriptions.<Integer>queueDescription(), new RegistryExceptionHandler(null));
+		assertTrue(comp.equals(monitored, one));
+		assertTrue(comp.equals(one, monitored));
+		assertTrue(monitored.equals(one));
+		assertFalse(monitored.equals(two));
+	}
+
 	@SuppressWarnings("unchecked")
 	protected void basicComparison(final Comparator comp, final Object one) {
 		assertTrue(comp.equals(one, one));
@@ -0,0 +1,28 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.ContextCapture;
+
+public class DefaultContextCapturesTest {
+
+	@Test
+	public void testThreadLocal() {
+		final ThreadLocal<String> local = new ThreadLocal<String>();
+		final ContextCapture capture = DefaultContextCaptures.threadLocal(local);
+		assertNull(capture.capture());
+		local.set("job");
+		assertEquals("job", capture.capture());
+	}
+
+	@Test
+	public void testThreadName() {
+		assertSame(DefaultContextCaptures.threadName(), DefaultContextCaptures.threadName());
+		assertEquals(Thread.currentThread().getName(), DefaultContextCaptures.threadName().capture());
+	}
+
+}
@@ -1,15 +1,30 @@
 package de.engehausen.kongcurrent.helper;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +43,18 @@ public class DefaultDescriptionsTest {
 		PROXY_CANDIDATES.add(Map.class);
 		PROXY_CANDIDATES.add(Iterator.class);		
 		PROXY_CANDIDATES.add(ListIterator.class);
+		PROXY_CANDIDATES.add(Spliterator.class);
+		PROXY_CANDIDATES.add(Stream.class);
+		PROXY_CANDIDATES.add(IntStream.class);
+		PROXY_CANDIDATES.add(LongStream.class);
+		PROXY_CANDIDATES.add(DoubleStream.class);
+		PROXY_CANDIDATES.add(Queue.class);
+		PROXY_CANDIDATES.add(Deque.class);
+		PROXY_CANDIDATES.add(SortedSet.class);
+		PROXY_CANDIDATES.add(NavigableSet.class);
+		PROXY_CANDIDATES.add(SortedMap.class);
+		PROXY_CANDIDATES.add(NavigableMap.class);
+		PROXY_CANDIDATES.add(ConcurrentMap.class);
 	}
 	
 	protected Set<Description<?>> alreadyHandled;
@@ -58,12 +85,51 @@ public class DefaultDescriptionsTest {
 		verifyInterfacesCovered(DefaultDescriptions.mapDescription(), alreadyHandled);
 	}
 
+	@Test
+	public void testQueues() {
+		verifyInterfacesCovered(DefaultDescriptions.queueDescription(), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.dequeDescription(), alreadyHandled);
+	}
+
+	@Test
+	public void testSorted() {
+		verifyInterfacesCovered(DefaultDescriptions.sortedSetDescription(), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.navigableSetDescription(), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.sortedMapDescription(), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.navigableMapDescription(), alreadyHandled);
+	}
+
+	@Test
+	public void testConcurrentMap() throws NoSuchMethodException {
+		final Description<?> desc = DefaultDescriptions.concurrentMapDescription();
+		verifyInterfacesCovered(desc, alreadyHandled);
+		final Description<?> keys = desc.getDescription(Map.class.getMethod("keySet"));
+		assertFalse(keys.getDescription(Set.class.getMethod("iterator")).isIterating());
+		assertTrue(DefaultDescriptions.navigableMapDescription().getDescription(NavigableMap.class.getMethod("navigableKeySet")).getDescription(NavigableSet.class.getMethod("iterator")).isIterating());
+	}
+
+	@Test
+	public void testStream() {
+		verifyInterfacesCovered(DefaultDescriptions.streamDescription(), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.spliteratorDescription(), alreadyHandled);
+	}
+
+	@Test
+	public void testCreationOnly() throws NoSuchMethodException {
+		verifyInterfacesCovered(DefaultDescriptions.mapDescription(true), alreadyHandled);
+		verifyInterfacesCovered(DefaultDescriptions.listDescription(true), alreadyHandled);
+		assertTrue(DefaultDescriptions.listDescription(true).getDescription(List.class.getMethod("iterator")).isCreationOnly());
+		assertTrue(DefaultDescriptions.listDescription(true).getDescription(List.class.getMethod("spliterator")).isCreationOnly());
+		assertFalse(DefaultDescriptions.listDescription(false).getDescription(List.class.getMethod("iterator")).isCreationOnly());
+		assertFalse(DefaultDescriptions.listDescription(true).isCreationOnly());
+	}
+
 	protected void verifyInterfacesCovered(final Description<?> desc, final Set<Description<?>> handled) {
 		if (handled.add(desc)) {
 			final Class<?> iface = desc.getInterface();
 			assertNotNull(iface);
 			for (Method method : iface.getDeclaredMethods()) {
-				if (PROXY_CANDIDATES.contains(method.getReturnType())) {
+				if (!Modifier.isStatic(method.getModifiers()) && PROXY_CANDIDATES.contains(method.getReturnType()) && !isStreamResult(method)) {
 					final Description<?> child = desc.getDescription(method);
 					assertNotNull("dependant not covered for "+method, child);
 					verifyInterfacesCovered(child, handled);
@@ -72,4 +138,10 @@ public class DefaultDescriptionsTest {
 		}
 	}
 
+	private static boolean isStreamResult(final Method method) {
+		// a list collected by a stream is a new object, not a view of the monitored one;
+		// bridges of primitive streams return primitive iterators, which are not monitored
+		return method.isBridge() || Stream.class.equals(method.getDeclaringClass()) && "toList".equals(method.getName());
+	}
+
 }
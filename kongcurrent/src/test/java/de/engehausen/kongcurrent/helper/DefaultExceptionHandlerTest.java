@@ -1,14 +1,21 @@
 package de.engehausen.kongcurrent.helper;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
 
 import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.testhelper.Inventory;
+import de.engehausen.kongcurrent.testhelper.InventoryImpl;
 
 public class DefaultExceptionHandlerTest extends AbstractMonitorTest {
 
@@ -30,5 +37,47 @@ public class DefaultExceptionHandlerTest extends AbstractMonitorTest {
 		assertTrue("log does not contain expected string", result.contains("123"));
 		assertTrue("log does not contain expected string", result.contains("de.engehausen.kongcurrent.helper.DefaultExceptionHandlerTest.testInvocation"));
 	}
-	
+
+	/**
+	 * Tests that a subclass which reads the arguments still gets them from
+	 * the generated wrapper, while the handler itself does not need them.
+	 */
+	@Test
+	public void testSubclassArguments() {
+		assertFalse(Monitor.needsArguments(new DefaultExceptionHandler(logger)));
+		final List<Object[]> arguments = new ArrayList<Object[]>();
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger) {
+			@Override
+			public void preInvoke(final Object target, final Method method, final Object[] args) {
+				arguments.add(args);
+				super.preInvoke(target, method, args);
+			}
+		};
+		assertTrue(Monitor.needsArguments(handler));
+		final Inventory<String> monitored = Monitor.monitor(new InventoryImpl(), new Description<Inventory<String>>(Inventory.class), handler);
+		monitored.add("one");
+		assertArrayEquals(new Object[] { "one" }, arguments.get(0));
+	}
+
+	@Test
+	public void testContext() throws NoSuchMethodException {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("contains", new Class<?>[] { Object.class });
+		final Object[] args = new Object[] { "hello" };
+		final ThreadLocal<String> requestId = new ThreadLocal<String>();
+
+		final DefaultExceptionHandler handler = new DefaultExceptionHandler(logger, DefaultContextCaptures.threadLocal(requestId), false);
+		requestId.set("request-1");
+		handler.preInvoke(list, method, args);
+		requestId.set("request-2");
+		handler.handle(new Exception("123"), list, method, args);
+		handler.postInvoke(list, method, args);
+
+		final String result = logger.toString();
+		assertTrue(result, result.contains("exception occurred in context request-2:"));
+		assertTrue(result, result.contains("context request-1 (caller...)"));
+		// no stack recorded for the caller
+		assertFalse(result, result.substring(result.indexOf("recently operating")).contains("\tat "));
+	}
+
 }
@@ -17,7 +17,7 @@ public class DefaultLoggerTest {
 		final DefaultLogger logger2 = new DefaultLogger(stream);
 		logger2.log("hello");
 		final String message = new String(baos.toByteArray());
-		Assert.assertEquals("hello\r\n", message);
+		Assert.assertEquals("hello"+System.getProperty("line.separator"), message);
 	}
 
 }
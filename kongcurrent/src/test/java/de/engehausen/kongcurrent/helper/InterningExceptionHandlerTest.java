@@ -0,0 +1,49 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Monitor;
+
+public class InterningExceptionHandlerTest extends AbstractMonitorTest {
+
+	/**
+	 * Tests that the stacks of many monitored objects
+	 * are stored once and reported in case of an exception.
+	 */
+	@Test
+	public void testInvocation() {
+		new InterningExceptionHandler(); // test constructor...
+
+		final StackDictionary dictionary = new StackDictionary();
+		final List<List<String>> lists = new ArrayList<List<String>>();
+		for (int i = 0; i < 100; i++) {
+			lists.add(Monitor.monitor(new ArrayList<String>(), DefaultDescriptions.<String>listDescription(), new InterningExceptionHandler(logger, dictionary)));
+		}
+		for (List<String> list : lists) {
+			list.add("x");
+		}
+		final int size = dictionary.size();
+		for (List<String> list : lists) {
+			list.add("y");
+		}
+		assertEquals(size, dictionary.size());
+
+		try {
+			lists.get(0).get(5);
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		final String result = logger.toString();
+		assertTrue(result, result.contains("IndexOutOfBoundsException"));
+		assertTrue(result, result.contains("java.lang.Exception: caller..."));
+		assertTrue(result, result.contains("at de.engehausen.kongcurrent.helper.InterningExceptionHandlerTest.testInvocation(InterningExceptionHandlerTest.java:"));
+	}
+
+}
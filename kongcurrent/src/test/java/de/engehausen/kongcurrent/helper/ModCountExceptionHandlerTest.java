@@ -0,0 +1,132 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Monitor;
+
+public class ModCountExceptionHandlerTest extends AbstractMonitorTest {
+
+	@Test
+	public void testSupported() {
+		new ModCountExceptionHandler(); // test constructor...
+
+		assertTrue(ModCountExceptionHandler.isSupported(ArrayList.class));
+		assertTrue(ModCountExceptionHandler.isSupported(LinkedList.class));
+		assertTrue(ModCountExceptionHandler.isSupported(HashMap.class));
+		assertFalse(ModCountExceptionHandler.isSupported(String.class));
+	}
+
+	/**
+	 * Tests that only structural modifications are recorded and that
+	 * the modification invalidating an iterator is reported.
+	 */
+	@Test
+	public void testModifications() {
+		final ModCountExceptionHandler handler = new ModCountExceptionHandler(logger);
+		final List<String> monitored = Monitor.monitor(new ArrayList<String>(), DefaultDescriptions.<String>listDescription(), handler);
+		monitored.add("one");
+		monitored.add("two");
+		monitored.set(0, "zero");
+		assertEquals("zero", monitored.get(0));
+		assertEquals(2, monitored.size());
+		assertEquals(2, handler.getModifications().length);
+
+		final Iterator<String> iterator = monitored.iterator();
+		iterator.next();
+		monitored.remove("two");
+		monitored.add("three");
+		try {
+			iterator.next();
+			fail("modification not detected");
+		} catch (ConcurrentModificationException e) {
+			assertTrue(handler.getModifications().length > 0);
+		}
+		final String output = logger.toString();
+		assertTrue(output, output.contains("the iterator was invalidated by this modification"));
+		assertTrue(output, output.contains("remove() changed modCount from 2 to 3"));
+		assertFalse(output, output.contains("add() changed modCount"));
+		assertEquals(4, handler.getModifications().length);
+	}
+
+	/**
+	 * Tests the map views and the history of the handler.
+	 */
+	@Test
+	public void testMap() {
+		final ModCountExceptionHandler handler = new ModCountExceptionHandler(logger);
+		final Map<Integer, String> monitored = Monitor.monitor(new HashMap<Integer, String>(), DefaultDescriptions.<Integer, String>mapDescription(), handler);
+		for (int i = 0; i < 100; i++) {
+			monitored.put(Integer.valueOf(i), "v");
+			monitored.put(Integer.valueOf(i), "w"); // not structural
+		}
+		final ModCountExceptionHandler.Modification[] modifications = handler.getModifications();
+		assertEquals(16, modifications.length);
+		assertEquals(99, modifications[15].getBefore());
+		assertEquals(100, modifications[15].getAfter());
+		try {
+			for (Integer key : monitored.keySet()) {
+				if (key.intValue() == 50) {
+					monitored.remove(key);
+				}
+			}
+			fail("modification not detected");
+		} catch (ConcurrentModificationException e) {
+			assertEquals(101, handler.getModifications()[15].getAfter());
+		}
+		assertTrue(logger.toString(), logger.toString().contains("remove() changed modCount from 100 to 101"));
+	}
+
+	/**
+	 * Tests that a read overlapping a write of another thread is not
+	 * recorded as the modification, although it sees the count change.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testOverlappingRead() throws Exception {
+		final ModCountExceptionHandler handler = new ModCountExceptionHandler(logger);
+		final List<String> list = new ArrayList<String>();
+		final Method get = List.class.getMethod("get", int.class);
+		final Method add = List.class.getMethod("add", Object.class);
+		final ExecutorService reader = Executors.newSingleThreadExecutor();
+		try {
+			reader.submit(new Runnable() {
+				@Override
+				public void run() {
+					handler.preInvoke(list, get, null);
+				}
+			}).get();
+			handler.preInvoke(list, add, null);
+			list.add("one");
+			handler.postInvoke(list, add, null);
+			reader.submit(new Runnable() {
+				@Override
+				public void run() {
+					handler.postInvoke(list, get, null);
+				}
+			}).get();
+		} finally {
+			reader.shutdown();
+		}
+		final ModCountExceptionHandler.Modification[] modifications = handler.getModifications();
+		assertEquals(1, modifications.length);
+		assertEquals("add() changed modCount from 0 to 1", modifications[0].getMessage());
+	}
+
+}
@@ -0,0 +1,166 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.PerturbingExceptionHandler.Perturbation;
+import de.engehausen.kongcurrent.testhelper.StressHarness;
+
+public class PerturbingExceptionHandlerTest extends AbstractMonitorTest {
+
+	@Test
+	public void testDelegation() throws NoSuchMethodException {
+		final List<String> list = Collections.emptyList();
+		final Method method = List.class.getDeclaredMethod("contains", new Class<?>[] { Object.class });
+		final Object[] args = new Object[] { "hello" };
+
+		final PerturbingExceptionHandler handler = new PerturbingExceptionHandler(new DefaultExceptionHandler(logger), PerturbingExceptionHandler.randomStrategy(1), 42L, logger);
+		handler.setParkNanos(1000L);
+		handler.preInvoke(list, method, args);
+		handler.handle(new Exception("123"), list, method, args);
+		handler.postInvoke(list, method, args);
+
+		final String result = logger.toString();
+		assertTrue("log does not contain expected string", result.contains("123"));
+		assertTrue("log does not contain expected string", result.contains("PerturbingExceptionHandlerTest.testDelegation"));
+		assertTrue("log does not contain seed", result.contains("seed 42"));
+		assertEquals(42L, handler.getSeed());
+	}
+
+	/**
+	 * Tests that the same seed leads to the same decisions.
+	 */
+	@Test
+	public void testReplay() {
+		assertEquals(decisions(4711L), decisions(4711L));
+		assertTrue(decisions(4711L).contains(Perturbation.NONE));
+		assertTrue(decisions(4711L).contains(Perturbation.PARK));
+	}
+
+	/**
+	 * Tests that a thread is found to hold the highest priority.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public void testPriorityStrategy() throws InterruptedException {
+		final PerturbingExceptionHandler handler = new PerturbingExceptionHandler(new DefaultExceptionHandler(logger), PerturbingExceptionHandler.priorityStrategy(2, 100, 7L), 7L, logger);
+		final List<Perturbation> result = Collections.synchronizedList(new ArrayList<Perturbation>());
+		final Thread[] threads = new Thread[3];
+		for (int i = threads.length; i-->0; ) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 50; j++) {
+						result.add(handler.next());
+					}
+				}
+			}, "pct-"+i);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(150, result.size());
+		assertTrue(result.contains(Perturbation.NONE));
+	}
+
+	/**
+	 * Tests that the change points only depend on the seed, and that
+	 * a depth which is not positive is rejected.
+	 */
+	@Test
+	public void testPriorityChangePoints() {
+		final PerturbingExceptionHandler.PriorityStrategy strategy = new PerturbingExceptionHandler.PriorityStrategy(3, 1000, 7L);
+		assertEquals(2, strategy.changePoints.length);
+		assertArrayEquals(strategy.changePoints, new PerturbingExceptionHandler.PriorityStrategy(3, 1000, 7L).changePoints);
+		assertEquals("priority(depth=3,steps=1000,seed=7)", strategy.toString());
+		assertEquals(0, new PerturbingExceptionHandler.PriorityStrategy(1, 1000, 7L).changePoints.length);
+		try {
+			PerturbingExceptionHandler.priorityStrategy(0, 1000, 7L);
+			fail("depth 0 accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("depth"));
+		}
+	}
+
+	/**
+	 * Tests that perturbation makes a lost update on a counter shared by two
+	 * threads show up reliably, although each thread only does a few updates.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public void testWidenedRace() throws InterruptedException {
+		final StressHarness.Result result = new StressHarness<Counter>(2, 200)
+			.operation(1, new StressHarness.Operation<Counter>() {
+				@Override
+				public void perform(final Counter counter) {
+					counter.set(counter.get() + 1);
+				}
+			})
+			.run(10, new StressHarness.Factory<Counter>() {
+				@Override
+				public Counter create(final StressHarness.Detector detector) {
+					final PerturbingExceptionHandler handler = new PerturbingExceptionHandler(detector.around(new DefaultExceptionHandler(logger)), PerturbingExceptionHandler.randomStrategy(0.5), 4711L, logger);
+					handler.setParkNanos(10000L);
+					return Monitor.monitor(new CheckedCounter(), new Description<Counter>(Counter.class), handler);
+				}
+			});
+		assertTrue(result.toString(), result.getDetectionRate() > 0.5);
+		assertTrue(logger.toString().contains("schedule perturbed by random(0.5) with seed 4711"));
+	}
+
+	private List<Perturbation> decisions(final long seed) {
+		final PerturbingExceptionHandler handler = new PerturbingExceptionHandler(new DefaultExceptionHandler(logger), PerturbingExceptionHandler.randomStrategy(0.5), seed, logger);
+		final List<Perturbation> result = new ArrayList<Perturbation>();
+		for (int i = 0; i < 32; i++) {
+			result.add(handler.next());
+		}
+		return result;
+	}
+
+	public interface Counter {
+		int get();
+		void set(int value);
+	}
+
+	/**
+	 * A counter which fails if a value is set that does
+	 * not follow the last value read by the calling thread.
+	 */
+	private static class CheckedCounter implements Counter {
+
+		private final ThreadLocal<Integer> lastRead = new ThreadLocal<Integer>();
+		private volatile int value;
+
+		@Override
+		public int get() {
+			final int result = value;
+			lastRead.set(Integer.valueOf(result));
+			return result;
+		}
+
+		@Override
+		public void set(final int newValue) {
+			if (value != lastRead.get().intValue()) {
+				throw new IllegalStateException("lost update");
+			}
+			value = newValue;
+		}
+
+	}
+
+}
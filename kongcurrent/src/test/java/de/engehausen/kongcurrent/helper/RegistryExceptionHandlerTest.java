@@ -0,0 +1,71 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Monitor;
+
+public class RegistryExceptionHandlerTest extends AbstractMonitorTest {
+
+	/**
+	 * Tests that one handler tracks many monitored maps.
+	 */
+	@Test
+	public void testRegistry() {
+		new RegistryExceptionHandler(); // test constructor...
+
+		final RegistryExceptionHandler registry = new RegistryExceptionHandler(logger);
+		final List<Map<String, String>> raw = new ArrayList<Map<String, String>>();
+		final List<Map<String, String>> maps = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < 1000; i++) {
+			final Map<String, String> map = new HashMap<String, String>();
+			raw.add(map);
+			maps.add(Monitor.monitor(map, DefaultDescriptions.<String, String>mapDescription(), registry));
+		}
+		for (int i = 0; i < maps.size(); i++) {
+			for (int j = i % 3; j >= 0; j--) {
+				maps.get(i).put("k"+j, "v");
+			}
+		}
+		assertEquals(1000, registry.getTargets().size());
+		assertEquals(3, registry.getCalls(raw.get(2)));
+		assertEquals(0, registry.getCalls(new Object()));
+		assertNull(registry.getLastIncident(raw.get(2)));
+
+		final Map<String, String> failing = Monitor.monitor(new HashMap<String, String>() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public String get(final Object key) {
+				throw new IllegalStateException("boom");
+			}
+		}, DefaultDescriptions.<String, String>mapDescription(), registry);
+		try {
+			failing.get("x");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		boolean found = false;
+		for (RegistryExceptionHandler.Target target : registry.getTargets()) {
+			if (target.getLastIncident() != null) {
+				found = true;
+				assertEquals(1, target.getCalls());
+				assertEquals("get", target.getLastIncident().getMethod());
+				assertTrue(target.toString(), target.toString().contains("boom"));
+			}
+		}
+		assertTrue(found);
+		final String result = logger.toString();
+		assertTrue(result, result.contains("after 1 invocations:"));
+		assertTrue(result, result.contains("java.lang.IllegalStateException: boom"));
+	}
+
+}
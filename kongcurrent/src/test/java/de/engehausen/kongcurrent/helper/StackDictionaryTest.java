@@ -0,0 +1,99 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StackDictionaryTest {
+
+	private static StackTraceElement frame(final String method) {
+		return new StackTraceElement("a.B", method, "B.java", 1);
+	}
+
+	@Test
+	public void testIntern() {
+		final StackDictionary dictionary = new StackDictionary();
+		final StackTraceElement[] first = { frame("c"), frame("b"), frame("a"), frame("main") };
+		final StackTraceElement[] second = { frame("d"), frame("a"), frame("main") };
+		final int id1 = dictionary.intern(first, 0);
+		assertEquals(id1, dictionary.intern(first.clone(), 0));
+		assertEquals(4, dictionary.size());
+		final int id2 = dictionary.intern(second, 0);
+		// "a" and "main" are shared
+		assertEquals(5, dictionary.size());
+		assertTrue(id1 != id2);
+		assertArrayEquals(first, dictionary.resolve(id1));
+		assertArrayEquals(second, dictionary.resolve(id2));
+		final int id3 = dictionary.intern(first, 1);
+		assertEquals(id3, dictionary.intern(new StackTraceElement[] { frame("b"), frame("a"), frame("main") }, 0));
+		assertEquals(5, dictionary.size());
+		dictionary.release(id3);
+		dictionary.release(id3);
+
+		assertEquals(0, dictionary.intern(first, 4));
+		assertEquals(0, dictionary.resolve(0).length);
+
+		dictionary.release(id1);
+		assertArrayEquals(first, dictionary.resolve(id1));
+		dictionary.release(id1);
+		// only the second stack is left
+		assertEquals(3, dictionary.size());
+		dictionary.release(id2);
+		assertEquals(0, dictionary.size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknown() {
+		new StackDictionary().resolve(42);
+	}
+
+	/**
+	 * Interns and releases stacks from several threads; all
+	 * frames must be gone afterwards.
+	 * @throws Exception in case of error
+	 */
+	@Test
+	public void testConcurrent() throws Exception {
+		final StackDictionary dictionary = new StackDictionary();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < 4; t++) {
+			final int offset = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 20000; i++) {
+							final StackTraceElement[] stack = { frame("m"+((i+offset) % 7)), frame("n"+(i % 3)), frame("main") };
+							final int id = dictionary.intern(stack, 0);
+							assertArrayEquals(stack, dictionary.resolve(id));
+							dictionary.release(id);
+						}
+					} catch (Throwable e) { //NOPMD
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw new AssertionError(failure[0]);
+			}
+		}
+		assertEquals(0, dictionary.size());
+	}
+
+}
@@ -0,0 +1,139 @@
+package de.engehausen.kongcurrent.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.AbstractMonitorTest;
+import de.engehausen.kongcurrent.Monitor;
+
+public class TaskTracingTest extends AbstractMonitorTest {
+
+	@Test
+	public void testExecutorService() throws InterruptedException {
+		final List<String> monitored = Monitor.monitor(new ArrayList<String>(), DefaultDescriptions.<String>listDescription(),
+			new DefaultExceptionHandler(logger, TaskTracing.submissionCapture(), true));
+		final ExecutorService executor = TaskTracing.trace(Executors.newSingleThreadExecutor());
+		try {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					monitored.add("hello");
+				}
+			}).get();
+			executor.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					return monitored.get(1);
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+		} finally {
+			executor.shutdown();
+		}
+		final String log = logger.toString();
+		assertTrue(log, log.contains("context task submitted from de.engehausen.kongcurrent.helper.TaskTracingTest.testExecutorService(TaskTracingTest.java:"));
+		assertTrue(log, log.contains(" by main"));
+		assertNull(TaskTracing.currentSubmission());
+	}
+
+	@Test
+	public void testNestedCompletableFuture() throws Exception {
+		final ExecutorService executor = TaskTracing.trace(Executors.newFixedThreadPool(2));
+		try {
+			final Object submission = CompletableFuture.supplyAsync(new Supplier<Object>() {
+				@Override
+				public Object get() {
+					return CompletableFuture.supplyAsync(new Supplier<Object>() {
+						@Override
+						public Object get() {
+							return TaskTracing.currentSubmission();
+						}
+					}, executor).join();
+				}
+			}, executor).get();
+			final String description = submission.toString();
+			assertTrue(description, description.startsWith("task submitted from de.engehausen.kongcurrent.helper.TaskTracingTest$"));
+			assertTrue(description, description.contains(" <- task submitted from de.engehausen.kongcurrent.helper.TaskTracingTest.testNestedCompletableFuture("));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that the chain of a task resubmitting itself many times is limited.
+	 */
+	@Test
+	public void testLongChain() {
+		final Object[] submission = new Object[1];
+		TaskTracing.trace(new Runnable() {
+			private int remaining = 1000;
+			@Override
+			public void run() {
+				if (--remaining > 0) {
+					TaskTracing.trace(this).run();
+				} else {
+					submission[0] = TaskTracing.currentSubmission();
+				}
+			}
+		}).run();
+		final TaskTracing.Submission last = (TaskTracing.Submission) submission[0];
+		assertEquals(999, last.getDepth());
+		int chain = 1;
+		TaskTracing.Submission root = last;
+		while (root.getParent() != null) {
+			root = root.getParent();
+			chain++;
+		}
+		assertTrue(Integer.toString(chain), chain <= TaskTracing.MAX_CHAIN);
+		assertEquals(0, root.getDepth());
+		final String description = last.toString();
+		assertTrue(description, description.contains(" dropped) <- task submitted from de.engehausen.kongcurrent.helper.TaskTracingTest.testLongChain("));
+		assertNull(TaskTracing.currentSubmission());
+	}
+
+	@Test
+	public void testParallelStream() {
+		final Set<String> submissions = ConcurrentHashMap.newKeySet();
+		final List<Integer> unknown = Collections.synchronizedList(new ArrayList<Integer>());
+		TaskTracing.traceParallel(new Runnable() {
+			@Override
+			public void run() {
+				IntStream.range(0, 10000).parallel().forEach(new IntConsumer() {
+					@Override
+					public void accept(final int value) {
+						final Object submission = TaskTracing.submissionCapture().capture();
+						if (submission == null) {
+							unknown.add(Integer.valueOf(value));
+						} else {
+							submissions.add(submission.toString());
+						}
+					}
+				});
+			}
+		});
+		assertTrue(unknown.toString(), unknown.isEmpty());
+		assertEquals(1, submissions.size());
+		assertTrue(submissions.toString(), submissions.iterator().next().startsWith("task submitted from de.engehausen.kongcurrent.helper.TaskTracingTest.testParallelStream("));
+		assertNull(TaskTracing.currentSubmission());
+		assertNull(TaskTracing.submissionCapture().capture());
+	}
+
+}
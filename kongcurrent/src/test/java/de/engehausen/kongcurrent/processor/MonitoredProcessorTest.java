@@ -0,0 +1,186 @@
+package de.engehausen.kongcurrent.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.engehausen.kongcurrent.ArgumentsAware;
+import de.engehausen.kongcurrent.Description;
+import de.engehausen.kongcurrent.ExceptionHandler;
+import de.engehausen.kongcurrent.Monitor;
+import de.engehausen.kongcurrent.helper.DefaultDescriptions;
+import de.engehausen.kongcurrent.testhelper.Inventory;
+import de.engehausen.kongcurrent.testhelper.InventoryImpl;
+
+/**
+ * Tests the wrapper generated for the {@link Inventory} interface.
+ */
+public class MonitoredProcessorTest {
+
+	private StringBuilder calls;
+	private ExceptionHandler handler;
+	private Description<Inventory<String>> description;
+
+	@Before
+	public void setup() throws NoSuchMethodException {
+		calls = new StringBuilder();
+		handler = new ExceptionHandler() {
+			@Override
+			public void preInvoke(final Object target, final Method method, final Object[] args) {
+				calls.append('>').append(method.getName());
+			}
+			@Override
+			public void postInvoke(final Object target, final Method method, final Object[] args) {
+				calls.append('<').append(method.getName());
+			}
+			@Override
+			public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+				calls.append('!').append(throwable.getClass().getSimpleName());
+			}
+		};
+		description = new Description<Inventory<String>>(Inventory.class);
+		description.addDependant(DefaultDescriptions.<String>listDescription(), "items");
+		final Description<Iterator<String>> iterator = new Description<Iterator<String>>(Iterator.class);
+		iterator.setIterating(true);
+		description.addDependant(iterator, "iterator");
+		description.setWrite("add", Object.class);
+	}
+
+	@Test
+	public void testGenerated() {
+		final Inventory<String> monitored = Monitor.monitor(new InventoryImpl(), description, handler);
+		assertEquals(Inventory.class.getName()+Monitor.WRAPPER_SUFFIX, monitored.getClass().getName());
+		assertFalse(Proxy.isProxyClass(monitored.getClass()));
+
+		assertTrue(monitored.isEmpty());
+		assertTrue(monitored.add("one"));
+		assertEquals("one", monitored.get(0));
+		assertEquals(1, monitored.toArray(new String[0]).length);
+		assertEquals(">isEmpty<isEmpty>add<add>get<get>toArray<toArray", calls.toString());
+	}
+
+	@Test
+	public void testExceptions() {
+		final Inventory<String> monitored = Monitor.monitor(new InventoryImpl(), description, handler);
+		try {
+			monitored.get(1);
+			fail("no exception");
+		} catch (IndexOutOfBoundsException e) {
+			assertEquals(">get!IndexOutOfBoundsException<get", calls.toString());
+		}
+		calls.setLength(0);
+		try {
+			monitored.load("a", null);
+			fail("no exception");
+		} catch (IOException e) {
+			assertEquals(">load!IOException<load", calls.toString());
+		}
+		assertEquals(1, monitored.size());
+	}
+
+	@Test
+	public void testDependants() {
+		final InventoryImpl original = new InventoryImpl();
+		final Inventory<String> monitored = Monitor.monitor(original, description, handler);
+		final List<String> items = monitored.items();
+		assertNotSame(original.items(), items);
+		assertSame(original.items(), Monitor.unwrap(items));
+		items.add("two");
+		assertEquals(">items<items>add<add", calls.toString());
+
+		final Iterator<String> iterator = monitored.iterator();
+		iterator.next();
+		monitored.add("three");
+		try {
+			iterator.next();
+			fail("no exception");
+		} catch (ConcurrentModificationException e) {
+			assertTrue(calls.toString(), calls.toString().endsWith(">next!ConcurrentModificationException<next"));
+		}
+	}
+
+	/**
+	 * Tests that the arguments are only passed to handlers which need them.
+	 */
+	@Test
+	public void testArguments() {
+		final List<Object[]> arguments = new ArrayList<Object[]>();
+		final Inventory<String> monitored = Monitor.monitor(new InventoryImpl(), description, new Arguments(arguments, true));
+		monitored.add("one");
+		monitored.get(0);
+		monitored.size();
+		assertEquals(3, arguments.size());
+		assertArrayEquals(new Object[] { "one" }, arguments.get(0));
+		assertArrayEquals(new Object[] { Integer.valueOf(0) }, arguments.get(1));
+		assertNull(arguments.get(2));
+
+		arguments.clear();
+		final Inventory<String> lean = Monitor.monitor(new InventoryImpl(), description, new Arguments(arguments, false));
+		lean.add("one");
+		lean.get(0);
+		assertEquals(2, arguments.size());
+		assertNull(arguments.get(0));
+		assertNull(arguments.get(1));
+	}
+
+	@Test
+	public void testIdentity() {
+		final InventoryImpl original = new InventoryImpl();
+		final Inventory<String> monitored = Monitor.monitor(original, description, handler);
+		assertSame(monitored, Monitor.monitor(monitored, description, handler));
+		assertSame(original, Monitor.unwrap(monitored));
+		assertTrue(monitored.equals(monitored));
+		assertFalse(monitored.equals(new InventoryImpl()));
+		assertEquals(original.hashCode(), monitored.hashCode());
+		assertTrue(monitored.toString().startsWith("{monitored:"));
+	}
+
+	private static class Arguments implements ExceptionHandler, ArgumentsAware {
+
+		private final List<Object[]> arguments;
+		private final boolean needed;
+
+		Arguments(final List<Object[]> someArguments, final boolean flag) {
+			arguments = someArguments;
+			needed = flag;
+		}
+
+		@Override
+		public boolean needsArguments() {
+			return needed;
+		}
+
+		@Override
+		public void preInvoke(final Object target, final Method method, final Object[] args) {
+			arguments.add(args);
+		}
+
+		@Override
+		public void postInvoke(final Object target, final Method method, final Object[] args) {
+			// not needed
+		}
+
+		@Override
+		public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+			// not needed
+		}
+
+	}
+
+}
@@ -3,6 +3,8 @@
  */
 package de.engehausen.kongcurrent.testhelper;
 
+import java.io.File;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
@@ -33,7 +35,7 @@ public class FilteredClassloaderTestRunner extends BlockJUnit4ClassRunner {
 		private final String prefix;
 		
 	    public FilteredClassLoader(final String classPrefix, final String substr) {
-	    	super(filter(((URLClassLoader) getSystemClassLoader()).getURLs(), substr));
+	    	super(filter(classPath(), substr));
 	    	banned = substr;
 	    	prefix = classPrefix;
 	    }
@@ -47,6 +49,20 @@ public class FilteredClassloaderTestRunner extends BlockJUnit4ClassRunner {
 			return super.loadClass(name);
 		}
 
+		private static URL[] classPath() {
+			// the system class loader is no URLClassLoader on newer JDKs, use the class path instead
+			final String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+			final URL[] result = new URL[entries.length];
+			try {
+				for (int i = entries.length; i-->0; ) {
+					result[i] = new File(entries[i]).toURI().toURL();
+				}
+			} catch (MalformedURLException e) {
+				throw new IllegalStateException(e);
+			}
+			return result;
+		}
+
 		private static URL[] filter(final URL[] urls, final String substr) {
 			final List<URL> result = new ArrayList<URL>(urls.length);
 			for (int i = urls.length; i-->0; ) {
@@ -68,4 +84,4 @@ public class FilteredClassloaderTestRunner extends BlockJUnit4ClassRunner {
 		}
 
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package de.engehausen.kongcurrent.testhelper;
+
+import java.io.IOException;
+import java.util.List;
+
+import de.engehausen.kongcurrent.Monitored;
+
+/**
+ * Demo interface with a generated monitored wrapper.
+ * @param <E> the type of the items
+ */
+@Monitored
+public interface Inventory<E> extends Iterable<E> {
+
+	int size();
+
+	E get(int index);
+
+	boolean add(E item);
+
+	void clear();
+
+	List<E> items();
+
+	<X> X[] toArray(X[] array);
+
+	void load(String... names) throws IOException;
+
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+
+}
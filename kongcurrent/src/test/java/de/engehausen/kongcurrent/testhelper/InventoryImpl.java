@@ -0,0 +1,57 @@
+package de.engehausen.kongcurrent.testhelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class InventoryImpl implements Inventory<String> {
+
+	protected final List<String> items = new ArrayList<String>();
+
+	@Override
+	public Iterator<String> iterator() {
+		return items.iterator();
+	}
+
+	@Override
+	public int size() {
+		return items.size();
+	}
+
+	@Override
+	public String get(final int index) {
+		return items.get(index);
+	}
+
+	@Override
+	public boolean add(final String item) {
+		return items.add(item);
+	}
+
+	@Override
+	public void clear() {
+		items.clear();
+	}
+
+	@Override
+	public List<String> items() {
+		return items;
+	}
+
+	@Override
+	public <X> X[] toArray(final X[] array) {
+		return items.toArray(array);
+	}
+
+	@Override
+	public void load(final String... names) throws IOException {
+		for (String name : names) {
+			if (name == null) {
+				throw new IOException("no name");
+			}
+			items.add(name);
+		}
+	}
+
+}
@@ -11,11 +11,11 @@ public class Recorder implements Logger {
 	}
 
 	@Override
-	public void log(final String message) {
+	public synchronized void log(final String message) {
 		buffer.append(message).append("\n");
 	}
 	
-	public String toString() {
+	public synchronized String toString() {
 		return buffer.toString();
 	}
 
@@ -0,0 +1,376 @@
+package de.engehausen.kongcurrent.testhelper;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.engehausen.kongcurrent.ExceptionHandler;
+
+/**
+ * Drives a monitored object from a number of threads which are released
+ * together on a barrier. The threads are organized in groups; each thread
+ * executes a random mix of the weighted operations of its group on the object
+ * until an exception is detected or the configured number of operations is done.
+ * An exception counts as detected when it is passed to the exception handler
+ * wrapped by the {@link Detector} the harness hands to the {@link Factory};
+ * exceptions thrown by the operations
+ * themselves are counted separately. This is repeated for a number of rounds, each
+ * round on a fresh object; the result reports how often the problem was reproduced
+ * and how long it took to do so.
+ * <p>The operations chosen by each thread are determined by the seed, so a
+ * run can be repeated with the same operation sequences (the interleaving
+ * of the threads of course is up to the scheduler).
+ * @param <T> the type of object to drive
+ */
+public class StressHarness<T> {
+
+	/**
+	 * An operation on the object under test.
+	 * @param <T> the type of object the operation works on
+	 */
+	public interface Operation<T> {
+		/**
+		 * Performs the operation.
+		 * @param target the object to work on, never <code>null</code>
+		 * @throws Exception in case of error
+		 */
+		void perform(T target) throws Exception;
+	}
+
+	/**
+	 * Creates the (monitored) object for a round.
+	 * @param <T> the type of object to create
+	 */
+	public interface Factory<T> {
+		/**
+		 * Creates a new object to drive.
+		 * @param detector the detector, the object must be monitored with the handler
+		 * returned by {@link Detector#around(ExceptionHandler)}; never <code>null</code>
+		 * @return the object, never <code>null</code>
+		 */
+		T create(Detector detector);
+	}
+
+	protected final int operationsPerThread;
+	protected final List<Mix<T>> mixes;
+	protected long seed;
+	protected int threadCount;
+
+	/**
+	 * Creates the harness. At least one group of threads must be added
+	 * using {@link #threads(int)} before adding operations.
+	 * @param operationsPerThread the maximum number of operations a thread executes per round
+	 */
+	public StressHarness(final int operationsPerThread) {
+		this.operationsPerThread = operationsPerThread;
+		mixes = new ArrayList<Mix<T>>();
+		seed = 4711L;
+	}
+
+	/**
+	 * Creates the harness with one group of threads which
+	 * share the operation mix.
+	 * @param threads the number of threads to run in parallel, must be positive
+	 * @param operationsPerThread the maximum number of operations a thread executes per round
+	 */
+	public StressHarness(final int threads, final int operationsPerThread) {
+		this(operationsPerThread);
+		threads(threads);
+	}
+
+	/**
+	 * Adds a group of threads. The operations added after this call
+	 * form the operation mix of the threads of the group.
+	 * @param count the number of threads in the group, must be positive
+	 * @return this harness
+	 */
+	public StressHarness<T> threads(final int count) {
+		mixes.add(new Mix<T>(count));
+		threadCount += count;
+		return this;
+	}
+
+	/**
+	 * Adds an operation to the mix of the most recently added group of threads.
+	 * @param weight the relative weight of the operation, must be positive
+	 * @param operation the operation, must not be <code>null</code>
+	 * @return this harness
+	 */
+	public StressHarness<T> operation(final int weight, final Operation<T> operation) {
+		mixes.get(mixes.size()-1).add(weight, operation);
+		return this;
+	}
+
+	/**
+	 * Sets the seed for choosing the operations.
+	 * @param aSeed the seed
+	 * @return this harness
+	 */
+	public StressHarness<T> seed(final long aSeed) {
+		seed = aSeed;
+		return this;
+	}
+
+	/**
+	 * Runs the given number of rounds, each on a fresh object.
+	 * @param rounds the number of rounds, must be positive
+	 * @param factory the factory for the object to drive, must not be <code>null</code>
+	 * @return the result, never <code>null</code>
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public Result run(final int rounds, final Factory<T> factory) throws InterruptedException {
+		final Result result = new Result(rounds);
+		for (int round = 0; round < rounds; round++) {
+			final Detector detector = new Detector();
+			runRound(round, factory.create(detector), detector, result);
+		}
+		return result;
+	}
+
+	protected void runRound(final int round, final T target, final Detector detector, final Result result) throws InterruptedException {
+		final AtomicLong start = new AtomicLong();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CyclicBarrier barrier = new CyclicBarrier(threadCount, new Runnable() {
+			@Override
+			public void run() {
+				start.set(System.nanoTime());
+			}
+		});
+		final Thread[] threads = new Thread[threadCount];
+		int i = 0;
+		for (Mix<T> mix : mixes) {
+			for (int j = mix.count; j-->0; i++) {
+				threads[i] = new Thread(new Worker(mix, new Random(seed + 31L * round + i), target, barrier, failure, detector), "stress-"+round+"-"+i);
+			}
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		final Throwable t = detector.first.get();
+		if (t != null) {
+			result.detected(t, detector.detected - start.get());
+		}
+		if (failure.get() != null) {
+			result.failed();
+		}
+	}
+
+	/**
+	 * Records the first exception passed to the handlers it wraps, i.e. the
+	 * detection of a round.
+	 */
+	public static class Detector {
+
+		protected final AtomicReference<Throwable> first = new AtomicReference<Throwable>();
+		protected volatile long detected;
+
+		protected Detector() {
+			// created by the harness
+		}
+
+		/**
+		 * Returns a handler passing all calls to the given handler, which
+		 * records the exceptions passed to it. The returned handler gets the
+		 * arguments of the invocations, as the given handler may need them.
+		 * @param delegate the handler to wrap, must not be <code>null</code>
+		 * @return the handler to monitor the object with, never <code>null</code>
+		 */
+		public ExceptionHandler around(final ExceptionHandler delegate) {
+			return new ExceptionHandler() {
+				@Override
+				public void preInvoke(final Object target, final Method method, final Object[] args) {
+					delegate.preInvoke(target, method, args);
+				}
+				@Override
+				public void handle(final Throwable throwable, final Object target, final Method method, final Object[] args) {
+					detected(throwable);
+					delegate.handle(throwable, target, method, args);
+				}
+				@Override
+				public void postInvoke(final Object target, final Method method, final Object[] args) {
+					delegate.postInvoke(target, method, args);
+				}
+			};
+		}
+
+		protected void detected(final Throwable throwable) {
+			final long now = System.nanoTime();
+			if (first.compareAndSet(null, throwable)) {
+				detected = now;
+			}
+		}
+
+	}
+
+	/**
+	 * A worker thread, executing operations of a mix until done, an exception is
+	 * detected or an operation fails.
+	 */
+	protected class Worker implements Runnable {
+
+		protected final Mix<T> mix;
+		protected final Random random;
+		protected final T target;
+		protected final CyclicBarrier barrier;
+		protected final AtomicReference<Throwable> failure;
+		protected final Detector detector;
+
+		protected Worker(final Mix<T> aMix, final Random aRandom, final T aTarget, final CyclicBarrier aBarrier, final AtomicReference<Throwable> aFailure, final Detector aDetector) {
+			mix = aMix;
+			random = aRandom;
+			target = aTarget;
+			barrier = aBarrier;
+			failure = aFailure;
+			detector = aDetector;
+		}
+
+		@Override
+		public void run() {
+			try {
+				barrier.await();
+				for (int j = operationsPerThread; j-->0 && failure.get() == null && detector.first.get() == null; ) {
+					mix.choose(random).perform(target);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable t) { //NOPMD the workload failed, whether or not the handler saw it
+				failure.compareAndSet(null, t);
+			}
+		}
+
+	}
+
+	/**
+	 * A group of threads sharing a weighted mix of operations.
+	 * @param <T> the type of object the operations work on
+	 */
+	protected static class Mix<T> {
+
+		protected final int count;
+		protected final List<Operation<T>> operations;
+		protected final List<Integer> weights;
+		protected int totalWeight;
+
+		protected Mix(final int threads) {
+			count = threads;
+			operations = new ArrayList<Operation<T>>();
+			weights = new ArrayList<Integer>();
+		}
+
+		protected void add(final int weight, final Operation<T> operation) {
+			operations.add(operation);
+			weights.add(Integer.valueOf(weight));
+			totalWeight += weight;
+		}
+
+		protected Operation<T> choose(final Random random) {
+			int pick = random.nextInt(totalWeight);
+			for (int i = 0; i < operations.size(); i++) {
+				pick -= weights.get(i).intValue();
+				if (pick < 0) {
+					return operations.get(i);
+				}
+			}
+			return operations.get(operations.size()-1);
+		}
+
+	}
+
+	/**
+	 * The result of running the harness.
+	 */
+	public static class Result {
+
+		protected final int rounds;
+		protected int detections;
+		protected int failures;
+		protected long minNanos = Long.MAX_VALUE;
+		protected long totalNanos;
+		protected Throwable first;
+
+		protected Result(final int totalRounds) {
+			rounds = totalRounds;
+		}
+
+		protected void detected(final Throwable t, final long nanos) {
+			if (first == null) {
+				first = t;
+			}
+			detections++;
+			totalNanos += nanos;
+			minNanos = Math.min(minNanos, nanos);
+		}
+
+		protected void failed() {
+			failures++;
+		}
+
+		/**
+		 * Returns the number of rounds in which an exception was passed to the handler.
+		 * @return the number of rounds in which an exception was detected.
+		 */
+		public int getDetections() {
+			return detections;
+		}
+
+		/**
+		 * Returns the number of rounds in which an operation threw an exception
+		 * (or the threads could not be released together), whether or not the
+		 * exception was passed to the handler.
+		 * @return the number of rounds in which the workload failed.
+		 */
+		public int getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Returns the ratio of rounds with a detected exception.
+		 * @return a value between 0 and 1.
+		 */
+		public double getDetectionRate() {
+			return detections / (double) rounds;
+		}
+
+		/**
+		 * Returns the mean time from releasing the threads to the detection.
+		 * @return the mean time in nanoseconds, or -1 if nothing was detected.
+		 */
+		public long getMeanTimeToDetection() {
+			return detections == 0 ? -1 : totalNanos / detections;
+		}
+
+		/**
+		 * Returns the shortest time from releasing the threads to the detection.
+		 * @return the shortest time in nanoseconds, or -1 if nothing was detected.
+		 */
+		public long getMinTimeToDetection() {
+			return detections == 0 ? -1 : minNanos;
+		}
+
+		/**
+		 * Returns the first exception that was passed to the handler.
+		 * @return the first exception, or <code>null</code>
+		 */
+		public Throwable getFirstDetected() {
+			return first;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder(96);
+			sb.append("detected ").append(detections).append('/').append(rounds)
+			  .append(", mean time to detection ").append(getMeanTimeToDetection()).append("ns")
+			  .append(", workload failed ").append(failures).append('/').append(rounds);
+			return sb.toString();
+		}
+
+	}
+
+}
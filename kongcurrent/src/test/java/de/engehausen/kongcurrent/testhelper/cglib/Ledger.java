@@ -0,0 +1,80 @@
+package de.engehausen.kongcurrent.testhelper.cglib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class with methods of all kinds of parameter and result types.
+ */
+public class Ledger {
+
+	private final List<String> entries = new ArrayList<String>();
+	private long total;
+
+	public boolean book(final String entry, final long amount, final double rate) {
+		total += Math.round(amount * rate);
+		return entries.add(entry);
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public double average() {
+		return entries.isEmpty() ? 0d : (double) total / entries.size();
+	}
+
+	public char initial(final int index) {
+		return entries.get(index).charAt(0);
+	}
+
+	public String[] toArray(final String... prefix) {
+		final List<String> result = new ArrayList<String>(prefix.length + entries.size());
+		for (String value : prefix) {
+			result.add(value);
+		}
+		result.addAll(entries);
+		return result.toArray(new String[result.size()]);
+	}
+
+	public List<String> getEntries() {
+		return entries;
+	}
+
+	public void load(final byte[] data) throws IOException {
+		if (data == null) {
+			throw new IOException("no data");
+		}
+		entries.add(new String(data, "UTF-8"));
+	}
+
+	public final int size() {
+		return entries.size();
+	}
+
+	protected int count() {
+		return entries.size();
+	}
+
+	int packageCount() {
+		return entries.size();
+	}
+
+	@Override
+	public int hashCode() {
+		return entries.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		} else if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		} else {
+			return entries.equals(((Ledger) obj).entries);
+		}
+	}
+
+}